@@ -85,13 +85,23 @@ public class AES extends IntBlock {
      * @return 該当しない場合は null
      */
     public static Block toBlockPad(OBJECTIDENTIFIER alg) {
+        return toBlockPad(alg, isBitslice());
+    }
+
+    /**
+     * OIDから暗号.
+     * @param alg OID
+     * @param bitslice AESBitslice を使う
+     * @return 該当しない場合は null
+     */
+    static Block toBlockPad(OBJECTIDENTIFIER alg, boolean bitslice) {
         if ( alg.up().equals(AES)) {
             int sub = (int)alg.getLast();
             Block b;
             switch (sub / 20) {
-                case 0: b = new AES(128);   break;
-                case 1: b = new AES(192);   break;
-                case 2: b = new AES(256);   break;
+                case 0: b = newInstance(128, bitslice);   break;
+                case 1: b = newInstance(192, bitslice);   break;
+                case 2: b = newInstance(256, bitslice);   break;
                 default:
                     return null;
             }
@@ -112,6 +122,29 @@ public class AES extends IntBlock {
         return null;
     }
 
+    /**
+     * 実装を選ぶシステムプロパティ.
+     * "bitslice" でテーブルを使わない AESBitslice になる.
+     */
+    public static final String IMPL_PROPERTY = "net.siisise.security.block.AES";
+
+    private static boolean isBitslice() {
+        return "bitslice".equalsIgnoreCase(System.getProperty(IMPL_PROPERTY));
+    }
+
+    /**
+     * システムプロパティで選択したAES.
+     * @param bit 鍵長 128, 192, 256 0は可変
+     * @return AES または AESBitslice
+     */
+    public static Block newInstance(int bit) {
+        return newInstance(bit, isBitslice());
+    }
+
+    private static Block newInstance(int bit, boolean bitslice) {
+        return bitslice ? new AESBitslice(bit) : new AES(bit);
+    }
+
     /**
      * Rijndael 128～256ビット 32ビット単位
      * AES 128bit固定
@@ -305,14 +338,332 @@ public class AES extends IntBlock {
     @Override
     public byte[] encrypt(byte[] src, int offset, int length) {
         byte[] ret = new byte[length];
+        encrypt(src, offset, ret, 0, length);
+        return ret;
+    }
+
+    /**
+     * int列に変換せずまとめて復号する.
+     *
+     * @param src 暗号列
+     * @param offset 位置
+     * @param length サイズ
+     * @return 平文
+     */
+    @Override
+    public byte[] decrypt(byte[] src, int offset, int length) {
+        byte[] ret = new byte[length];
+        decrypt(src, offset, ret, 0, length);
+        return ret;
+    }
+
+    @Override
+    public long[] encrypt(long[] src, int offset, int length) {
+        long[] ret = new long[length];
+        encrypt(src, offset, ret, 0, length);
+        return ret;
+    }
+
+    @Override
+    public long[] decrypt(long[] src, int offset, int length) {
+        long[] ret = new long[length];
+        decrypt(src, offset, ret, 0, length);
+        return ret;
+    }
+
+    /**
+     * 複数ブロック暗号化.
+     * 4ブロック単位でまとめて処理し, 端数は1ブロックずつ.
+     *
+     * @param src 平文
+     * @param offset 位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     * @param length バイト長 16の倍数
+     */
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        int of = 0;
+        if (length >= 64) {
+            long[] t = new long[8];
+            for (; of + 64 <= length; of += 64) {
+                Bin.btol(src, offset + of, t, 8);
+                encrypt4(t, 0, t, 0);
+                Bin.ltob(t, dst, doffset + of);
+            }
+        }
+        for (; of + 16 <= length; of += 16) {
+            encrypt(src, offset + of, dst, doffset + of);
+        }
+    }
+
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
         int of = 0;
+        if (length >= 64) {
+            long[] t = new long[8];
+            for (; of + 64 <= length; of += 64) {
+                Bin.btol(src, offset + of, t, 8);
+                decrypt4(t, 0, t, 0);
+                Bin.ltob(t, dst, doffset + of);
+            }
+        }
+        for (; of + 16 <= length; of += 16) {
+            decrypt(src, offset + of, dst, doffset + of);
+        }
+    }
+
+    /**
+     * 複数ブロック暗号化.
+     * 4ブロック単位でまとめて処理し, 端数は1ブロックずつ.
+     * src と dst は同じ位置でもよい.
+     *
+     * @param src 平文
+     * @param offset 位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     * @param length long単位の長さ 2の倍数
+     */
+    @Override
+    public void encrypt(long[] src, int offset, long[] dst, int doffset, int length) {
+        int of = 0;
+        for (; of + 8 <= length; of += 8) {
+            encrypt4(src, offset + of, dst, doffset + of);
+        }
+        for (; of + 2 <= length; of += 2) {
+            encrypt(src, offset + of, dst, doffset + of);
+        }
+    }
 
-        while (length > of) {
-            byte[] x = encrypt(src, offset);
-            System.arraycopy(x, 0, ret, of, x.length);
-            offset += x.length;
-            of += x.length;
+    @Override
+    public void decrypt(long[] src, int offset, long[] dst, int doffset, int length) {
+        int of = 0;
+        for (; of + 8 <= length; of += 8) {
+            decrypt4(src, offset + of, dst, doffset + of);
         }
+        for (; of + 2 <= length; of += 2) {
+            decrypt(src, offset + of, dst, doffset + of);
+        }
+    }
+
+    /**
+     * 4ブロック同時暗号化.
+     * 独立した4ブロックのラウンドを交互に並べて命令レベルで並列に処理させる.
+     * ECB, CTR の鍵ストリーム, CBC 復号などで使う.
+     *
+     * @param src 平文 4ブロック (long 8個)
+     * @param offset 平文位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     */
+    private void encrypt4(final long[] src, int offset, long[] dst, int doffset) {
+        int nr = Nr4 / 2;
+        // AddRoundKey
+        long k0 = lw[0], k1 = lw[1];
+        long a0 = src[offset    ] ^ k0, b0 = src[offset + 1] ^ k1;
+        long a1 = src[offset + 2] ^ k0, b1 = src[offset + 3] ^ k1;
+        long a2 = src[offset + 4] ^ k0, b2 = src[offset + 5] ^ k1;
+        long a3 = src[offset + 6] ^ k0, b3 = src[offset + 7] ^ k1;
+
+        for (int r = 2; r < nr; r += 2) {
+            // SubBytes + ShiftRow + MixColumns
+            long c0, d0, c1, d1, c2, d2, c3, d3;
+            c0  = LMIX0[(int)(a0 >>> 56)       ] ^ LMIX1[(int)(a0 >>> 16) & 0xff];
+            d0  = LMIX0[(int)(b0 >>> 56)       ] ^ LMIX1[(int)(b0 >>> 16) & 0xff];
+            c1  = LMIX0[(int)(a1 >>> 56)       ] ^ LMIX1[(int)(a1 >>> 16) & 0xff];
+            d1  = LMIX0[(int)(b1 >>> 56)       ] ^ LMIX1[(int)(b1 >>> 16) & 0xff];
+            c2  = LMIX0[(int)(a2 >>> 56)       ] ^ LMIX1[(int)(a2 >>> 16) & 0xff];
+            d2  = LMIX0[(int)(b2 >>> 56)       ] ^ LMIX1[(int)(b2 >>> 16) & 0xff];
+            c3  = LMIX0[(int)(a3 >>> 56)       ] ^ LMIX1[(int)(a3 >>> 16) & 0xff];
+            d3  = LMIX0[(int)(b3 >>> 56)       ] ^ LMIX1[(int)(b3 >>> 16) & 0xff];
+            c0 ^= LMIX2[(int)(b0 >>> 40) & 0xff] ^ LMIX3[(int) b0         & 0xff];
+            d0 ^= LMIX2[(int)(a0 >>> 40) & 0xff] ^ LMIX3[(int) a0         & 0xff];
+            c1 ^= LMIX2[(int)(b1 >>> 40) & 0xff] ^ LMIX3[(int) b1         & 0xff];
+            d1 ^= LMIX2[(int)(a1 >>> 40) & 0xff] ^ LMIX3[(int) a1         & 0xff];
+            c2 ^= LMIX2[(int)(b2 >>> 40) & 0xff] ^ LMIX3[(int) b2         & 0xff];
+            d2 ^= LMIX2[(int)(a2 >>> 40) & 0xff] ^ LMIX3[(int) a2         & 0xff];
+            c3 ^= LMIX2[(int)(b3 >>> 40) & 0xff] ^ LMIX3[(int) b3         & 0xff];
+            d3 ^= LMIX2[(int)(a3 >>> 40) & 0xff] ^ LMIX3[(int) a3         & 0xff];
+            c0 = c0 << 32 ^ LMIX0[(int)(a0 >>> 24) & 0xff] ^ LMIX1[(int)(b0 >>> 48) & 0xff];
+            d0 = d0 << 32 ^ LMIX0[(int)(b0 >>> 24) & 0xff] ^ LMIX1[(int)(a0 >>> 48) & 0xff];
+            c1 = c1 << 32 ^ LMIX0[(int)(a1 >>> 24) & 0xff] ^ LMIX1[(int)(b1 >>> 48) & 0xff];
+            d1 = d1 << 32 ^ LMIX0[(int)(b1 >>> 24) & 0xff] ^ LMIX1[(int)(a1 >>> 48) & 0xff];
+            c2 = c2 << 32 ^ LMIX0[(int)(a2 >>> 24) & 0xff] ^ LMIX1[(int)(b2 >>> 48) & 0xff];
+            d2 = d2 << 32 ^ LMIX0[(int)(b2 >>> 24) & 0xff] ^ LMIX1[(int)(a2 >>> 48) & 0xff];
+            c3 = c3 << 32 ^ LMIX0[(int)(a3 >>> 24) & 0xff] ^ LMIX1[(int)(b3 >>> 48) & 0xff];
+            d3 = d3 << 32 ^ LMIX0[(int)(b3 >>> 24) & 0xff] ^ LMIX1[(int)(a3 >>> 48) & 0xff];
+            c0 ^= LMIX2[(int)(b0 >>>  8) & 0xff] ^ LMIX3[(int)(a0 >>> 32) & 0xff];
+            d0 ^= LMIX2[(int)(a0 >>>  8) & 0xff] ^ LMIX3[(int)(b0 >>> 32) & 0xff];
+            c1 ^= LMIX2[(int)(b1 >>>  8) & 0xff] ^ LMIX3[(int)(a1 >>> 32) & 0xff];
+            d1 ^= LMIX2[(int)(a1 >>>  8) & 0xff] ^ LMIX3[(int)(b1 >>> 32) & 0xff];
+            c2 ^= LMIX2[(int)(b2 >>>  8) & 0xff] ^ LMIX3[(int)(a2 >>> 32) & 0xff];
+            d2 ^= LMIX2[(int)(a2 >>>  8) & 0xff] ^ LMIX3[(int)(b2 >>> 32) & 0xff];
+            c3 ^= LMIX2[(int)(b3 >>>  8) & 0xff] ^ LMIX3[(int)(a3 >>> 32) & 0xff];
+            d3 ^= LMIX2[(int)(a3 >>>  8) & 0xff] ^ LMIX3[(int)(b3 >>> 32) & 0xff];
+            // AddRoundKey
+            k0 = lw[r];
+            k1 = lw[r + 1];
+            a0 = c0 ^ k0;
+            b0 = d0 ^ k1;
+            a1 = c1 ^ k0;
+            b1 = d1 ^ k1;
+            a2 = c2 ^ k0;
+            b2 = d2 ^ k1;
+            a3 = c3 ^ k0;
+            b3 = d3 ^ k1;
+        }
+
+        // SubBytes + ShiftRows + AddRoundKey
+        k0 = lw[nr];
+        k1 = lw[nr + 1];
+        dst[doffset    ] = (SBOX[(int)(a0 >>> 56)       ] << 56 | SBOX[(int)(a0 >>> 16) & 0xff] << 48
+                | SBOX[(int)(b0 >>> 40) & 0xff] << 40 | SBOX[(int) b0         & 0xff] << 32
+                | SBOX[(int)(a0 >>> 24) & 0xff] << 24 | SBOX[(int)(b0 >>> 48) & 0xff] << 16
+                | SBOX[(int)(b0 >>>  8) & 0xff] <<  8 | SBOX[(int)(a0 >>> 32) & 0xff]) ^ k0;
+        dst[doffset + 1] = (SBOX[(int)(b0 >>> 56)       ] << 56 | SBOX[(int)(b0 >>> 16) & 0xff] << 48
+                | SBOX[(int)(a0 >>> 40) & 0xff] << 40 | SBOX[(int) a0         & 0xff] << 32
+                | SBOX[(int)(b0 >>> 24) & 0xff] << 24 | SBOX[(int)(a0 >>> 48) & 0xff] << 16
+                | SBOX[(int)(a0 >>>  8) & 0xff] <<  8 | SBOX[(int)(b0 >>> 32) & 0xff]) ^ k1;
+        dst[doffset + 2] = (SBOX[(int)(a1 >>> 56)       ] << 56 | SBOX[(int)(a1 >>> 16) & 0xff] << 48
+                | SBOX[(int)(b1 >>> 40) & 0xff] << 40 | SBOX[(int) b1         & 0xff] << 32
+                | SBOX[(int)(a1 >>> 24) & 0xff] << 24 | SBOX[(int)(b1 >>> 48) & 0xff] << 16
+                | SBOX[(int)(b1 >>>  8) & 0xff] <<  8 | SBOX[(int)(a1 >>> 32) & 0xff]) ^ k0;
+        dst[doffset + 3] = (SBOX[(int)(b1 >>> 56)       ] << 56 | SBOX[(int)(b1 >>> 16) & 0xff] << 48
+                | SBOX[(int)(a1 >>> 40) & 0xff] << 40 | SBOX[(int) a1         & 0xff] << 32
+                | SBOX[(int)(b1 >>> 24) & 0xff] << 24 | SBOX[(int)(a1 >>> 48) & 0xff] << 16
+                | SBOX[(int)(a1 >>>  8) & 0xff] <<  8 | SBOX[(int)(b1 >>> 32) & 0xff]) ^ k1;
+        dst[doffset + 4] = (SBOX[(int)(a2 >>> 56)       ] << 56 | SBOX[(int)(a2 >>> 16) & 0xff] << 48
+                | SBOX[(int)(b2 >>> 40) & 0xff] << 40 | SBOX[(int) b2         & 0xff] << 32
+                | SBOX[(int)(a2 >>> 24) & 0xff] << 24 | SBOX[(int)(b2 >>> 48) & 0xff] << 16
+                | SBOX[(int)(b2 >>>  8) & 0xff] <<  8 | SBOX[(int)(a2 >>> 32) & 0xff]) ^ k0;
+        dst[doffset + 5] = (SBOX[(int)(b2 >>> 56)       ] << 56 | SBOX[(int)(b2 >>> 16) & 0xff] << 48
+                | SBOX[(int)(a2 >>> 40) & 0xff] << 40 | SBOX[(int) a2         & 0xff] << 32
+                | SBOX[(int)(b2 >>> 24) & 0xff] << 24 | SBOX[(int)(a2 >>> 48) & 0xff] << 16
+                | SBOX[(int)(a2 >>>  8) & 0xff] <<  8 | SBOX[(int)(b2 >>> 32) & 0xff]) ^ k1;
+        dst[doffset + 6] = (SBOX[(int)(a3 >>> 56)       ] << 56 | SBOX[(int)(a3 >>> 16) & 0xff] << 48
+                | SBOX[(int)(b3 >>> 40) & 0xff] << 40 | SBOX[(int) b3         & 0xff] << 32
+                | SBOX[(int)(a3 >>> 24) & 0xff] << 24 | SBOX[(int)(b3 >>> 48) & 0xff] << 16
+                | SBOX[(int)(b3 >>>  8) & 0xff] <<  8 | SBOX[(int)(a3 >>> 32) & 0xff]) ^ k0;
+        dst[doffset + 7] = (SBOX[(int)(b3 >>> 56)       ] << 56 | SBOX[(int)(b3 >>> 16) & 0xff] << 48
+                | SBOX[(int)(a3 >>> 40) & 0xff] << 40 | SBOX[(int) a3         & 0xff] << 32
+                | SBOX[(int)(b3 >>> 24) & 0xff] << 24 | SBOX[(int)(a3 >>> 48) & 0xff] << 16
+                | SBOX[(int)(a3 >>>  8) & 0xff] <<  8 | SBOX[(int)(b3 >>> 32) & 0xff]) ^ k1;
+    }
+
+    /**
+     * 4ブロック同時復号.
+     *
+     * @param src 暗号 4ブロック (long 8個)
+     * @param offset 暗号位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     */
+    private void decrypt4(final long[] src, int offset, long[] dst, int doffset) {
+        int nr = Nr4 / 2;
+        long k0 = lw[nr], k1 = lw[nr + 1];
+        long a0 = src[offset    ] ^ k0, b0 = src[offset + 1] ^ k1;
+        long a1 = src[offset + 2] ^ k0, b1 = src[offset + 3] ^ k1;
+        long a2 = src[offset + 4] ^ k0, b2 = src[offset + 5] ^ k1;
+        long a3 = src[offset + 6] ^ k0, b3 = src[offset + 7] ^ k1;
+
+        for (int r4 = nr - 2; r4 > 0; r4 -= 2) {
+            long c0, d0, c1, d1, c2, d2, c3, d3;
+            c0  = IMIX0[(int)(a0 >>> 56)       ] ^ IMIX1[(int)(b0 >>> 16) & 0xff];
+            d0  = IMIX0[(int)(b0 >>> 56)       ] ^ IMIX1[(int)(a0 >>> 16) & 0xff];
+            c1  = IMIX0[(int)(a1 >>> 56)       ] ^ IMIX1[(int)(b1 >>> 16) & 0xff];
+            d1  = IMIX0[(int)(b1 >>> 56)       ] ^ IMIX1[(int)(a1 >>> 16) & 0xff];
+            c2  = IMIX0[(int)(a2 >>> 56)       ] ^ IMIX1[(int)(b2 >>> 16) & 0xff];
+            d2  = IMIX0[(int)(b2 >>> 56)       ] ^ IMIX1[(int)(a2 >>> 16) & 0xff];
+            c3  = IMIX0[(int)(a3 >>> 56)       ] ^ IMIX1[(int)(b3 >>> 16) & 0xff];
+            d3  = IMIX0[(int)(b3 >>> 56)       ] ^ IMIX1[(int)(a3 >>> 16) & 0xff];
+            c0 ^= IMIX2[(int)(b0 >>> 40) & 0xff] ^ IMIX3[(int) a0         & 0xff];
+            d0 ^= IMIX2[(int)(a0 >>> 40) & 0xff] ^ IMIX3[(int) b0         & 0xff];
+            c1 ^= IMIX2[(int)(b1 >>> 40) & 0xff] ^ IMIX3[(int) a1         & 0xff];
+            d1 ^= IMIX2[(int)(a1 >>> 40) & 0xff] ^ IMIX3[(int) b1         & 0xff];
+            c2 ^= IMIX2[(int)(b2 >>> 40) & 0xff] ^ IMIX3[(int) a2         & 0xff];
+            d2 ^= IMIX2[(int)(a2 >>> 40) & 0xff] ^ IMIX3[(int) b2         & 0xff];
+            c3 ^= IMIX2[(int)(b3 >>> 40) & 0xff] ^ IMIX3[(int) a3         & 0xff];
+            d3 ^= IMIX2[(int)(a3 >>> 40) & 0xff] ^ IMIX3[(int) b3         & 0xff];
+            c0 = c0 << 32 ^ IMIX0[(int)(a0 >>> 24) & 0xff] ^ IMIX1[(int)(a0 >>> 48) & 0xff];
+            d0 = d0 << 32 ^ IMIX0[(int)(b0 >>> 24) & 0xff] ^ IMIX1[(int)(b0 >>> 48) & 0xff];
+            c1 = c1 << 32 ^ IMIX0[(int)(a1 >>> 24) & 0xff] ^ IMIX1[(int)(a1 >>> 48) & 0xff];
+            d1 = d1 << 32 ^ IMIX0[(int)(b1 >>> 24) & 0xff] ^ IMIX1[(int)(b1 >>> 48) & 0xff];
+            c2 = c2 << 32 ^ IMIX0[(int)(a2 >>> 24) & 0xff] ^ IMIX1[(int)(a2 >>> 48) & 0xff];
+            d2 = d2 << 32 ^ IMIX0[(int)(b2 >>> 24) & 0xff] ^ IMIX1[(int)(b2 >>> 48) & 0xff];
+            c3 = c3 << 32 ^ IMIX0[(int)(a3 >>> 24) & 0xff] ^ IMIX1[(int)(a3 >>> 48) & 0xff];
+            d3 = d3 << 32 ^ IMIX0[(int)(b3 >>> 24) & 0xff] ^ IMIX1[(int)(b3 >>> 48) & 0xff];
+            c0 ^= IMIX2[(int)(b0 >>>  8) & 0xff] ^ IMIX3[(int)(b0 >>> 32) & 0xff];
+            d0 ^= IMIX2[(int)(a0 >>>  8) & 0xff] ^ IMIX3[(int)(a0 >>> 32) & 0xff];
+            c1 ^= IMIX2[(int)(b1 >>>  8) & 0xff] ^ IMIX3[(int)(b1 >>> 32) & 0xff];
+            d1 ^= IMIX2[(int)(a1 >>>  8) & 0xff] ^ IMIX3[(int)(a1 >>> 32) & 0xff];
+            c2 ^= IMIX2[(int)(b2 >>>  8) & 0xff] ^ IMIX3[(int)(b2 >>> 32) & 0xff];
+            d2 ^= IMIX2[(int)(a2 >>>  8) & 0xff] ^ IMIX3[(int)(a2 >>> 32) & 0xff];
+            c3 ^= IMIX2[(int)(b3 >>>  8) & 0xff] ^ IMIX3[(int)(b3 >>> 32) & 0xff];
+            d3 ^= IMIX2[(int)(a3 >>>  8) & 0xff] ^ IMIX3[(int)(a3 >>> 32) & 0xff];
+            k0 = ldw[r4];
+            k1 = ldw[r4 + 1];
+            a0 = c0 ^ k0;
+            b0 = d0 ^ k1;
+            a1 = c1 ^ k0;
+            b1 = d1 ^ k1;
+            a2 = c2 ^ k0;
+            b2 = d2 ^ k1;
+            a3 = c3 ^ k0;
+            b3 = d3 ^ k1;
+        }
+
+        k0 = lw[0];
+        k1 = lw[1];
+        dst[doffset    ] = (IBOX[(int)(a0 >>> 56)       ] << 56 ^ IBOX[(int)(b0 >>> 16) & 0xff] << 48
+                ^ IBOX[(int)(b0 >>> 40) & 0xff] << 40 ^ IBOX[(int) a0         & 0xff] << 32
+                ^ IBOX[(int)(a0 >>> 24) & 0xff] << 24 ^ IBOX[(int)(a0 >>> 48) & 0xff] << 16
+                ^ IBOX[(int)(b0 >>>  8) & 0xff] <<  8 ^ IBOX[(int)(b0 >>> 32) & 0xff]) ^ k0;
+        dst[doffset + 1] = (IBOX[(int)(b0 >>> 56)       ] << 56 ^ IBOX[(int)(a0 >>> 16) & 0xff] << 48
+                ^ IBOX[(int)(a0 >>> 40) & 0xff] << 40 ^ IBOX[(int) b0         & 0xff] << 32
+                ^ IBOX[(int)(b0 >>> 24) & 0xff] << 24 ^ IBOX[(int)(b0 >>> 48) & 0xff] << 16
+                ^ IBOX[(int)(a0 >>>  8) & 0xff] <<  8 ^ IBOX[(int)(a0 >>> 32) & 0xff]) ^ k1;
+        dst[doffset + 2] = (IBOX[(int)(a1 >>> 56)       ] << 56 ^ IBOX[(int)(b1 >>> 16) & 0xff] << 48
+                ^ IBOX[(int)(b1 >>> 40) & 0xff] << 40 ^ IBOX[(int) a1         & 0xff] << 32
+                ^ IBOX[(int)(a1 >>> 24) & 0xff] << 24 ^ IBOX[(int)(a1 >>> 48) & 0xff] << 16
+                ^ IBOX[(int)(b1 >>>  8) & 0xff] <<  8 ^ IBOX[(int)(b1 >>> 32) & 0xff]) ^ k0;
+        dst[doffset + 3] = (IBOX[(int)(b1 >>> 56)       ] << 56 ^ IBOX[(int)(a1 >>> 16) & 0xff] << 48
+                ^ IBOX[(int)(a1 >>> 40) & 0xff] << 40 ^ IBOX[(int) b1         & 0xff] << 32
+                ^ IBOX[(int)(b1 >>> 24) & 0xff] << 24 ^ IBOX[(int)(b1 >>> 48) & 0xff] << 16
+                ^ IBOX[(int)(a1 >>>  8) & 0xff] <<  8 ^ IBOX[(int)(a1 >>> 32) & 0xff]) ^ k1;
+        dst[doffset + 4] = (IBOX[(int)(a2 >>> 56)       ] << 56 ^ IBOX[(int)(b2 >>> 16) & 0xff] << 48
+                ^ IBOX[(int)(b2 >>> 40) & 0xff] << 40 ^ IBOX[(int) a2         & 0xff] << 32
+                ^ IBOX[(int)(a2 >>> 24) & 0xff] << 24 ^ IBOX[(int)(a2 >>> 48) & 0xff] << 16
+                ^ IBOX[(int)(b2 >>>  8) & 0xff] <<  8 ^ IBOX[(int)(b2 >>> 32) & 0xff]) ^ k0;
+        dst[doffset + 5] = (IBOX[(int)(b2 >>> 56)       ] << 56 ^ IBOX[(int)(a2 >>> 16) & 0xff] << 48
+                ^ IBOX[(int)(a2 >>> 40) & 0xff] << 40 ^ IBOX[(int) b2         & 0xff] << 32
+                ^ IBOX[(int)(b2 >>> 24) & 0xff] << 24 ^ IBOX[(int)(b2 >>> 48) & 0xff] << 16
+                ^ IBOX[(int)(a2 >>>  8) & 0xff] <<  8 ^ IBOX[(int)(a2 >>> 32) & 0xff]) ^ k1;
+        dst[doffset + 6] = (IBOX[(int)(a3 >>> 56)       ] << 56 ^ IBOX[(int)(b3 >>> 16) & 0xff] << 48
+                ^ IBOX[(int)(b3 >>> 40) & 0xff] << 40 ^ IBOX[(int) a3         & 0xff] << 32
+                ^ IBOX[(int)(a3 >>> 24) & 0xff] << 24 ^ IBOX[(int)(a3 >>> 48) & 0xff] << 16
+                ^ IBOX[(int)(b3 >>>  8) & 0xff] <<  8 ^ IBOX[(int)(b3 >>> 32) & 0xff]) ^ k0;
+        dst[doffset + 7] = (IBOX[(int)(b3 >>> 56)       ] << 56 ^ IBOX[(int)(a3 >>> 16) & 0xff] << 48
+                ^ IBOX[(int)(a3 >>> 40) & 0xff] << 40 ^ IBOX[(int) b3         & 0xff] << 32
+                ^ IBOX[(int)(b3 >>> 24) & 0xff] << 24 ^ IBOX[(int)(b3 >>> 48) & 0xff] << 16
+                ^ IBOX[(int)(a3 >>>  8) & 0xff] <<  8 ^ IBOX[(int)(a3 >>> 32) & 0xff]) ^ k1;
+    }
+
+    private static void itob(int v, byte[] dst, int offset) {
+        dst[offset    ] = (byte)(v >>> 24);
+        dst[offset + 1] = (byte)(v >>> 16);
+        dst[offset + 2] = (byte)(v >>>  8);
+        dst[offset + 3] = (byte) v;
+    }
+
+    private static void ltob(long v, byte[] dst, int offset) {
+        itob((int)(v >>> 32), dst, offset);
+        itob((int) v, dst, offset + 4);
+    }
+
+    @Override
+    public byte[] encrypt(final byte[] src, int offset) {
+        byte[] ret = new byte[16];
+        encrypt(src, offset, ret, 0);
         return ret;
     }
 
@@ -322,10 +673,11 @@ public class AES extends IntBlock {
      *
      * @param src planetext 16byte
      * @param offset 先頭位置
-     * @return chipertext
+     * @param dst chipertext 出力先
+     * @param doffset 出力位置
      */
     @Override
-    public byte[] encrypt(final byte[] src, int offset) {
+    public void encrypt(final byte[] src, int offset, byte[] dst, int doffset) {
         long a = 0, b = 0;
         int nr = Nr4 / 2;
         for (int i = 0; i < 8; i++) {
@@ -385,12 +737,10 @@ public class AES extends IntBlock {
           |   SBOX[(int)(b >> 32) & 0xff]);
 
         // AddRoundKey
-        return Bin.itob(new int[] {
-            e ^ w[Nr4] ,
-            f ^ w[Nr4 + 1],
-            g ^ w[Nr4 + 2],
-            d ^ w[Nr4 + 3]
-        });
+        itob(e ^ w[Nr4    ], dst, doffset);
+        itob(f ^ w[Nr4 + 1], dst, doffset +  4);
+        itob(g ^ w[Nr4 + 2], dst, doffset +  8);
+        itob(d ^ w[Nr4 + 3], dst, doffset + 12);
     }
 
     /**
@@ -404,6 +754,21 @@ public class AES extends IntBlock {
      */
     @Override
     public int[] encrypt(final int[] src, int offset) {
+        int[] ret = new int[4];
+        encrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    /**
+     * AES エンコード
+     *
+     * @param src planetext 16byte
+     * @param offset 先頭位置
+     * @param dst chipertext 出力先
+     * @param doffset 出力位置
+     */
+    @Override
+    public void encrypt(final int[] src, int offset, int[] dst, int doffset) {
         long a, b;
         a = ((long)src[offset]) << 32;
         a |= src[offset+1] & 0xffffffffL;
@@ -461,12 +826,10 @@ public class AES extends IntBlock {
           |   SBOX[(int)(b >> 32) & 0xff]);
 
         // AddRoundKey
-        return new int[] {
-            e ^ w[Nr4] ,
-            f ^ w[Nr4 + 1],
-            g ^ w[Nr4 + 2],
-            h ^ w[Nr4 + 3]
-        };
+        dst[doffset    ] = e ^ w[Nr4    ];
+        dst[doffset + 1] = f ^ w[Nr4 + 1];
+        dst[doffset + 2] = g ^ w[Nr4 + 2];
+        dst[doffset + 3] = h ^ w[Nr4 + 3];
     }
 
     /**
@@ -480,6 +843,21 @@ public class AES extends IntBlock {
      */
     @Override
     public long[] encrypt(final long[] src, int offset) {
+        long[] ret = new long[2];
+        encrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    /**
+     * AES エンコード
+     *
+     * @param src planetext 16byte
+     * @param offset 先頭位置
+     * @param dst chipertext 出力先
+     * @param doffset 出力位置
+     */
+    @Override
+    public void encrypt(final long[] src, int offset, long[] dst, int doffset) {
         long a, b;
         int nr = Nr4/2;
         // AddRoundKey
@@ -533,10 +911,8 @@ public class AES extends IntBlock {
           |   SBOX[(int)(b >>> 32) & 0xff];
 
         // AddRoundKey
-        return new long[] {
-            e ^ lw[nr] ,
-            f ^ lw[nr + 1]
-        };
+        dst[doffset    ] = e ^ lw[nr    ];
+        dst[doffset + 1] = f ^ lw[nr + 1];
     }
 
     /**
@@ -549,6 +925,21 @@ public class AES extends IntBlock {
      */
     @Override
     public int[] decrypt(final int[] src, final int offset) {
+        int[] ret = new int[4];
+        decrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    /**
+     * AES デコード
+     *
+     * @param src int型に納めた暗号文
+     * @param offset 復号化位置
+     * @param dst 平文出力先
+     * @param doffset 出力位置
+     */
+    @Override
+    public void decrypt(final int[] src, final int offset, int[] dst, int doffset) {
         long a, b;
         int nr = Nr4 / 2;
         a = (long)src[offset + 0] << 32;
@@ -601,11 +992,10 @@ public class AES extends IntBlock {
         f ^= IBOX[(int)(a >>   8) & 0xff] << 8;
         f ^= IBOX[(int)(a >>  32) & 0xff];
 
-        return new int[] {
-            c ^ w[0],
-            d ^ w[1],
-            e ^ w[2],
-            f ^ w[3]};
+        dst[doffset    ] = c ^ w[0];
+        dst[doffset + 1] = d ^ w[1];
+        dst[doffset + 2] = e ^ w[2];
+        dst[doffset + 3] = f ^ w[3];
     }
 
 
@@ -619,6 +1009,21 @@ public class AES extends IntBlock {
      */
     @Override
     public long[] decrypt(final long[] src, final int offset) {
+        long[] ret = new long[2];
+        decrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    /**
+     * AES デコード
+     *
+     * @param src long型に納めた暗号文
+     * @param offset 復号化位置
+     * @param dst 平文出力先
+     * @param doffset 出力位置
+     */
+    @Override
+    public void decrypt(final long[] src, final int offset, long[] dst, int doffset) {
         long a, b;
         int nr = Nr4 / 2;
         a = src[offset    ] ^ lw[nr];
@@ -667,8 +1072,83 @@ public class AES extends IntBlock {
           ^  IBOX[(int)(b >>  32) & 0xff];
         d ^= IBOX[(int)(a >>  32) & 0xff];
 
-        return new long[] {
-            c ^ lw[0],
-            d ^ lw[1]};
+        dst[doffset    ] = c ^ lw[0];
+        dst[doffset + 1] = d ^ lw[1];
+    }
+
+    @Override
+    public byte[] decrypt(final byte[] src, final int offset) {
+        byte[] ret = new byte[16];
+        decrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    /**
+     * AES デコード
+     * int列に変換しない版.
+     *
+     * @param src 暗号文
+     * @param offset 復号化位置
+     * @param dst 平文出力先
+     * @param doffset 出力位置
+     */
+    @Override
+    public void decrypt(final byte[] src, final int offset, byte[] dst, int doffset) {
+        long a = 0, b = 0;
+        int nr = Nr4 / 2;
+        for (int i = 0; i < 8; i++) {
+            a <<= 8;
+            a |= src[offset + i] & 0xff;
+            b <<= 8;
+            b |= src[offset + i + 8] & 0xff;
+        }
+        a ^= lw[nr];
+        b ^= lw[nr+1];
+
+        for (int r4 = nr - 2; r4 > 0; r4 -= 2) {
+            long c, d;
+
+            c =  IMIX0[(int)(a >>> 56)       ]
+              ^  IMIX1[(int)(b >>  16) & 0xff];
+            d =  IMIX0[(int)(b >>> 56)       ]
+              ^  IMIX1[(int)(a >>  16) & 0xff];
+            c ^= IMIX2[(int)(b >>  40) & 0xff]
+              ^  IMIX3[(int) a         & 0xff];
+            d ^= IMIX2[(int)(a >>  40) & 0xff]
+              ^  IMIX3[(int) b         & 0xff];
+            c <<= 32;
+            d <<= 32;
+            c ^= IMIX0[(int)(a >>  24) & 0xff]
+              ^  IMIX1[(int)(a >>  48) & 0xff];
+            d ^= IMIX0[(int)(b >>  24) & 0xff]
+              ^  IMIX1[(int)(b >>  48) & 0xff];
+            c ^= IMIX2[(int)(b >>   8) & 0xff]
+              ^  IMIX3[(int)(b >>  32) & 0xff];
+            d ^= IMIX2[(int)(a >>   8) & 0xff]
+              ^  IMIX3[(int)(a >>  32) & 0xff];
+            a = c ^ ldw[r4];
+            b = d ^ ldw[r4+1];
+        }
+
+        long c, d;
+        d  = IBOX[(int)(b >>> 56)       ] << 56
+          ^  IBOX[(int)(a >>  16) & 0xff] << 48;
+        c  = IBOX[(int)(a >>> 56)       ] << 56
+          ^  IBOX[(int)(b >>  16) & 0xff] << 48;
+        d ^= IBOX[(int)(a >>  40) & 0xff] << 40;
+        c ^= IBOX[(int)(b >>  40) & 0xff] << 40;
+        d ^= IBOX[(int) b         & 0xff] << 32;
+        c ^= IBOX[(int) a         & 0xff] << 32;
+        d ^= IBOX[(int)(b >>  24) & 0xff] << 24
+          ^  IBOX[(int)(b >>  48) & 0xff] << 16;
+        c ^= IBOX[(int)(a >>  24) & 0xff] << 24
+          ^  IBOX[(int)(a >>  48) & 0xff] << 16;
+        d ^= IBOX[(int)(a >>   8) & 0xff] << 8;
+        c ^= IBOX[(int)(b >>   8) & 0xff] << 8
+          ^  IBOX[(int)(b >>  32) & 0xff];
+        d ^= IBOX[(int)(a >>  32) & 0xff];
+
+        ltob(c ^ lw[0], dst, doffset);
+        ltob(d ^ lw[1], dst, doffset + 8);
     }
 }
@@ -0,0 +1,721 @@
+/*
+ * Copyright 2023 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.block;
+
+import net.siisise.iso.asn1.tag.OBJECTIDENTIFIER;
+
+/**
+ * Adbanced Encryption Standard.
+ * ビットスライス版.
+ *
+ * テーブルを引かないので鍵や平文によるキャッシュの差が出ない定数時間実装.
+ * 64bit x 8 で 4ブロックをまとめて処理する.
+ * 1ブロック単位では遅いので CTR, GCM などまとめて暗号化できるところで使う.
+ *
+ * S-box は Boyar-Peralta の回路.
+ * ビットの並びは BearSSL aes_ct64 と同じ.
+ * https://www.bearssl.org/constanttime.html
+ * https://eprint.iacr.org/2011/332.pdf
+ */
+public class AESBitslice extends LongBlock {
+
+    /**
+     * OIDから暗号.
+     * AES.toBlockPad のビットスライス版.
+     * @param alg OID
+     * @return 該当しない場合は null
+     */
+    public static Block toBlockPad(OBJECTIDENTIFIER alg) {
+        return AES.toBlockPad(alg, true);
+    }
+
+    private static final int[] Rcon = {0x01, 0x02, 0x04, 0x08, 0x10, 0x20, 0x40, 0x80, 0x1b, 0x36};
+
+    private final int keyLength;
+    private int Nr;
+
+    /**
+     * ラウンド鍵 ビットスライス済み 1ラウンド 8 long
+     */
+    private long[] skey;
+
+    public AESBitslice() {
+        keyLength = 0;
+    }
+
+    /**
+     *
+     * @param bit 鍵長 128, 192, 256 0は可変
+     */
+    public AESBitslice(int bit) {
+        keyLength = bit;
+    }
+
+    @Override
+    public int getBlockLength() {
+        return 128;
+    }
+
+    /**
+     * 必要なパラメータサイズ
+     * @return 長さ列
+     */
+    @Override
+    public int[] getParamLength() {
+        if (keyLength == 0) {
+            return new int[] {128};
+        }
+        return new int[] {keyLength};
+    }
+
+    /**
+     * 鍵.
+     *
+     * @param keys 128,192,256bit (16,24,32byte)のいずれか
+     */
+    @Override
+    public void init(byte[]... keys) {
+        byte[] key = keys[0];
+
+        if (keyLength == 0) {
+            if (key.length != 16 && key.length != 24 && key.length != 32) {
+                throw new SecurityException("key length (" + key.length + ")");
+            }
+        } else if (key.length * 8 != keyLength) {
+            throw new SecurityException("key length (" + key.length + ")");
+        }
+
+        int Nk = key.length / 4;
+        Nr = Nk + 6;
+        int nkf = (Nr + 1) * 4;
+        int[] w = new int[nkf];
+        for (int i = 0; i < Nk; i++) {
+            w[i] = le32(key, i * 4);
+        }
+        int tmp = w[Nk - 1];
+        for (int i = Nk, j = 0, k = 0; i < nkf; i++) {
+            if (j == 0) {
+                tmp = subWord((tmp << 24) | (tmp >>> 8)) ^ Rcon[k];
+            } else if (Nk > 6 && j == 4) {
+                tmp = subWord(tmp);
+            }
+            tmp ^= w[i - Nk];
+            w[i] = tmp;
+            if (++j == Nk) {
+                j = 0;
+                k++;
+            }
+        }
+
+        // 4ブロック分同じ鍵を並べてビットスライスしておく
+        skey = new long[(Nr + 1) * 8];
+        long[] q = new long[8];
+        for (int i = 0; i < nkf; i += 4) {
+            interleaveIn(q, 0, w[i], w[i + 1], w[i + 2], w[i + 3]);
+            q[1] = q[2] = q[3] = q[0];
+            q[5] = q[6] = q[7] = q[4];
+            ortho(q);
+            System.arraycopy(q, 0, skey, i * 2, 8);
+        }
+    }
+
+    /**
+     * 鍵スケジュール用 S-box
+     * @param x 4バイト
+     * @return SubWord
+     */
+    private static int subWord(int x) {
+        long[] q = new long[8];
+        q[0] = x & 0xffffffffL;
+        ortho(q);
+        sbox(q);
+        ortho(q);
+        return (int) q[0];
+    }
+
+    private static int le32(byte[] src, int offset) {
+        return (src[offset] & 0xff)
+                | (src[offset + 1] & 0xff) << 8
+                | (src[offset + 2] & 0xff) << 16
+                | (src[offset + 3] & 0xff) << 24;
+    }
+
+    private static void le32(int v, byte[] dst, int offset) {
+        dst[offset] = (byte) v;
+        dst[offset + 1] = (byte) (v >>> 8);
+        dst[offset + 2] = (byte) (v >>> 16);
+        dst[offset + 3] = (byte) (v >>> 24);
+    }
+
+    /**
+     * 1ブロックを q[n], q[n+4] に並べる.
+     * @param q ビットスライス
+     * @param n ブロック位置 0～3
+     * @param w0 リトルエンディアン32bit
+     * @param w1
+     * @param w2
+     * @param w3
+     */
+    private static void interleaveIn(long[] q, int n, int w0, int w1, int w2, int w3) {
+        long x0 = spread(w0);
+        long x1 = spread(w1);
+        long x2 = spread(w2);
+        long x3 = spread(w3);
+        q[n] = x0 | (x2 << 8);
+        q[n + 4] = x1 | (x3 << 8);
+    }
+
+    /**
+     * 32bit を 8bit 飛ばしに広げる.
+     * @param w 32bit
+     * @return 00aa00bb00cc00dd
+     */
+    private static long spread(int w) {
+        long x = w & 0xffffffffL;
+        x = (x | (x << 16)) & 0x0000ffff0000ffffL;
+        return (x | (x << 8)) & 0x00ff00ff00ff00ffL;
+    }
+
+    /**
+     * spread の逆
+     * @param x 00aa00bb00cc00dd
+     * @return 32bit
+     */
+    private static int gather(long x) {
+        x &= 0x00ff00ff00ff00ffL;
+        x = (x | (x >>> 8)) & 0x0000ffff0000ffffL;
+        return (int) x | (int) (x >>> 16);
+    }
+
+    /**
+     * ビット行列の転置. 2回で戻る.
+     * @param q 8 long
+     */
+    private static void ortho(long[] q) {
+        swap(q, 0, 1, 0x5555555555555555L, 1);
+        swap(q, 2, 3, 0x5555555555555555L, 1);
+        swap(q, 4, 5, 0x5555555555555555L, 1);
+        swap(q, 6, 7, 0x5555555555555555L, 1);
+
+        swap(q, 0, 2, 0x3333333333333333L, 2);
+        swap(q, 1, 3, 0x3333333333333333L, 2);
+        swap(q, 4, 6, 0x3333333333333333L, 2);
+        swap(q, 5, 7, 0x3333333333333333L, 2);
+
+        swap(q, 0, 4, 0x0f0f0f0f0f0f0f0fL, 4);
+        swap(q, 1, 5, 0x0f0f0f0f0f0f0f0fL, 4);
+        swap(q, 2, 6, 0x0f0f0f0f0f0f0f0fL, 4);
+        swap(q, 3, 7, 0x0f0f0f0f0f0f0f0fL, 4);
+    }
+
+    private static void swap(long[] q, int x, int y, long cl, int s) {
+        long a = q[x];
+        long b = q[y];
+        q[x] = (a & cl) | ((b & cl) << s);
+        q[y] = ((a >>> s) & cl) | (b & ~cl);
+    }
+
+    /**
+     * S-box.
+     * Boyar-Peralta 回路 113ゲート
+     * @param q ビットスライス q[7] が最上位ビット
+     */
+    private static void sbox(long[] q) {
+        long x0 = q[7];
+        long x1 = q[6];
+        long x2 = q[5];
+        long x3 = q[4];
+        long x4 = q[3];
+        long x5 = q[2];
+        long x6 = q[1];
+        long x7 = q[0];
+
+        // Top linear transformation.
+        long y14 = x3 ^ x5;
+        long y13 = x0 ^ x6;
+        long y9 = x0 ^ x3;
+        long y8 = x0 ^ x5;
+        long t0 = x1 ^ x2;
+        long y1 = t0 ^ x7;
+        long y4 = y1 ^ x3;
+        long y12 = y13 ^ y14;
+        long y2 = y1 ^ x0;
+        long y5 = y1 ^ x6;
+        long y3 = y5 ^ y8;
+        long t1 = x4 ^ y12;
+        long y15 = t1 ^ x5;
+        long y20 = t1 ^ x1;
+        long y6 = y15 ^ x7;
+        long y10 = y15 ^ t0;
+        long y11 = y20 ^ y9;
+        long y7 = x7 ^ y11;
+        long y17 = y10 ^ y11;
+        long y19 = y10 ^ y8;
+        long y16 = t0 ^ y11;
+        long y21 = y13 ^ y16;
+        long y18 = x0 ^ y16;
+
+        // Non-linear section.
+        long t2 = y12 & y15;
+        long t3 = y3 & y6;
+        long t4 = t3 ^ t2;
+        long t5 = y4 & x7;
+        long t6 = t5 ^ t2;
+        long t7 = y13 & y16;
+        long t8 = y5 & y1;
+        long t9 = t8 ^ t7;
+        long t10 = y2 & y7;
+        long t11 = t10 ^ t7;
+        long t12 = y9 & y11;
+        long t13 = y14 & y17;
+        long t14 = t13 ^ t12;
+        long t15 = y8 & y10;
+        long t16 = t15 ^ t12;
+        long t17 = t4 ^ t14;
+        long t18 = t6 ^ t16;
+        long t19 = t9 ^ t14;
+        long t20 = t11 ^ t16;
+        long t21 = t17 ^ y20;
+        long t22 = t18 ^ y19;
+        long t23 = t19 ^ y21;
+        long t24 = t20 ^ y18;
+
+        long t25 = t21 ^ t22;
+        long t26 = t21 & t23;
+        long t27 = t24 ^ t26;
+        long t28 = t25 & t27;
+        long t29 = t28 ^ t22;
+        long t30 = t23 ^ t24;
+        long t31 = t22 ^ t26;
+        long t32 = t31 & t30;
+        long t33 = t32 ^ t24;
+        long t34 = t23 ^ t33;
+        long t35 = t27 ^ t33;
+        long t36 = t24 & t35;
+        long t37 = t36 ^ t34;
+        long t38 = t27 ^ t36;
+        long t39 = t29 & t38;
+        long t40 = t25 ^ t39;
+
+        long t41 = t40 ^ t37;
+        long t42 = t29 ^ t33;
+        long t43 = t29 ^ t40;
+        long t44 = t33 ^ t37;
+        long t45 = t42 ^ t41;
+        long z0 = t44 & y15;
+        long z1 = t37 & y6;
+        long z2 = t33 & x7;
+        long z3 = t43 & y16;
+        long z4 = t40 & y1;
+        long z5 = t29 & y7;
+        long z6 = t42 & y11;
+        long z7 = t45 & y17;
+        long z8 = t41 & y10;
+        long z9 = t44 & y12;
+        long z10 = t37 & y3;
+        long z11 = t33 & y4;
+        long z12 = t43 & y13;
+        long z13 = t40 & y5;
+        long z14 = t29 & y2;
+        long z15 = t42 & y9;
+        long z16 = t45 & y14;
+        long z17 = t41 & y8;
+
+        // Bottom linear transformation.
+        long t46 = z15 ^ z16;
+        long t47 = z10 ^ z11;
+        long t48 = z5 ^ z13;
+        long t49 = z9 ^ z10;
+        long t50 = z2 ^ z12;
+        long t51 = z2 ^ z5;
+        long t52 = z7 ^ z8;
+        long t53 = z0 ^ z3;
+        long t54 = z6 ^ z7;
+        long t55 = z16 ^ z17;
+        long t56 = z12 ^ t48;
+        long t57 = t50 ^ t53;
+        long t58 = z4 ^ t46;
+        long t59 = z3 ^ t54;
+        long t60 = t46 ^ t57;
+        long t61 = z14 ^ t57;
+        long t62 = t52 ^ t58;
+        long t63 = t49 ^ t58;
+        long t64 = z4 ^ t59;
+        long t65 = t61 ^ t62;
+        long t66 = z1 ^ t63;
+        long s0 = t59 ^ t63;
+        long s6 = t56 ^ ~t62;
+        long s7 = t48 ^ ~t60;
+        long t67 = t64 ^ t65;
+        long s3 = t53 ^ t66;
+        long s4 = t51 ^ t66;
+        long s5 = t47 ^ t65;
+        long s1 = t64 ^ ~s3;
+        long s2 = t55 ^ ~t67;
+
+        q[7] = s0;
+        q[6] = s1;
+        q[5] = s2;
+        q[4] = s3;
+        q[3] = s4;
+        q[2] = s5;
+        q[1] = s6;
+        q[0] = s7;
+    }
+
+    /**
+     * 逆 S-box.
+     * アフィン変換の逆を前後に置いて S-box を流用する.
+     * @param q ビットスライス
+     */
+    private static void invSbox(long[] q) {
+        invAffine(q);
+        sbox(q);
+        invAffine(q);
+    }
+
+    /**
+     * アフィン変換の逆.
+     * b'i = b(i+2) ^ b(i+5) ^ b(i+7) ^ 0x05
+     * @param q ビットスライス
+     */
+    private static void invAffine(long[] q) {
+        long q0 = q[0];
+        long q1 = q[1];
+        long q2 = q[2];
+        long q3 = q[3];
+        long q4 = q[4];
+        long q5 = q[5];
+        long q6 = q[6];
+        long q7 = q[7];
+        q[7] = q1 ^ q4 ^ q6;
+        q[6] = q0 ^ q3 ^ q5;
+        q[5] = q7 ^ q2 ^ q4;
+        q[4] = q6 ^ q1 ^ q3;
+        q[3] = q5 ^ q0 ^ q2;
+        q[2] = ~(q4 ^ q7 ^ q1);
+        q[1] = q3 ^ q6 ^ q0;
+        q[0] = ~(q2 ^ q5 ^ q7);
+    }
+
+    private static void shiftRows(long[] q) {
+        for (int i = 0; i < 8; i++) {
+            long x = q[i];
+            q[i] = (x & 0x000000000000ffffL)
+                    | ((x & 0x00000000fff00000L) >>> 4)
+                    | ((x & 0x00000000000f0000L) << 12)
+                    | ((x & 0x0000ff0000000000L) >>> 8)
+                    | ((x & 0x000000ff00000000L) << 8)
+                    | ((x & 0xf000000000000000L) >>> 12)
+                    | ((x & 0x0fff000000000000L) << 4);
+        }
+    }
+
+    private static void invShiftRows(long[] q) {
+        for (int i = 0; i < 8; i++) {
+            long x = q[i];
+            q[i] = (x & 0x000000000000ffffL)
+                    | ((x & 0x000000000fff0000L) << 4)
+                    | ((x & 0x00000000f0000000L) >>> 12)
+                    | ((x & 0x000000ff00000000L) << 8)
+                    | ((x & 0x0000ff0000000000L) >>> 8)
+                    | ((x & 0x000f000000000000L) << 12)
+                    | ((x & 0xfff0000000000000L) >>> 4);
+        }
+    }
+
+    private static long rotr32(long x) {
+        return (x << 32) | (x >>> 32);
+    }
+
+    private static long rotr16(long x) {
+        return (x >>> 16) | (x << 48);
+    }
+
+    private static void mixColumns(long[] q) {
+        long q0 = q[0];
+        long q1 = q[1];
+        long q2 = q[2];
+        long q3 = q[3];
+        long q4 = q[4];
+        long q5 = q[5];
+        long q6 = q[6];
+        long q7 = q[7];
+        long r0 = rotr16(q0);
+        long r1 = rotr16(q1);
+        long r2 = rotr16(q2);
+        long r3 = rotr16(q3);
+        long r4 = rotr16(q4);
+        long r5 = rotr16(q5);
+        long r6 = rotr16(q6);
+        long r7 = rotr16(q7);
+
+        q[0] = q7 ^ r7 ^ r0 ^ rotr32(q0 ^ r0);
+        q[1] = q0 ^ r0 ^ q7 ^ r7 ^ r1 ^ rotr32(q1 ^ r1);
+        q[2] = q1 ^ r1 ^ r2 ^ rotr32(q2 ^ r2);
+        q[3] = q2 ^ r2 ^ q7 ^ r7 ^ r3 ^ rotr32(q3 ^ r3);
+        q[4] = q3 ^ r3 ^ q7 ^ r7 ^ r4 ^ rotr32(q4 ^ r4);
+        q[5] = q4 ^ r4 ^ r5 ^ rotr32(q5 ^ r5);
+        q[6] = q5 ^ r5 ^ r6 ^ rotr32(q6 ^ r6);
+        q[7] = q6 ^ r6 ^ r7 ^ rotr32(q7 ^ r7);
+    }
+
+    private static void invMixColumns(long[] q) {
+        long q0 = q[0];
+        long q1 = q[1];
+        long q2 = q[2];
+        long q3 = q[3];
+        long q4 = q[4];
+        long q5 = q[5];
+        long q6 = q[6];
+        long q7 = q[7];
+        long r0 = rotr16(q0);
+        long r1 = rotr16(q1);
+        long r2 = rotr16(q2);
+        long r3 = rotr16(q3);
+        long r4 = rotr16(q4);
+        long r5 = rotr16(q5);
+        long r6 = rotr16(q6);
+        long r7 = rotr16(q7);
+
+        q[0] = q5 ^ q6 ^ q7 ^ r0 ^ r5 ^ r7 ^ rotr32(q0 ^ q5 ^ q6 ^ r0 ^ r5);
+        q[1] = q0 ^ q5 ^ r0 ^ r1 ^ r5 ^ r6 ^ r7 ^ rotr32(q1 ^ q5 ^ q7 ^ r1 ^ r5 ^ r6);
+        q[2] = q0 ^ q1 ^ q6 ^ r1 ^ r2 ^ r6 ^ r7 ^ rotr32(q0 ^ q2 ^ q6 ^ r2 ^ r6 ^ r7);
+        q[3] = q0 ^ q1 ^ q2 ^ q5 ^ q6 ^ r0 ^ r2 ^ r3 ^ r5 ^ rotr32(q0 ^ q1 ^ q3 ^ q5 ^ q6 ^ q7 ^ r0 ^ r3 ^ r5 ^ r7);
+        q[4] = q1 ^ q2 ^ q3 ^ q5 ^ r1 ^ r3 ^ r4 ^ r5 ^ r6 ^ r7 ^ rotr32(q1 ^ q2 ^ q4 ^ q5 ^ q7 ^ r1 ^ r4 ^ r5 ^ r6);
+        q[5] = q2 ^ q3 ^ q4 ^ q6 ^ r2 ^ r4 ^ r5 ^ r6 ^ r7 ^ rotr32(q2 ^ q3 ^ q5 ^ q6 ^ r2 ^ r5 ^ r6 ^ r7);
+        q[6] = q3 ^ q4 ^ q5 ^ q7 ^ r3 ^ r5 ^ r6 ^ r7 ^ rotr32(q3 ^ q4 ^ q6 ^ q7 ^ r3 ^ r6 ^ r7);
+        q[7] = q4 ^ q5 ^ q6 ^ r4 ^ r6 ^ r7 ^ rotr32(q4 ^ q5 ^ q7 ^ r4 ^ r7);
+    }
+
+    private void addRoundKey(long[] q, int round) {
+        int o = round * 8;
+        for (int i = 0; i < 8; i++) {
+            q[i] ^= skey[o + i];
+        }
+    }
+
+    /**
+     * 4ブロック暗号化.
+     * @param q ビットスライス済み
+     */
+    private void encrypt4(long[] q) {
+        addRoundKey(q, 0);
+        for (int r = 1; r < Nr; r++) {
+            sbox(q);
+            shiftRows(q);
+            mixColumns(q);
+            addRoundKey(q, r);
+        }
+        sbox(q);
+        shiftRows(q);
+        addRoundKey(q, Nr);
+    }
+
+    /**
+     * 4ブロック復号.
+     * @param q ビットスライス済み
+     */
+    private void decrypt4(long[] q) {
+        addRoundKey(q, Nr);
+        for (int r = Nr - 1; r > 0; r--) {
+            invShiftRows(q);
+            invSbox(q);
+            addRoundKey(q, r);
+            invMixColumns(q);
+        }
+        invShiftRows(q);
+        invSbox(q);
+        addRoundKey(q, 0);
+    }
+
+    /**
+     * long[] 最大 4ブロックをビットスライスに詰める.
+     * @param src 元
+     * @param offset 位置
+     * @param n ブロック数
+     * @param q ビットスライス
+     */
+    private static void load(long[] src, int offset, int n, long[] q) {
+        for (int i = 0; i < 4; i++) {
+            if (i < n) {
+                long h = src[offset + i * 2];
+                long l = src[offset + i * 2 + 1];
+                interleaveIn(q, i, Integer.reverseBytes((int) (h >>> 32)), Integer.reverseBytes((int) h),
+                        Integer.reverseBytes((int) (l >>> 32)), Integer.reverseBytes((int) l));
+            } else {
+                q[i] = 0;
+                q[i + 4] = 0;
+            }
+        }
+        ortho(q);
+    }
+
+    private static void store(long[] q, long[] dst, int doffset, int n) {
+        ortho(q);
+        for (int i = 0; i < n; i++) {
+            long q0 = q[i];
+            long q1 = q[i + 4];
+            int w0 = gather(q0);
+            int w1 = gather(q1);
+            int w2 = gather(q0 >>> 8);
+            int w3 = gather(q1 >>> 8);
+            dst[doffset + i * 2] = ((long) Integer.reverseBytes(w0) << 32) | (Integer.reverseBytes(w1) & 0xffffffffL);
+            dst[doffset + i * 2 + 1] = ((long) Integer.reverseBytes(w2) << 32) | (Integer.reverseBytes(w3) & 0xffffffffL);
+        }
+    }
+
+    private static void load(byte[] src, int offset, int n, long[] q) {
+        for (int i = 0; i < 4; i++) {
+            if (i < n) {
+                int o = offset + i * 16;
+                interleaveIn(q, i, le32(src, o), le32(src, o + 4), le32(src, o + 8), le32(src, o + 12));
+            } else {
+                q[i] = 0;
+                q[i + 4] = 0;
+            }
+        }
+        ortho(q);
+    }
+
+    private static void store(long[] q, byte[] dst, int doffset, int n) {
+        ortho(q);
+        for (int i = 0; i < n; i++) {
+            int o = doffset + i * 16;
+            long q0 = q[i];
+            long q1 = q[i + 4];
+            le32(gather(q0), dst, o);
+            le32(gather(q1), dst, o + 4);
+            le32(gather(q0 >>> 8), dst, o + 8);
+            le32(gather(q1 >>> 8), dst, o + 12);
+        }
+    }
+
+    @Override
+    public long[] encrypt(long[] src, int offset) {
+        long[] ret = new long[2];
+        encrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    @Override
+    public void encrypt(long[] src, int offset, long[] dst, int doffset) {
+        encrypt(src, offset, dst, doffset, 2);
+    }
+
+    @Override
+    public long[] decrypt(long[] src, int offset) {
+        long[] ret = new long[2];
+        decrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    @Override
+    public void decrypt(long[] src, int offset, long[] dst, int doffset) {
+        decrypt(src, offset, dst, doffset, 2);
+    }
+
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        encrypt(src, offset, dst, doffset, 16);
+    }
+
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        decrypt(src, offset, dst, doffset, 16);
+    }
+
+    @Override
+    public long[] encrypt(long[] src, int offset, int length) {
+        long[] ret = new long[length];
+        encrypt(src, offset, ret, 0, length);
+        return ret;
+    }
+
+    @Override
+    public long[] decrypt(long[] src, int offset, int length) {
+        long[] ret = new long[length];
+        decrypt(src, offset, ret, 0, length);
+        return ret;
+    }
+
+    @Override
+    public byte[] encrypt(byte[] src, int offset, int length) {
+        byte[] ret = new byte[length];
+        encrypt(src, offset, ret, 0, length);
+        return ret;
+    }
+
+    @Override
+    public byte[] decrypt(byte[] src, int offset, int length) {
+        byte[] ret = new byte[length];
+        decrypt(src, offset, ret, 0, length);
+        return ret;
+    }
+
+    /**
+     * 複数ブロック暗号化.
+     * 4ブロックずつまとめて処理する.
+     * @param src 平文
+     * @param offset 位置
+     * @param dst 暗号文
+     * @param doffset 位置
+     * @param length long数
+     */
+    @Override
+    public void encrypt(long[] src, int offset, long[] dst, int doffset, int length) {
+        long[] q = new long[8];
+        for (int of = 0; of + 2 <= length; of += 8) {
+            int n = Math.min(4, (length - of) / 2);
+            load(src, offset + of, n, q);
+            encrypt4(q);
+            store(q, dst, doffset + of, n);
+        }
+    }
+
+    @Override
+    public void decrypt(long[] src, int offset, long[] dst, int doffset, int length) {
+        long[] q = new long[8];
+        for (int of = 0; of + 2 <= length; of += 8) {
+            int n = Math.min(4, (length - of) / 2);
+            load(src, offset + of, n, q);
+            decrypt4(q);
+            store(q, dst, doffset + of, n);
+        }
+    }
+
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        long[] q = new long[8];
+        for (int of = 0; of + 16 <= length; of += 64) {
+            int n = Math.min(4, (length - of) / 16);
+            load(src, offset + of, n, q);
+            encrypt4(q);
+            store(q, dst, doffset + of, n);
+        }
+    }
+
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        long[] q = new long[8];
+        for (int of = 0; of + 16 <= length; of += 64) {
+            int n = Math.min(4, (length - of) / 16);
+            load(src, offset + of, n, q);
+            decrypt4(q);
+            store(q, dst, doffset + of, n);
+        }
+    }
+}
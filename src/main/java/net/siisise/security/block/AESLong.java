@@ -297,6 +297,21 @@ public class AESLong extends OneBlock {
      */
     @Override
     public byte[] encrypt(final byte[] src, final int offset) {
+        byte[] ret = new byte[16];
+        encrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    /**
+     * AESLong エンコード
+     *
+     * @param src source 16byte
+     * @param offset 先頭位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     */
+    @Override
+    public void encrypt(final byte[] src, final int offset, byte[] dst, int doffset) {
         int t = offset;
         // AddRoundKey
         int a = w[0], b = w[1], c = w[2], d = w[3];
@@ -354,16 +369,28 @@ public class AESLong extends OneBlock {
           |   sbox[ c         & 0xff];
 
         // AddRoundKey
-        return Bin.itob( new int[] {
-            e ^ w[Nr4] ,
-            f ^ w[Nr4 + 1],
-            g ^ w[Nr4 + 2],
-            d ^ w[Nr4 + 3]
-        } );
+        e ^= w[Nr4];
+        f ^= w[Nr4 + 1];
+        g ^= w[Nr4 + 2];
+        d ^= w[Nr4 + 3];
+        for (int i = 0; i < 4; i++) {
+            int n = 24 - 8 * i;
+            dst[doffset + i     ] = (byte)(e >>> n);
+            dst[doffset + i +  4] = (byte)(f >>> n);
+            dst[doffset + i +  8] = (byte)(g >>> n);
+            dst[doffset + i + 12] = (byte)(d >>> n);
+        }
     }
 
     @Override
     public byte[] decrypt(final byte[] src, final int offset) {
+        byte[] ret = new byte[16];
+        decrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    @Override
+    public void decrypt(final byte[] src, final int offset, byte[] dst, int doffset) {
 
         int[] s = new int[4];
         addRoundKey(src, offset, s, Nr4);
@@ -375,6 +402,6 @@ public class AESLong extends OneBlock {
         }
         addRoundKey(s, 0);
 
-        return Bin.itob(s);
+        Bin.itob(s, dst, doffset);
     }
 }
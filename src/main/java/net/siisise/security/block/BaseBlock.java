@@ -66,6 +66,86 @@ public abstract class BaseBlock implements Block {
         return decrypt(src, 0, src.length);
     }
 
+    /**
+     * 1ブロック暗号化.
+     * 出力先指定の仮実装. 配列を確保しない版は各暗号で上書きする.
+     *
+     * @param src 平文ブロックを含む列
+     * @param offset 平文位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     */
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        byte[] ret = encrypt(src, offset);
+        System.arraycopy(ret, 0, dst, doffset, ret.length);
+    }
+
+    @Override
+    public void encrypt(int[] src, int offset, int[] dst, int doffset) {
+        int[] ret = encrypt(src, offset);
+        System.arraycopy(ret, 0, dst, doffset, ret.length);
+    }
+
+    @Override
+    public void encrypt(long[] src, int offset, long[] dst, int doffset) {
+        long[] ret = encrypt(src, offset);
+        System.arraycopy(ret, 0, dst, doffset, ret.length);
+    }
+
+    /**
+     * 1ブロック復号.
+     * 出力先指定の仮実装. 配列を確保しない版は各暗号で上書きする.
+     *
+     * @param src 暗号ブロックを含む列
+     * @param offset 暗号位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     */
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        byte[] ret = decrypt(src, offset);
+        System.arraycopy(ret, 0, dst, doffset, ret.length);
+    }
+
+    @Override
+    public void decrypt(int[] src, int offset, int[] dst, int doffset) {
+        int[] ret = decrypt(src, offset);
+        System.arraycopy(ret, 0, dst, doffset, ret.length);
+    }
+
+    @Override
+    public void decrypt(long[] src, int offset, long[] dst, int doffset) {
+        long[] ret = decrypt(src, offset);
+        System.arraycopy(ret, 0, dst, doffset, ret.length);
+    }
+
+    /**
+     * 複数ブロック暗号化.
+     * 1ブロックずつ処理する. まとめて処理できる暗号は上書きする.
+     *
+     * @param src 平文
+     * @param offset 位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     * @param length long単位の長さ
+     */
+    @Override
+    public void encrypt(long[] src, int offset, long[] dst, int doffset, int length) {
+        int bl = getBlockLength() / 64;
+        for (int of = 0; of + bl <= length; of += bl) {
+            encrypt(src, offset + of, dst, doffset + of);
+        }
+    }
+
+    @Override
+    public void decrypt(long[] src, int offset, long[] dst, int doffset, int length) {
+        int bl = getBlockLength() / 64;
+        for (int of = 0; of + bl <= length; of += bl) {
+            decrypt(src, offset + of, dst, doffset + of);
+        }
+    }
+
     /**
      * 復号処理.
      *
@@ -79,11 +159,9 @@ public abstract class BaseBlock implements Block {
         int blen = getBlockLength() / 8;
         int len = length / blen;
         byte[] dec = new byte[length];
-        byte[] bdec;
         int to = 0;
         for (int i = 0; i < len; i++) {
-            bdec = decrypt(src, offset);
-            System.arraycopy(bdec, 0, dec, to, blen);
+            decrypt(src, offset, dec, to);
             offset += blen;
             to += blen;
         }
@@ -103,11 +181,9 @@ public abstract class BaseBlock implements Block {
         int blen = getBlockLength() / 32;
         int len = length / blen;
         int[] dec = new int[length];
-        int[] bdec;
         int to = 0;
         for (int i = 0; i < len; i++) {
-            bdec = decrypt(src, offset);
-            System.arraycopy(bdec, 0, dec, to, blen);
+            decrypt(src, offset, dec, to);
             offset += blen;
             to += blen;
         }
@@ -119,11 +195,9 @@ public abstract class BaseBlock implements Block {
         int blen = getBlockLength() / 64;
         int len = length / blen;
         long[] dec = new long[length];
-        long[] bdec;
         int to = 0;
         for (int i = 0; i < len; i++) {
-            bdec = decrypt(src, offset);
-            System.arraycopy(bdec, 0, dec, to, blen);
+            decrypt(src, offset, dec, to);
             offset += blen;
             to += blen;
         }
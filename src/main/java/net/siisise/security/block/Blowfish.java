@@ -473,6 +473,13 @@ public class Blowfish extends IntBlock {
 
     @Override
     public int[] encrypt(int[] src, int offset) {
+        int[] ret = new int[2];
+        encrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    @Override
+    public void encrypt(int[] src, int offset, int[] dst, int doffset) {
         int l = src[offset];
         int r = src[offset + 1];
         for (int i = 0; i < N; i++) {
@@ -482,11 +489,49 @@ public class Blowfish extends IntBlock {
         }
         l ^= P[16];
         r ^= P[17];
-        return new int[]{r, l};
+        dst[doffset] = r;
+        dst[doffset + 1] = l;
+    }
+
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        int l = (src[offset    ] << 24) | ((src[offset + 1] & 0xff) << 16) | ((src[offset + 2] & 0xff) << 8) | (src[offset + 3] & 0xff);
+        int r = (src[offset + 4] << 24) | ((src[offset + 5] & 0xff) << 16) | ((src[offset + 6] & 0xff) << 8) | (src[offset + 7] & 0xff);
+        for (int i = 0; i < N; i++) {
+            int t = r;
+            r = l ^ P[i];
+            l = t ^ f(r);
+        }
+        l ^= P[16];
+        r ^= P[17];
+        itob(r, dst, doffset);
+        itob(l, dst, doffset + 4);
+    }
+
+    @Override
+    public void encrypt(long[] src, int offset, long[] dst, int doffset) {
+        long s = src[offset];
+        int l = (int)(s >>> 32);
+        int r = (int)s;
+        for (int i = 0; i < N; i++) {
+            int t = r;
+            r = l ^ P[i];
+            l = t ^ f(r);
+        }
+        l ^= P[16];
+        r ^= P[17];
+        dst[doffset] = ((long)r << 32) | (l & 0xffffffffl);
     }
 
     @Override
     public int[] decrypt(int[] src, int offset) {
+        int[] ret = new int[2];
+        decrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    @Override
+    public void decrypt(int[] src, int offset, int[] dst, int doffset) {
         int r = src[offset];
         int l = src[offset + 1];
         r ^= P[17];
@@ -496,7 +541,45 @@ public class Blowfish extends IntBlock {
             l = r ^ P[i];
             r = t ^ f(r);
         }
-        return new int[]{l, r};
+        dst[doffset] = l;
+        dst[doffset + 1] = r;
+    }
+
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        int r = (src[offset    ] << 24) | ((src[offset + 1] & 0xff) << 16) | ((src[offset + 2] & 0xff) << 8) | (src[offset + 3] & 0xff);
+        int l = (src[offset + 4] << 24) | ((src[offset + 5] & 0xff) << 16) | ((src[offset + 6] & 0xff) << 8) | (src[offset + 7] & 0xff);
+        r ^= P[17];
+        l ^= P[16];
+        for (int i = 15; i >= 0; i--) {
+            int t = l;
+            l = r ^ P[i];
+            r = t ^ f(r);
+        }
+        itob(l, dst, doffset);
+        itob(r, dst, doffset + 4);
+    }
+
+    private static void itob(int v, byte[] dst, int offset) {
+        dst[offset    ] = (byte)(v >>> 24);
+        dst[offset + 1] = (byte)(v >>> 16);
+        dst[offset + 2] = (byte)(v >>>  8);
+        dst[offset + 3] = (byte) v;
+    }
+
+    @Override
+    public void decrypt(long[] src, int offset, long[] dst, int doffset) {
+        long s = src[offset];
+        int r = (int)(s >>> 32);
+        int l = (int)s;
+        r ^= P[17];
+        l ^= P[16];
+        for (int i = 15; i >= 0; i--) {
+            int t = l;
+            l = r ^ P[i];
+            r = t ^ f(r);
+        }
+        dst[doffset] = ((long)l << 32) | (r & 0xffffffffl);
     }
 
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2023 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.block;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * ByteBuffer を byte[] の処理に渡す.
+ * heap buffer は配列をそのまま使う.
+ * direct buffer は作業用配列を経由して少しずつ処理する.
+ */
+public final class ByteBuffers {
+
+    /**
+     * direct buffer の1回の処理サイズ. ブロック長の倍数.
+     */
+    static final int CHUNK = 64 * 1024;
+
+    /**
+     * byte[] の出力先指定版処理.
+     * src と dst は同じ配列の同じ位置でもよいこと.
+     */
+    @FunctionalInterface
+    public interface Op {
+
+        void apply(byte[] src, int offset, byte[] dst, int doffset, int length);
+    }
+
+    private ByteBuffers() {
+    }
+
+    /**
+     * src の remaining 分を処理して dst に書く.
+     * src, dst の position を進める.
+     * src と dst は同じ buffer または同じ位置を指す buffer でもよい.
+     *
+     * @param src 入力
+     * @param dst 出力先
+     * @param op 処理
+     */
+    public static void apply(ByteBuffer src, ByteBuffer dst, Op op) {
+        int length = src.remaining();
+        if (dst.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        if (src == dst) {
+            src = dst.duplicate();
+        }
+        if (src.hasArray() && dst.hasArray()) {
+            byte[] s = src.array();
+            int offset = src.arrayOffset() + src.position();
+            byte[] d = dst.array();
+            int doffset = dst.arrayOffset() + dst.position();
+            if (s == d && offset != doffset && offset < doffset + length && doffset < offset + length) {
+                // ずれて重なっている
+                s = new byte[length];
+                System.arraycopy(d, offset, s, 0, length);
+                offset = 0;
+            }
+            op.apply(s, offset, d, doffset, length);
+            src.position(src.position() + length);
+            dst.position(dst.position() + length);
+        } else {
+            byte[] tmp = new byte[Math.min(length, CHUNK)];
+            while (length > 0) {
+                int n = Math.min(length, tmp.length);
+                src.get(tmp, 0, n);
+                op.apply(tmp, 0, tmp, 0, n);
+                dst.put(tmp, 0, n);
+                length -= n;
+            }
+        }
+    }
+
+    /**
+     * 認証付き暗号の復号.
+     * src の末尾 tagLength バイトをタグとして, 残りを復号して dst に書く.
+     * タグが一致しない場合は dst に書いた平文を0で消して IllegalStateException.
+     * src と dst が同じ buffer の場合, position は平文の後ろになる.
+     *
+     * @param src 暗号文 + タグ
+     * @param dst 平文出力先
+     * @param tagLength タグ長
+     * @param op 復号
+     * @param tag 復号後のタグ計算
+     */
+    public static void doFinalDecrypt(ByteBuffer src, ByteBuffer dst, int tagLength, Op op, Supplier<byte[]> tag) {
+        int length = src.remaining() - tagLength;
+        if (length < 0) {
+            throw new IllegalStateException();
+        }
+        int end = src.position() + length;
+        byte[] t = new byte[tagLength];
+        ByteBuffer tb = src.duplicate();
+        tb.position(end);
+        tb.get(t);
+        ByteBuffer body = src.duplicate();
+        body.limit(end);
+        int dstart = dst.position();
+        apply(body, dst, op);
+        if (src != dst) {
+            src.position(end + tagLength);
+        }
+        if (!MessageDigest.isEqual(t, Arrays.copyOf(tag.get(), tagLength))) {
+            ByteBuffer z = dst.duplicate();
+            z.position(dstart);
+            for (int i = 0; i < length; i++) {
+                z.put((byte) 0);
+            }
+            throw new IllegalStateException();
+        }
+    }
+}
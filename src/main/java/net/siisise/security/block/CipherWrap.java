@@ -15,13 +15,17 @@
  */
 package net.siisise.security.block;
 
+import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.security.spec.AlgorithmParameterSpec;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import net.siisise.lang.Bin;
 import net.siisise.security.mode.StreamAEAD;
@@ -34,6 +38,7 @@ public class CipherWrap extends LongBlock implements StreamAEAD {
     String transformation;
     private Cipher enc;
     private Cipher dec;
+    private SecretKey key;
     
     /**
      * Java Cipherのラップ.
@@ -63,7 +68,7 @@ public class CipherWrap extends LongBlock implements StreamAEAD {
         try {
             byte[] paramkey = params[0];
             enc = Cipher.getInstance(transformation); // AES のみ
-            SecretKey key = new SecretKeySpec(paramkey, "AES");
+            key = new SecretKeySpec(paramkey, "AES");
             enc.init(Cipher.ENCRYPT_MODE, key);
             dec = Cipher.getInstance("AES");
             dec.init(Cipher.DECRYPT_MODE, key);
@@ -72,6 +77,36 @@ public class CipherWrap extends LongBlock implements StreamAEAD {
         }
     }
 
+    /**
+     * 鍵はそのままで IV と AAD を差し替える.
+     * GCM は GCMParameterSpec, その他は IvParameterSpec で enc, dec ともに作り直す.
+     * @param iv IV, nonce
+     * @param aad AAD GCM以外は空のみ
+     */
+    @Override
+    public void reset(byte[] iv, byte[] aad) {
+        if (key == null) {
+            throw new IllegalStateException("init");
+        }
+        boolean gcm = transformation.toUpperCase().contains("/GCM/");
+        AlgorithmParameterSpec spec = gcm ? new GCMParameterSpec(128, iv) : new IvParameterSpec(iv);
+        try {
+            enc = Cipher.getInstance(transformation);
+            enc.init(Cipher.ENCRYPT_MODE, key, spec);
+            dec = Cipher.getInstance(transformation);
+            dec.init(Cipher.DECRYPT_MODE, key, spec);
+            if (aad.length > 0) {
+                if (!gcm) {
+                    throw new IllegalStateException("aad");
+                }
+                enc.updateAAD(aad);
+                dec.updateAAD(aad);
+            }
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | InvalidAlgorithmParameterException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
     @Override
     public long[] encrypt(long[] src, int offset) {
         return Bin.btol(enc.update(Bin.ltob(src, offset, 2)));
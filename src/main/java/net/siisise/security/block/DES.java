@@ -324,18 +324,23 @@ public class DES extends OneBlock {
      *
      * @param src
      * @param offset
-     * @return
+     * @return 上位32bit L, 下位32bit R
      */
-    private static int[] ip(byte[] src, int offset) {
-        int[] lr = new int[2];
-        for (int n = 0; n < 8; n++) {
-            int n4 = n / 4;
+    private static long ip(byte[] src, int offset) {
+        int l = 0, r = 0;
+        for (int n = 0; n < 4; n++) {
             for (int i = 7; i >= 0; i--) {
-                lr[n4] <<= 1;
-                lr[n4] |= (src[offset + i] >>> ip1[n]) & 1;
+                l <<= 1;
+                l |= (src[offset + i] >>> ip1[n]) & 1;
             }
         }
-        return lr;
+        for (int n = 4; n < 8; n++) {
+            for (int i = 7; i >= 0; i--) {
+                r <<= 1;
+                r |= (src[offset + i] >>> ip1[n]) & 1;
+            }
+        }
+        return ((long)l << 32) | (r & 0xffffffffl);
     }
 
 //    private static final int[] ipr1 = {4, 0, 5, 1, 6, 2, 7, 3};
@@ -344,20 +349,19 @@ public class DES extends OneBlock {
      * IPの逆.
      * intからバイト列にする過程を省略してみる
      *
-     * @param src
-     * @return
+     * @param l
+     * @param r
+     * @param dst 出力先
+     * @param doffset 出力位置
      */
-    private static byte[] ip_1(int[] src) {
-        byte[] x = new byte[8];
-
+    private static void ip_1(int l, int r, byte[] dst, int doffset) {
         for (int n = 0; n < 8; n++) {
-            int d = (src[(~n) & 1] >>> (24 - (n / 2) * 8));
+            int d = ((n & 1) == 0 ? r : l) >>> (24 - (n / 2) * 8);
             for (int i = 7; i >= 0; i--) {
-                x[i] <<= 1;
-                x[i] |= (d >>> i) & 1;
+                dst[doffset + i] <<= 1;
+                dst[doffset + i] |= (d >>> i) & 1;
             }
         }
-        return x;
     }
 
     /**
@@ -368,17 +372,34 @@ public class DES extends OneBlock {
      */
     @Override
     public byte[] encrypt(byte[] src, int offset) {
-        int[] lr = ip(src, offset);
+        byte[] ret = new byte[8];
+        encrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    /**
+     * 暗号化.
+     *
+     * @param src 64bit 平文
+     * @param offset 位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     */
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        long lr = ip(src, offset);
+        int l = (int)(lr >>> 32);
+        int r = (int)lr;
         int t;
 
         for (int i = 0; i < 15; i++) {
-            t = lr[1];
-            lr[1] = lr[0] ^ f(t, i);
-            lr[0] = t;
+            t = r;
+            r = l ^ f(t, i);
+            l = t;
         }
-        lr[0] ^= f(lr[1], 15);
+        l ^= f(r, 15);
 
-        return ip_1(lr);
+        ip_1(l, r, dst, doffset);
     }
 
     /**
@@ -390,17 +411,34 @@ public class DES extends OneBlock {
      */
     @Override
     public byte[] decrypt(byte[] src, int offset) {
-        int[] lr = ip(src, offset);
+        byte[] ret = new byte[8];
+        decrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    /**
+     * 復号化.
+     *
+     * @param src 暗号文ブロック
+     * @param offset 位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     */
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        long lr = ip(src, offset);
+        int l = (int)(lr >>> 32);
+        int r = (int)lr;
         int t;
 
         for (int i = 15; i >= 1; i--) {
-            t = lr[1];
-            lr[1] = lr[0] ^ f(t, i);
-            lr[0] = t;
+            t = r;
+            r = l ^ f(t, i);
+            l = t;
         }
-        lr[0] ^= f(lr[1], 0);
+        l ^= f(r, 0);
 
-        return ip_1(lr);
+        ip_1(l, r, dst, doffset);
     }
 
 }
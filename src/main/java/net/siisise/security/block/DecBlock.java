@@ -15,6 +15,8 @@
  */
 package net.siisise.security.block;
 
+import java.nio.ByteBuffer;
+
 /**
  * ブロック復号系.
  */
@@ -32,6 +34,7 @@ public interface DecBlock {
     int[] decrypt(int[] src, int offset, int length);
     long[] decrypt(long[] src, int offset, int length);
     void decrypt(byte[] src, int offset, byte[] dst, int doffset, int length);
+    void decrypt(long[] src, int offset, long[] dst, int doffset, int length);
 
     byte[] decrypt(byte[] src);
     int[] decrypt(int[] src);
@@ -49,6 +52,20 @@ public interface DecBlock {
     byte[] decrypt(byte[] src, int offset);
     int[] decrypt(int[] src, int offset);
     long[] decrypt(long[] src, int offset);
+
+    /**
+     * 1ブロック復号処理.
+     * 出力先を指定する版. 途中で配列を確保しない.
+     * src と dst は同じ配列の同じ位置でもよい.
+     *
+     * @param src ブロックを含んだ配列
+     * @param offset ブロックの位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     */
+    void decrypt(byte[] src, int offset, byte[] dst, int doffset);
+    void decrypt(int[] src, int offset, int[] dst, int doffset);
+    void decrypt(long[] src, int offset, long[] dst, int doffset);
     
     default byte[] doFinalDecrypt() {
         return doFinalDecrypt(new byte[0]);
@@ -59,4 +76,17 @@ public interface DecBlock {
     default byte[] doFinalDecrypt(byte[] src, int offset, int length) {
         return decrypt(src, offset, length);
     }
+
+    /**
+     * ByteBuffer 版.
+     * src の remaining 分を復号して dst に書き, 両方の position を進める.
+     * src と dst は同じ buffer でもよい.
+     * ブロックモードではブロック長の倍数であること.
+     *
+     * @param src 入力
+     * @param dst 出力先
+     */
+    default void decrypt(ByteBuffer src, ByteBuffer dst) {
+        ByteBuffers.apply(src, dst, this::decrypt);
+    }
 }
@@ -15,6 +15,8 @@
  */
 package net.siisise.security.block;
 
+import java.nio.ByteBuffer;
+
 /**
  * ブロック暗号
  */
@@ -44,6 +46,18 @@ public interface EncBlock {
 
     void encrypt(byte[] src, int offset, byte[] dst, int doffset, int length);
 
+    /**
+     * 複数ブロック暗号化.
+     * 出力先を指定する版.
+     *
+     * @param src 元データ列
+     * @param offset src offset
+     * @param dst 出力先
+     * @param doffset 出力位置
+     * @param length long単位の長さ. ブロック長の倍数であること
+     */
+    void encrypt(long[] src, int offset, long[] dst, int doffset, int length);
+
     /**
      * encrypy(src, 0, src.length) へリダイレクト
      * 
@@ -67,6 +81,20 @@ public interface EncBlock {
     int[] encrypt(int[] src, int offset);
     long[] encrypt(long[] src, int offset);
 
+    /**
+     * 1ブロック暗号化処理.
+     * 出力先を指定する版. 途中で配列を確保しない.
+     * src と dst は同じ配列の同じ位置でもよい.
+     *
+     * @param src ブロックを含んだ列
+     * @param offset ブロックの位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     */
+    void encrypt(byte[] src, int offset, byte[] dst, int doffset);
+    void encrypt(int[] src, int offset, int[] dst, int doffset);
+    void encrypt(long[] src, int offset, long[] dst, int doffset);
+
     default byte[] doFinalEncrypt() {
         return doFinalEncrypt(new byte[0]);
     }
@@ -76,4 +104,17 @@ public interface EncBlock {
     default byte[] doFinalEncrypt(byte[] src, int offset, int length) {
         return encrypt(src, offset, length);
     }
+
+    /**
+     * ByteBuffer 版.
+     * src の remaining 分を暗号化して dst に書き, 両方の position を進める.
+     * src と dst は同じ buffer でもよい.
+     * ブロックモードではブロック長の倍数であること.
+     *
+     * @param src 入力
+     * @param dst 出力先
+     */
+    default void encrypt(ByteBuffer src, ByteBuffer dst) {
+        ByteBuffers.apply(src, dst, this::encrypt);
+    }
 }
@@ -106,13 +106,10 @@ public abstract class IntBlock extends BaseBlock {
      */
     @Override
     public int[] encrypt(int[] src, int offset, int length) {
+        int bl = getBlockLength() / 32;
         int[] ret = new int[length];
-        int of = 0;
-        while (length > of) {
-            int[] x = encrypt(src, offset);
-            System.arraycopy(x, 0, ret, of, x.length);
-            offset += x.length;
-            of += x.length;
+        for (int of = 0; of < length; of += bl) {
+            encrypt(src, offset + of, ret, of);
         }
         return ret;
     }
@@ -137,13 +134,10 @@ public abstract class IntBlock extends BaseBlock {
 
     @Override
     public int[] decrypt(int[] src, int offset, int length) {
+        int bl = getBlockLength() / 32;
         int[] ret = new int[length];
-        int of = 0;
-        while (length > of) {
-            int[] x = decrypt(src, offset);
-            System.arraycopy(x, 0, ret, of, x.length);
-            offset += x.length;
-            of += x.length;
+        for (int of = 0; of < length; of += bl) {
+            decrypt(src, offset + of, ret, of);
         }
         return ret;
     }
@@ -168,19 +162,17 @@ public abstract class IntBlock extends BaseBlock {
      */
     @Override
     public void encrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
-        int[] srcInt = new int[length / 4];
-
-        Bin.btoi(src, offset, srcInt, length / 4);
-        int[] ret = encrypt(srcInt, 0, length / 4);
-        Bin.itob(ret, dst, doffset);
+        int blen = getBlockLength() / 8;
+        for (int of = 0; of + blen <= length; of += blen) {
+            encrypt(src, offset + of, dst, doffset + of);
+        }
     }
 
     @Override
     public void decrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
-        int[] srcInt = new int[length / 4];
-
-        Bin.btoi(src, offset, srcInt, length / 4);
-        int[] ret = decrypt(srcInt, 0, length / 4);
-        Bin.itob(ret, dst, doffset);
+        int blen = getBlockLength() / 8;
+        for (int of = 0; of + blen <= length; of += blen) {
+            decrypt(src, offset + of, dst, doffset + of);
+        }
     }
 }
@@ -104,13 +104,10 @@ public abstract class LongBlock extends BaseBlock {
 
     @Override
     public long[] encrypt(long[] src, int offset, int length) {
+        int bl = getBlockLength() / 64;
         long[] ret = new long[length];
-        int of = 0;
-        while (length > of) {
-            long[] x = encrypt(src, offset);
-            System.arraycopy(x, 0, ret, of, x.length);
-            offset += x.length;
-            of += x.length;
+        for (int of = 0; of < length; of += bl) {
+            encrypt(src, offset + of, ret, of);
         }
         return ret;
     }
@@ -137,32 +134,27 @@ public abstract class LongBlock extends BaseBlock {
 
     @Override
     public long[] decrypt(long[] src, int offset, int length) {
+        int bl = getBlockLength() / 64;
         long[] ret = new long[length];
-        int of = 0;
-        while (length > of) {
-            long[] x = decrypt(src, offset);
-            System.arraycopy(x, 0, ret, of, x.length);
-            offset += x.length;
-            of += x.length;
+        for (int of = 0; of < length; of += bl) {
+            decrypt(src, offset + of, ret, of);
         }
         return ret;
     }
 
     @Override
     public void encrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
-        long[] srcInt = new long[length / 8];
-
-        Bin.btol(src, offset, srcInt, length / 8);
-        long[] ret = encrypt(srcInt, 0, length / 8);
-        Bin.ltob(ret, dst, doffset);
+        int blen = getBlockLength() / 8;
+        for (int of = 0; of + blen <= length; of += blen) {
+            encrypt(src, offset + of, dst, doffset + of);
+        }
     }
 
     @Override
     public void decrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
-        long[] srcInt = new long[length / 8];
-
-        Bin.btol(src, offset, srcInt, length / 8);
-        long[] ret = decrypt(srcInt, 0, length / 8);
-        Bin.ltob(ret, dst, doffset);
+        int blen = getBlockLength() / 8;
+        for (int of = 0; of + blen <= length; of += blen) {
+            decrypt(src, offset + of, dst, doffset + of);
+        }
     }
 }
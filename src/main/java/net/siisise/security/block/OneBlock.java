@@ -85,11 +85,9 @@ public abstract class OneBlock extends BaseBlock {
         int blen = getBlockLength() / 8;
         int len = length / blen;
         byte[] dec = new byte[length];
-        byte[] bdec;
         int to = 0;
         for ( int i = 0; i < len; i++ ) {
-            bdec = encrypt(src, offset);
-            System.arraycopy(bdec, 0, dec, to, blen);
+            encrypt(src, offset, dec, to);
             offset += blen;
             to += blen;
         }
@@ -109,11 +107,9 @@ public abstract class OneBlock extends BaseBlock {
         int blen = getBlockLength() / 32;
         int len = length / blen;
         int[] dec = new int[length];
-        int[] bdec;
         int to = 0;
         for ( int i = 0; i < len; i++ ) {
-            bdec = encrypt(src, offset);
-            System.arraycopy(bdec, 0, dec, to, blen);
+            encrypt(src, offset, dec, to);
             offset += blen;
             to += blen;
         }
@@ -133,11 +129,9 @@ public abstract class OneBlock extends BaseBlock {
         int blen = getBlockLength() / 64;
         int len = length / blen;
         long[] dec = new long[length];
-        long[] bdec;
         int to = 0;
         for ( int i = 0; i < len; i++ ) {
-            bdec = encrypt(src, offset);
-            System.arraycopy(bdec, 0, dec, to, blen);
+            encrypt(src, offset, dec, to);
             offset += blen;
             to += blen;
         }
@@ -157,10 +151,8 @@ public abstract class OneBlock extends BaseBlock {
     public void encrypt(byte[] src, int offset, byte[] dec, int doffset, int length) {
         int blen = getBlockLength() / 8;
         int len = length / blen;
-        byte[] bdec;
         for ( int i = 0; i < len; i++ ) {
-            bdec = encrypt(src, offset);
-            System.arraycopy(bdec, 0, dec, doffset, blen);
+            encrypt(src, offset, dec, doffset);
             offset += blen;
             doffset += blen;
         }
@@ -179,10 +171,8 @@ public abstract class OneBlock extends BaseBlock {
     public void decrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
         int blen = getBlockLength() / 8;
         int len = length / blen;
-        byte[] bdec;
         for ( int i = 0; i < len; i++ ) {
-            bdec = decrypt(src, offset);
-            System.arraycopy(bdec, 0, dst, doffset, blen);
+            decrypt(src, offset, dst, doffset);
             offset += blen;
             doffset += blen;
         }
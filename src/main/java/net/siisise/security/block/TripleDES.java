@@ -122,4 +122,18 @@ public class TripleDES extends OneBlock {
     public byte[] decrypt(byte[] src, int offset) {
         return block3.decrypt(block2.encrypt(block1.decrypt(src, offset),0),0);
     }
+
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        block3.encrypt(src, offset, dst, doffset);
+        block2.decrypt(dst, doffset, dst, doffset);
+        block1.encrypt(dst, doffset, dst, doffset);
+    }
+
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        block1.decrypt(src, offset, dst, doffset);
+        block2.encrypt(dst, doffset, dst, doffset);
+        block3.decrypt(dst, doffset, dst, doffset);
+    }
 }
@@ -15,11 +15,16 @@
  */
 package net.siisise.security.digest;
 
+import java.io.IOException;
 import java.io.OutputStream;
-import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import net.siisise.bind.format.TypeFormat;
 import net.siisise.ietf.pkcs.asn1.AlgorithmIdentifier;
 import net.siisise.io.FilterOutput;
@@ -44,9 +49,15 @@ public abstract class BlockMessageDigest extends MessageDigest implements BlockL
         super(name);
     }
 
+    /**
+     * 1バイト入力用
+     */
+    private byte[] one = new byte[1];
+
     @Override
     protected void engineUpdate(byte input) {
-        engineUpdate(new byte[]{input}, 0, 1);
+        one[0] = input;
+        engineUpdate(one, 0, 1);
     }
 
     @Override
@@ -55,37 +66,197 @@ public abstract class BlockMessageDigest extends MessageDigest implements BlockL
         length += len * 8L;
     }
 
+    /**
+     * direct buffer, mapped buffer は配列に写さずにブロックを渡す.
+     * BlockBufferListener を持たないものはブロックバッファを通す.
+     * @param input 入力
+     */
+    @Override
+    protected void engineUpdate(ByteBuffer input) {
+        int len = input.remaining();
+        pac.put(input);
+        length += len * 8L;
+    }
+
+    /**
+     * 配列に写して engineUpdate(byte[]) で入力する.
+     * engineUpdate(byte[]) に固有の処理があるもの用.
+     * @param input 入力
+     * @param chunk 1回で渡す長さ
+     */
+    protected void updateArray(ByteBuffer input, int chunk) {
+        if (input.hasArray()) {
+            int p = input.position();
+            int len = input.remaining();
+            engineUpdate(input.array(), input.arrayOffset() + p, len);
+            input.position(p + len);
+            return;
+        }
+        byte[] b = new byte[Math.min(chunk, input.remaining())];
+        do { // 長さ0も1回渡す
+            int s = Math.min(b.length, input.remaining());
+            input.get(b, 0, s);
+            engineUpdate(b, 0, s);
+        } while (input.hasRemaining());
+    }
+
+    /**
+     * map する窓の大きさ
+     */
+    static final long MAP_WINDOW = 64L * 1024 * 1024;
+    /**
+     * これより小さいものは map せずに読む
+     */
+    static final int MAP_MIN = 64 * 1024;
+
+    /**
+     * ファイルのハッシュ.
+     * @param path ファイル
+     * @return ハッシュ
+     * @throws IOException 読めない
+     */
+    public byte[] digest(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            return digest(ch);
+        }
+    }
+
+    /**
+     * 現在位置から終わりまでのハッシュ.
+     * @param ch 読むもの
+     * @return ハッシュ
+     * @throws IOException 読めない
+     */
+    public byte[] digest(FileChannel ch) throws IOException {
+        update(ch);
+        return digest();
+    }
+
+    /**
+     * 現在位置から終わりまでを入力する.
+     * 窓ごとに map し, 次の窓は別スレッドで先読みする.
+     * @param ch 読むもの 終わりまで進む
+     * @throws IOException 読めない
+     */
+    public void update(FileChannel ch) throws IOException {
+        update(ch, MAP_WINDOW);
+    }
+
+    /**
+     * @param ch 読むもの
+     * @param window map する窓の大きさ
+     * @throws IOException 読めない
+     */
+    void update(FileChannel ch, long window) throws IOException {
+        long pos = ch.position();
+        long size = ch.size();
+        if (size - pos < MAP_MIN) {
+            ByteBuffer bb = ByteBuffer.allocate((int) Math.max(0, size - pos));
+            while (bb.hasRemaining()) {
+                if (ch.read(bb) < 0) {
+                    break;
+                }
+            }
+            bb.flip();
+            update(bb);
+            return;
+        }
+        MappedByteBuffer cur = ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(window, size - pos));
+        while (cur != null) {
+            long next = pos + cur.capacity();
+            MappedByteBuffer ahead = null;
+            CompletableFuture<Void> load = null;
+            if (next < size) {
+                ahead = ch.map(FileChannel.MapMode.READ_ONLY, next, Math.min(window, size - next));
+                load = CompletableFuture.runAsync(ahead::load);
+            }
+            update(cur);
+            if (load != null) {
+                load.join();
+            }
+            pos = next;
+            cur = ahead;
+        }
+        ch.position(size);
+    }
+
+    /**
+     * ブロック入力を初期化する.
+     * 2回目以降はブロックバッファを使い回す.
+     */
+    protected void blockReset() {
+        if (pac == null) {
+            pac = new BlockOutput(this);
+        } else {
+            pac.clear();
+        }
+    }
+
+    /**
+     * 途中の状態を複製する.
+     * Cloneable を付けたものが対応する. 連鎖値, 長さ, 端数ブロックを写す.
+     * @return 複製
+     * @throws CloneNotSupportedException 対応していない
+     */
+    @Override
+    public BlockMessageDigest clone() throws CloneNotSupportedException {
+        BlockMessageDigest md = (BlockMessageDigest) super.clone();
+        md.one = new byte[1];
+        md.pac = pac.copy(md);
+        return md;
+    }
+
+    /**
+     * 途中の状態を保存する.
+     * 共通の前置きを入力したあとに取っておき, restore で何度でも戻せる.
+     * @return 保存した状態
+     */
+    public BlockMessageDigest snapshot() {
+        try {
+            return clone();
+        } catch (CloneNotSupportedException ex) {
+            throw new UnsupportedOperationException(ex);
+        }
+    }
+
+    /**
+     * snapshot の状態に戻す.
+     * snapshot は変更しない.
+     * @param snapshot 同じ種類の保存した状態
+     */
+    public void restore(BlockMessageDigest snapshot) {
+        if (snapshot.getClass() != getClass()) {
+            throw new IllegalStateException();
+        }
+        restoreState(snapshot);
+        length = snapshot.length;
+        pac.restore(snapshot.pac);
+    }
+
+    /**
+     * 連鎖値など固有の状態を写す.
+     * @param src 写し元 同じクラス
+     */
+    protected void restoreState(BlockMessageDigest src) {
+        throw new UnsupportedOperationException();
+    }
+
     public void update(Input in) {
         length += Output.write(this, in, in.length());
     }
 
+    /**
+     * 名前, 別名, OID から生成する.
+     * DigestAlgorithm の登録から引き, 解決した名前は保持する.
+     * @param alg 名前
+     * @return MessageDigest
+     */
     public static BlockMessageDigest getInstance(String alg) {
-        BlockMessageDigest md;
-        try {
-            alg = alg.toUpperCase();
-            if (alg.startsWith("SHA3-")) {
-                md = new SHA3(Integer.parseInt(alg.substring(5)));
-            } else if (alg.startsWith("SHAKE")) {
-                md = new SHAKE(Integer.parseInt(alg.substring(5)));
-            } else if (alg.startsWith("SHA-512/")) { // HMACで可変仕様の存在は知らない
-                md = new SHA512(Integer.parseInt(alg.substring(8)));
-            } else if (alg.startsWith("SHA512/")) { // HMACで可変仕様の存在は知らない
-                md = new SHA512(Integer.parseInt(alg.substring(7)));
-            } else if (alg.startsWith("SHA-1-")) {
-                md = new SHA1(Integer.parseInt(alg.substring(6)));
-            } else if (alg.startsWith("SHA1-")) {
-                md = new SHA1(Integer.parseInt(alg.substring(5)));
-            } else if (alg.startsWith("MD5-")) {
-                md = new MD5(Integer.parseInt(alg.substring(4)));
-            } else {
-                String digestName = alg.replaceAll("[\\/\\-]", "");
-                md = (BlockMessageDigest) Class.forName("net.siisise.security.digest." + digestName).getConstructor().newInstance();
-            }
-            return md;
-        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException ex) {
-            Logger.getLogger(BlockMessageDigest.class.getName()).log(Level.SEVERE, null, ex);
+        Supplier<BlockMessageDigest> s = DigestAlgorithm.supplier(alg);
+        if (s == null) {
+            throw new UnsupportedOperationException(alg);
         }
-        throw new UnsupportedOperationException();
+        return s.get();
     }
     
     @Override
@@ -15,6 +15,10 @@
  */
 package net.siisise.security.digest;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.security.MessageDigest;
 
 /**
@@ -27,56 +31,219 @@ import java.security.MessageDigest;
  * CRC8-CCITT CRC8-SAE CRC8-ATM CRC8-Dallas/Maxum
  * RFC 1952 gzip RFC 2083 PNG
  * CRC-32 Wikipedia のものを実装
+ *
+ * 8バイトずつ表を8つ引く slicing-by-8.
+ * combine で別々に計算した CRC をつなげられるので, 分割して並列に計算できる.
  */
 public class CRC extends MessageDigest {
 
-    static final int[] crc = new int[256];
+    /**
+     * CRC-32 ビット反転した多項式
+     */
+    static final int POLY = 0xedb88320;
+    static final int[][] TABLES = tables(POLY);
+    static final int[] crc = TABLES[0];
+
+    private static final VarHandle LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
 
-    static {
+    /**
+     * slicing-by-8 の表.
+     * [0] は1バイト分, [k] は後ろに k バイト続くときの表.
+     * @param poly ビット反転した多項式
+     * @return 8 x 256 の表
+     */
+    static int[][] tables(int poly) {
+        int[][] t = new int[8][256];
         // ビット反転版GF 32bit の8ビットくり抜き?
         for (int i = 0; i < 256; i++) {
             int c = i;
             for (int j = 0; j < 8; j++) { // iが8bitしかないので8回?
-                c = (c >>> 1) ^ ((c & 1) * 0xedb88320);
+                c = (c >>> 1) ^ ((c & 1) * poly);
             }
-            crc[i] = c;
+            t[0][i] = c;
         }
+        for (int k = 1; k < 8; k++) {
+            for (int i = 0; i < 256; i++) {
+                int c = t[k - 1][i];
+                t[k][i] = (c >>> 8) ^ t[0][c & 0xff];
+            }
+        }
+        return t;
     }
 
+    private final int poly;
+    private final int[] t0, t1, t2, t3, t4, t5, t6, t7;
+    /**
+     * x^(2^n) mod P
+     */
+    private final int[] x2n = new int[32];
+
     int c;
 
     public CRC() {
-        super("CRC-32");
+        this("CRC-32", POLY, TABLES);
+    }
+
+    /**
+     * @param name 名前
+     * @param poly ビット反転した多項式
+     * @param tables tables(poly) の表
+     */
+    protected CRC(String name, int poly, int[][] tables) {
+        super(name);
+        this.poly = poly;
+        t0 = tables[0];
+        t1 = tables[1];
+        t2 = tables[2];
+        t3 = tables[3];
+        t4 = tables[4];
+        t5 = tables[5];
+        t6 = tables[6];
+        t7 = tables[7];
+        int p = 1 << 30; // x^1
+        x2n[0] = p;
+        for (int n = 1; n < 32; n++) {
+            x2n[n] = p = multmodp(p, p);
+        }
         engineReset();
     }
 
     @Override
     protected void engineUpdate(byte input) {
-        engineUpdate(new byte[]{input}, 0, 1);
+        c = t0[(c ^ input) & 0xff] ^ (c >>> 8);
     }
 
     @Override
     protected void engineUpdate(byte[] input, int offset, int len) {
-        for (int i = offset; i < offset + len; i++) {
-            c = crc[(c ^ input[i]) & 0xff] ^ (c >>> 8);
+        int c = this.c;
+        int end = offset + len;
+        for (; offset + 8 <= end; offset += 8) {
+            int lo = c ^ (int) LE.get(input, offset);
+            int hi = (int) LE.get(input, offset + 4);
+            c = t7[lo & 0xff] ^ t6[(lo >>> 8) & 0xff] ^ t5[(lo >>> 16) & 0xff] ^ t4[lo >>> 24]
+                    ^ t3[hi & 0xff] ^ t2[(hi >>> 8) & 0xff] ^ t1[(hi >>> 16) & 0xff] ^ t0[hi >>> 24];
+        }
+        for (; offset < end; offset++) {
+            c = t0[(c ^ input[offset]) & 0xff] ^ (c >>> 8);
 //            c = (c << 8) ^ crc[((c >>> 24) ^ input[i]) & 0xff];
         }
+        this.c = c;
+    }
+
+    /**
+     * direct buffer は写さずに読む.
+     * @param input 入力
+     */
+    @Override
+    protected void engineUpdate(ByteBuffer input) {
+        if (input.hasArray()) {
+            int p = input.position();
+            int len = input.remaining();
+            engineUpdate(input.array(), input.arrayOffset() + p, len);
+            input.position(p + len);
+            return;
+        }
+        ByteBuffer b = input.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int c = this.c;
+        int offset = b.position();
+        int end = b.limit();
+        for (; offset + 8 <= end; offset += 8) {
+            int lo = c ^ b.getInt(offset);
+            int hi = b.getInt(offset + 4);
+            c = t7[lo & 0xff] ^ t6[(lo >>> 8) & 0xff] ^ t5[(lo >>> 16) & 0xff] ^ t4[lo >>> 24]
+                    ^ t3[hi & 0xff] ^ t2[(hi >>> 8) & 0xff] ^ t1[(hi >>> 16) & 0xff] ^ t0[hi >>> 24];
+        }
+        for (; offset < end; offset++) {
+            c = t0[(c ^ b.get(offset)) & 0xff] ^ (c >>> 8);
+        }
+        this.c = c;
+        input.position(end);
+    }
+
+    /**
+     * GF(2) 上の a * b mod P.
+     * ビット反転した表現.
+     * @param a
+     * @param b
+     * @return a * b mod P
+     */
+    private int multmodp(int a, int b) {
+        int m = 1 << 31;
+        int p = 0;
+        while (true) {
+            if ((a & m) != 0) {
+                p ^= b;
+                if ((a & (m - 1)) == 0) {
+                    break;
+                }
+            }
+            m >>>= 1;
+            b = (b & 1) != 0 ? (b >>> 1) ^ poly : b >>> 1;
+        }
+        return p;
+    }
+
+    /**
+     * x^(8 * len) mod P
+     * @param len バイト長
+     * @return x^(8 * len) mod P
+     */
+    private int x8nmodp(long len) {
+        int p = 1 << 31; // x^0
+        int k = 3;
+        while (len != 0) {
+            if ((len & 1) != 0) {
+                p = multmodp(x2n[k & 31], p);
+            }
+            len >>>= 1;
+            k++;
+        }
+        return p;
+    }
+
+    /**
+     * 続けて計算した CRC を求める.
+     * A || B の CRC を A の CRC と B の CRC から求める.
+     * @param crcA 前の CRC
+     * @param crcB 後の CRC
+     * @param lenB 後のバイト長
+     * @return A || B の CRC
+     */
+    public int combine(int crcA, int crcB, long lenB) {
+        return multmodp(x8nmodp(lenB), crcA) ^ crcB;
+    }
+
+    /**
+     * digest の出力どうしをつなげる.
+     * @param crcA 前の digest
+     * @param crcB 後の digest
+     * @param lenB 後のバイト長
+     * @return A || B の digest
+     */
+    public byte[] combine(byte[] crcA, byte[] crcB, long lenB) {
+        return toB(combine(toInt(crcA), toInt(crcB), lenB));
     }
 
     @Override
     protected byte[] engineDigest() {
-        c ^= 0xffffffff;
-        //engineUpdate(new byte[4], 0, 4);
+        byte[] cr = toB(c ^ 0xffffffff);
+        engineReset();
+        return cr;
+    }
+
+    private static byte[] toB(int c) {
         byte[] cr = new byte[4];
         cr[0] = (byte) ((c >>> 24) & 0xff);
         cr[1] = (byte) ((c >>> 16) & 0xff);
         cr[2] = (byte) ((c >>> 8) & 0xff);
         cr[3] = (byte) (c & 0xff);
-//        System.out.println(Integer.toHexString(c));
-        engineReset();
         return cr;
     }
 
+    private static int toInt(byte[] cr) {
+        return ((cr[0] & 0xff) << 24) | ((cr[1] & 0xff) << 16) | ((cr[2] & 0xff) << 8) | (cr[3] & 0xff);
+    }
+
     @Override
     protected void engineReset() {
         c = 0xffffffff;
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2023 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.digest;
+
+/**
+ * CRC-32C (Castagnoli).
+ * RFC 3720 iSCSI, RFC 9260 SCTP など
+ */
+public class CRC32C extends CRC {
+
+    /**
+     * CRC-32C ビット反転した多項式
+     */
+    static final int POLY = 0x82f63b78;
+    static final int[][] TABLES = tables(POLY);
+
+    public CRC32C() {
+        super("CRC-32C", POLY, TABLES);
+    }
+}
@@ -20,6 +20,8 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import net.siisise.ietf.pkcs.asn1.AlgorithmIdentifier;
 import net.siisise.ietf.pkcs1.PKCS1;
 import net.siisise.iso.asn1.tag.OBJECTIDENTIFIER;
@@ -76,30 +78,58 @@ public class DigestAlgorithm extends AlgorithmIdentifier {
     public static final OBJECTIDENTIFIER id_shake128 = HASHALGS.sub(11);
     public static final OBJECTIDENTIFIER id_shake256 = HASHALGS.sub(12);
 
-    static final Map<OBJECTIDENTIFIER,String> NAMES = new HashMap<>();
+    /**
+     * OID の数字表記から名前.
+     * OBJECTIDENTIFIER の hashCode は equals と揃っていないので文字列で引く.
+     */
+    static final Map<String,String> NAMES = new HashMap<>();
     static final List<OBJECTIDENTIFIER> OAEPPSS;
+    /**
+     * 正規化した名前から OID
+     */
     static final Map<String,OBJECTIDENTIFIER> OIDS = new HashMap<>();
+    /**
+     * 正規化した名前から生成
+     */
+    static final Map<String,Supplier<BlockMessageDigest>> DIGESTS = new HashMap<>();
+    /**
+     * 指定された名前で解決済みのもの
+     */
+    private static final Map<String,Supplier<BlockMessageDigest>> CACHE = new ConcurrentHashMap<>();
 
     static {
-        NAMES.put(id_md2, "MD2");
-        NAMES.put(id_md4, "MD4");
-        NAMES.put(id_md5, "MD5");
-        NAMES.put(id_sha1, "SHA1");
-        NAMES.put(id_sha224, "SHA-224");
-        NAMES.put(id_sha256, "SHA-256");
-        NAMES.put(id_sha384, "SHA-384");
-        NAMES.put(id_sha512, "SHA-512");
-        NAMES.put(id_sha512_224, "SHA-512/224");
-        NAMES.put(id_sha512_256, "SHA-512/256");
-        NAMES.put(id_sha3_224, "SHA3-224");
-        NAMES.put(id_sha3_256, "SHA3-256");
-        NAMES.put(id_sha3_384, "SHA3-384");
-        NAMES.put(id_sha3_512, "SHA3-512");
-        NAMES.put(id_shake128, "SHAKE128");
-        NAMES.put(id_shake256, "SHAKE256");
-        for ( Map.Entry<OBJECTIDENTIFIER, String> e : NAMES.entrySet() ) {
-            OIDS.put(e.getValue(), e.getKey());
-        }
+        put(id_md2, "MD2");
+        put(id_md4, "MD4");
+        put(id_md5, "MD5");
+        put(id_sha1, "SHA1");
+        put(id_sha224, "SHA-224");
+        put(id_sha256, "SHA-256");
+        put(id_sha384, "SHA-384");
+        put(id_sha512, "SHA-512");
+        put(id_sha512_224, "SHA-512/224");
+        put(id_sha512_256, "SHA-512/256");
+        put(id_sha3_224, "SHA3-224");
+        put(id_sha3_256, "SHA3-256");
+        put(id_sha3_384, "SHA3-384");
+        put(id_sha3_512, "SHA3-512");
+        put(id_shake128, "SHAKE128");
+        put(id_shake256, "SHAKE256");
+        DIGESTS.put("MD2", MD2::new);
+        DIGESTS.put("MD4", MD4::new);
+        DIGESTS.put("MD5", MD5::new);
+        DIGESTS.put("SHA1", SHA1::new);
+        DIGESTS.put("SHA224", SHA224::new);
+        DIGESTS.put("SHA256", SHA256::new);
+        DIGESTS.put("SHA384", SHA384::new);
+        DIGESTS.put("SHA512", SHA512::new);
+        DIGESTS.put("SHA512224", SHA512224::new);
+        DIGESTS.put("SHA512256", SHA512256::new);
+        DIGESTS.put("SHA3224", SHA3224::new);
+        DIGESTS.put("SHA3256", SHA3256::new);
+        DIGESTS.put("SHA3384", SHA3384::new);
+        DIGESTS.put("SHA3512", SHA3512::new);
+        DIGESTS.put("SHAKE128", SHAKE128::new);
+        DIGESTS.put("SHAKE256", SHAKE256::new);
         OBJECTIDENTIFIER[] oaeppss = {id_sha1, 
         id_sha224,
         id_sha256,
@@ -116,6 +146,78 @@ public class DigestAlgorithm extends AlgorithmIdentifier {
         super(oid);
     }
 
+    private static void put(OBJECTIDENTIFIER oid, String name) {
+        NAMES.put(oid.getValue(), name);
+        OIDS.put(normalize(name), oid);
+    }
+
+    /**
+     * 名前の表記揺れをまとめる.
+     * 大文字にして - と / を除く.
+     * @param name 名前
+     * @return 正規化した名前
+     */
+    static String normalize(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            if (ch != '-' && ch != '/') {
+                sb.append(Character.toUpperCase(ch));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 名前, 別名, OID から生成手段を引く.
+     * 名前ごとに一度だけ解決して保持する. リフレクションは使わない.
+     * @param alg 名前 SHA-256, SHA256, SHA-512/t, SHA3-n, SHAKEn, SHA-1-n, MD5-n, OID など
+     * @return 生成手段 該当なしは null
+     */
+    public static Supplier<BlockMessageDigest> supplier(String alg) {
+        Supplier<BlockMessageDigest> s = CACHE.get(alg);
+        if (s == null) {
+            s = resolve(alg);
+            if (s != null) {
+                CACHE.put(alg, s);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * 名前の解決.
+     * @param alg 名前
+     * @return 生成手段 該当なしは null
+     */
+    private static Supplier<BlockMessageDigest> resolve(String alg) {
+        String name = alg.toUpperCase();
+        try {
+            if (name.startsWith("SHA3-")) {
+                int n = Integer.parseInt(name.substring(5));
+                return () -> new SHA3(n);
+            } else if (name.startsWith("SHAKE")) {
+                int n = Integer.parseInt(name.substring(5));
+                return () -> new SHAKE(n);
+            } else if (name.startsWith("SHA-512/") || name.startsWith("SHA512/")) { // HMACで可変仕様の存在は知らない
+                int n = Integer.parseInt(name.substring(name.indexOf('/') + 1));
+                return () -> new SHA512(n);
+            } else if (name.startsWith("SHA-1-") || name.startsWith("SHA1-")) {
+                int n = Integer.parseInt(name.substring(name.lastIndexOf('-') + 1));
+                return () -> new SHA1(n);
+            } else if (name.startsWith("MD5-")) {
+                int n = Integer.parseInt(name.substring(4));
+                return () -> new MD5(n);
+            } else if (!name.isEmpty() && Character.isDigit(name.charAt(0))) {
+                String oidName = NAMES.get(name);
+                return oidName == null ? null : DIGESTS.get(normalize(oidName));
+            }
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        return DIGESTS.get(normalize(name));
+    }
+
     /**
      * OBJECT IDENTIFIERからHashを取得する.
      * @param oid OBJECT IDENTIFIER
@@ -123,9 +225,9 @@ public class DigestAlgorithm extends AlgorithmIdentifier {
      */
     public static BlockMessageDigest getAlgorithm(OBJECTIDENTIFIER oid) {
         String name;
-        name = NAMES.get(oid);
+        name = NAMES.get(oid.getValue());
         if ( name == null ) return null;
-        return BlockMessageDigest.getInstance(name);
+        return DIGESTS.get(normalize(name)).get();
     }
     
     /**
@@ -156,8 +258,13 @@ public class DigestAlgorithm extends AlgorithmIdentifier {
         return da;
     }
 
+    /**
+     * MessageDigest の名前から OID を引く.
+     * 表記揺れ (SHA-1, SHA1 など) は同じものとして扱う.
+     * @param md MessageDigest
+     * @return OBJECT IDENTIFIER 該当なしは null
+     */
     public static OBJECTIDENTIFIER toOID(MessageDigest md) {
-        String name = md.getAlgorithm();
-        return OIDS.get(name);
+        return OIDS.get(normalize(md.getAlgorithm()));
     }
 }
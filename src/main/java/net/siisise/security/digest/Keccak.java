@@ -15,9 +15,14 @@
  */
 package net.siisise.security.digest;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import net.siisise.io.Output;
 import net.siisise.security.io.BitBlockOutput;
+import net.siisise.security.io.BlockBufferListener;
 
 /**
  * Keccak-f[1600].
@@ -30,13 +35,13 @@ import net.siisise.security.io.BitBlockOutput;
  * 可変値
  * c: capacity SHA-3では2*d, d: 出力ビット長, pad頭
  */
-public class Keccak extends BlockMessageDigest {
+public class Keccak extends BlockMessageDigest implements BlockBufferListener,Cloneable {
 
     // 固定値
     private static final int l = 6;
     private static final int w = 1 << l; // 64
     // 固定箱
-    private final long[] a = new long[5 * 5];
+    private long[] a = new long[5 * 5];
 
     // 出力ビット長
     private long d;
@@ -47,6 +52,11 @@ public class Keccak extends BlockMessageDigest {
 
     static final long[] RC = new long[24];
 
+    /**
+     * little endian で long を読み書きする
+     */
+    private static final VarHandle LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
     static {
         for (int ir = 0; ir < 24; ir++) {
             for (int j = 0; j <= l; j++) { // l = 6
@@ -155,15 +165,26 @@ public class Keccak extends BlockMessageDigest {
     protected void engineReset() {
         pac = new BitBlockOutput(this);
         Arrays.fill(a, 0l);
+        squeezed = -1;
+    }
+
+    @Override
+    public Keccak clone() throws CloneNotSupportedException {
+        Keccak md = (Keccak) super.clone();
+        md.a = a.clone();
+        return md;
     }
 
     /**
-     * 左ローテート
-     * little endian
+     * 出力長なども写す.
+     * @param src 写し元
      */
-    private static long ROTL(final long x, final int n) {
-        // d = d % w;
-        return (x >>> (w - n)) | (x << n);
+    @Override
+    protected void restoreState(BlockMessageDigest src) {
+        Keccak k = (Keccak) src;
+        System.arraycopy(k.a, 0, a, 0, a.length);
+        d = k.d;
+        squeezed = k.squeezed;
     }
 
     /**
@@ -183,53 +204,101 @@ public class Keccak extends BlockMessageDigest {
         return (R & 0x80) != 0;
     }
 
-    static final int[] SS = {0,1,62,28,27, 36,44,6,55,20, 3,10,43,25,39, 41,45,15,21,8, 18,2,61,56,14};
-
     /**
      * 3.4 KECCAK-f[1600]
      * 3.3 KECCAK-p[1600,12 + 2l]
      * Algorithm 7:
      * 3.2 Step Mappings
      * Algorithm 1: θ(A)
+     * 展開して状態は変数に持つ. 配列の確保はしない.
      *
      * @param a Sっぽい
      */
-    private void keccak_f(long[] a) {
-        long[] ad = new long[25]; // 1600bit パターン
+    private static void keccak_f(final long[] a) {
+        long a00 = a[0], a01 = a[1], a02 = a[2], a03 = a[3], a04 = a[4];
+        long a05 = a[5], a06 = a[6], a07 = a[7], a08 = a[8], a09 = a[9];
+        long a10 = a[10], a11 = a[11], a12 = a[12], a13 = a[13], a14 = a[14];
+        long a15 = a[15], a16 = a[16], a17 = a[17], a18 = a[18], a19 = a[19];
+        long a20 = a[20], a21 = a[21], a22 = a[22], a23 = a[23], a24 = a[24];
 
         for (int ir = 0; ir < 12 + 2 * l; ir++) {
             // 3.2.1 Algorithm 1: Θ(A)
-            // Step 1.
-            for (int x = 0; x < 5; x++) {
-                ad[x] = a[x] ^ a[x + 5] ^ a[x + 10] ^ a[x + 15] ^ a[x + 20];
-            }
-            // Step 2.
-            for (int x = 5; x < 10; x++) {
-                ad[x] = ad[(x + 4) % 5] ^ ROTL(ad[(x + 1) % 5], 1);
-            }
-            // Step 3.
-            for (int b = 0; b < 25; b++) {
-                a[b] ^= ad[5 + b % 5];
-            }
-            // 3.2.2 Algorithm 2: ρ(A)
-            // 3.2.3 Algorithm 3: π(A)
-            for (int y = 0; y < 5; y++) {
-                int y5 = y * 5;
-                for (int x = 0; x < 5; x++) {
-                    int s = (x + y * 3) % 5 + x * 5;
-                    ad[x + y5] = ROTL(a[s], SS[s]);
-                }
-            }
-
+            long c0 = a00 ^ a05 ^ a10 ^ a15 ^ a20;
+            long c1 = a01 ^ a06 ^ a11 ^ a16 ^ a21;
+            long c2 = a02 ^ a07 ^ a12 ^ a17 ^ a22;
+            long c3 = a03 ^ a08 ^ a13 ^ a18 ^ a23;
+            long c4 = a04 ^ a09 ^ a14 ^ a19 ^ a24;
+            long d0 = c4 ^ Long.rotateLeft(c1, 1);
+            long d1 = c0 ^ Long.rotateLeft(c2, 1);
+            long d2 = c1 ^ Long.rotateLeft(c3, 1);
+            long d3 = c2 ^ Long.rotateLeft(c4, 1);
+            long d4 = c3 ^ Long.rotateLeft(c0, 1);
+            a00 ^= d0; a01 ^= d1; a02 ^= d2; a03 ^= d3; a04 ^= d4;
+            a05 ^= d0; a06 ^= d1; a07 ^= d2; a08 ^= d3; a09 ^= d4;
+            a10 ^= d0; a11 ^= d1; a12 ^= d2; a13 ^= d3; a14 ^= d4;
+            a15 ^= d0; a16 ^= d1; a17 ^= d2; a18 ^= d3; a19 ^= d4;
+            a20 ^= d0; a21 ^= d1; a22 ^= d2; a23 ^= d3; a24 ^= d4;
+            // 3.2.2 Algorithm 2: ρ(A), 3.2.3 Algorithm 3: π(A)
+            long b00 = a00;
+            long b01 = Long.rotateLeft(a06, 44);
+            long b02 = Long.rotateLeft(a12, 43);
+            long b03 = Long.rotateLeft(a18, 21);
+            long b04 = Long.rotateLeft(a24, 14);
+            long b05 = Long.rotateLeft(a03, 28);
+            long b06 = Long.rotateLeft(a09, 20);
+            long b07 = Long.rotateLeft(a10, 3);
+            long b08 = Long.rotateLeft(a16, 45);
+            long b09 = Long.rotateLeft(a22, 61);
+            long b10 = Long.rotateLeft(a01, 1);
+            long b11 = Long.rotateLeft(a07, 6);
+            long b12 = Long.rotateLeft(a13, 25);
+            long b13 = Long.rotateLeft(a19, 8);
+            long b14 = Long.rotateLeft(a20, 18);
+            long b15 = Long.rotateLeft(a04, 27);
+            long b16 = Long.rotateLeft(a05, 36);
+            long b17 = Long.rotateLeft(a11, 10);
+            long b18 = Long.rotateLeft(a17, 15);
+            long b19 = Long.rotateLeft(a23, 56);
+            long b20 = Long.rotateLeft(a02, 62);
+            long b21 = Long.rotateLeft(a08, 55);
+            long b22 = Long.rotateLeft(a14, 39);
+            long b23 = Long.rotateLeft(a15, 41);
+            long b24 = Long.rotateLeft(a21, 2);
             // 3.2.4 Algorithm 4: χ(A)
-            for (int y = 0; y < 25; y += 5) {
-                for (int x = 0; x < 5; x++) {
-                    a[x + y] = ad[x + y] ^ ((~ad[((x + 1) % 5) + y]) & ad[((x + 2) % 5) + y]);
-                }
-            }
-            // 3.2.5 algorithm 5: rc(t)
-            a[0] ^= RC[ir];
+            a00 = b00 ^ (~b01 & b02);
+            a01 = b01 ^ (~b02 & b03);
+            a02 = b02 ^ (~b03 & b04);
+            a03 = b03 ^ (~b04 & b00);
+            a04 = b04 ^ (~b00 & b01);
+            a05 = b05 ^ (~b06 & b07);
+            a06 = b06 ^ (~b07 & b08);
+            a07 = b07 ^ (~b08 & b09);
+            a08 = b08 ^ (~b09 & b05);
+            a09 = b09 ^ (~b05 & b06);
+            a10 = b10 ^ (~b11 & b12);
+            a11 = b11 ^ (~b12 & b13);
+            a12 = b12 ^ (~b13 & b14);
+            a13 = b13 ^ (~b14 & b10);
+            a14 = b14 ^ (~b10 & b11);
+            a15 = b15 ^ (~b16 & b17);
+            a16 = b16 ^ (~b17 & b18);
+            a17 = b17 ^ (~b18 & b19);
+            a18 = b18 ^ (~b19 & b15);
+            a19 = b19 ^ (~b15 & b16);
+            a20 = b20 ^ (~b21 & b22);
+            a21 = b21 ^ (~b22 & b23);
+            a22 = b22 ^ (~b23 & b24);
+            a23 = b23 ^ (~b24 & b20);
+            a24 = b24 ^ (~b20 & b21);
+            // 3.2.5 Algorithm 6: ι(A)
+            a00 ^= RC[ir];
         }
+
+        a[0] = a00; a[1] = a01; a[2] = a02; a[3] = a03; a[4] = a04;
+        a[5] = a05; a[6] = a06; a[7] = a07; a[8] = a08; a[9] = a09;
+        a[10] = a10; a[11] = a11; a[12] = a12; a[13] = a13; a[14] = a14;
+        a[15] = a15; a[16] = a16; a[17] = a17; a[18] = a18; a[19] = a19;
+        a[20] = a20; a[21] = a21; a[22] = a22; a[23] = a23; a[24] = a24;
     }
 
     /**
@@ -249,12 +318,8 @@ public class Keccak extends BlockMessageDigest {
      */
     private void keccak(byte[] b, int offset) {
         // A[x,y,z] = S[w(5y+x)+z)
-        int wb = w / 8;
         for (int c = 0; c < R; c++) {
-            int of = offset + wb * c;
-            for (int j = 0; j < wb; j++) {
-                a[c] ^= (((long) b[of + j] & 0xff)) << (j * 8);
-            }
+            a[c] ^= (long) LE.get(b, offset + c * 8);
         }
         keccak_f(a);
     }
@@ -271,11 +336,32 @@ public class Keccak extends BlockMessageDigest {
         keccak(input, offset);
     }
 
+    /**
+     * direct buffer から lane 単位で読む.
+     * @param input 入力 BIG_ENDIAN
+     * @param offset 位置
+     * @param len 長さ
+     */
+    @Override
+    public void blockWrite(ByteBuffer input, int offset, int len) {
+        for (int c = 0; c < R; c++) {
+            a[c] ^= Long.reverseBytes(input.getLong(offset + c * 8));
+        }
+        keccak_f(a);
+    }
+
     @Override
     protected void engineUpdate(byte[] input, int offset, int len) {
+        absorbing();
         pac.write(input, offset, len);
     }
 
+    @Override
+    protected void engineUpdate(ByteBuffer input) {
+        absorbing();
+        pac.put(input);
+    }
+
     /**
      * ビット入力にも対応している.
      *
@@ -284,9 +370,28 @@ public class Keccak extends BlockMessageDigest {
      * @param bitLen ビット長
      */
     public void writeBit(byte[] input, long bitOffset, long bitLen) {
+        absorbing();
         ((BitBlockOutput) pac).writeBit(input, bitOffset, bitLen);
     }
 
+    /**
+     * squeeze 中は入力できない.
+     */
+    private void absorbing() {
+        if (squeezed >= 0) {
+            throw new IllegalStateException("squeezing");
+        }
+    }
+
+    /**
+     * 入力の終わり.
+     * 後ろに付けるものがあるときは上書きして最後に呼ぶ.
+     */
+    protected void finish() {
+        absorbing();
+        pad10x1();
+    }
+
     /**
      * 5.1. Specification of pad10*1
      * Algorithm 9: padding bit 対応.
@@ -331,20 +436,57 @@ public class Keccak extends BlockMessageDigest {
      * @param len output bit length
      */
     protected void sponge(Output out, long len) {
-        byte[] outb;
+        byte[] outb = new byte[r / 8];
         while (len > r) {
-            outb = new byte[r / 8];
             toB(a, outb, 0, r);
-            out.dwrite(outb);
+            out.write(outb, 0, outb.length);
             len -= r;
             keccak_f(a);
         }
-        outb = new byte[r / 8];
         toB(a, outb, 0, len);
 
         out.write(outb, 0, (int) ((len + 7) / 8));
     }
 
+    /**
+     * squeeze 中の rate 内の出力済みバイト数. 入力中は -1
+     */
+    private int squeezed = -1;
+
+    /**
+     * XOF の出力を続けて取り出す.
+     * 初回で入力を閉じ, 以降は前回の続きから出す. 何度に分けても続けて取り出したものと同じ.
+     * digest は続きを出力長分出して, reset とともに入力に戻る. 配列は確保しない.
+     *
+     * @param dst 出力先
+     * @param offset 位置
+     * @param length バイト長
+     */
+    public void squeeze(byte[] dst, int offset, int length) {
+        if (squeezed < 0) {
+            finish();
+            squeezed = 0;
+        }
+        int rb = r / 8;
+        while (length > 0) {
+            if (squeezed == rb) {
+                keccak_f(a);
+                squeezed = 0;
+            }
+            if ((squeezed & 7) == 0 && length >= 8) {
+                int n = Math.min(length, rb - squeezed) & ~7;
+                for (int end = offset + n; offset < end; offset += 8, squeezed += 8) {
+                    LE.set(dst, offset, a[squeezed >>> 3]);
+                }
+                length -= n;
+            } else {
+                dst[offset++] = (byte) (a[squeezed >>> 3] >>> ((squeezed & 7) * 8));
+                squeezed++;
+                length--;
+            }
+        }
+    }
+
     /**
      * SHA-512と逆
      *
@@ -356,7 +498,11 @@ public class Keccak extends BlockMessageDigest {
     static void toB(long[] src, byte[] ret, int offset, long len) {
         int blen = (int) ((len + 7) / 8);
         int nlen = (int) (len % 8);
-        for (int i = 0; i < blen; i++) {
+        int i = 0;
+        for (; i + 8 <= blen; i += 8, offset += 8) {
+            LE.set(ret, offset, src[i / 8]);
+        }
+        for (; i < blen; i++) {
             ret[offset++] = (byte) (src[i / 8] >>> ((i % 8) * 8));
         }
         if (nlen > 0) {
@@ -366,7 +512,16 @@ public class Keccak extends BlockMessageDigest {
 
     @Override
     protected byte[] engineDigest() {
-        pad10x1();
+        if (squeezed >= 0) { // squeeze の続き
+            byte[] digest = new byte[(int) ((d + 7) / 8)];
+            squeeze(digest, 0, digest.length);
+            if (d % 8 != 0) {
+                digest[digest.length - 1] &= (1 << (d % 8)) - 1;
+            }
+            engineReset();
+            return digest;
+        }
+        finish();
         byte[] digest = sponge(d);
 
         engineReset();
@@ -379,7 +534,7 @@ public class Keccak extends BlockMessageDigest {
      * @param out 出力先
      */
     public void digest(Output out) {
-        pad10x1();
+        finish();
         sponge(out, d);
 
         engineReset();
@@ -392,7 +547,7 @@ public class Keccak extends BlockMessageDigest {
      * @param length 出力bit長 別で出力する場合は0かも
      */
     public void digest(Output out, long length) {
-        pad10x1();
+        finish();
         setBitDigestLength(length); // 可変判定
         sponge(out, d);
 
@@ -40,12 +40,52 @@ public class KeccakXOF extends Keccak implements XOF,Input {
         super(name, c, d, suffix, suflen);
     }
     
+    @Override
+    protected void engineReset() {
+        super.engineReset();
+        buff = new PacketA();
+    }
+
+    /**
+     * 出力済みの残りも別に持つ.
+     * @return 複製
+     * @throws CloneNotSupportedException 
+     */
+    @Override
+    public KeccakXOF clone() throws CloneNotSupportedException {
+        KeccakXOF md = (KeccakXOF) super.clone();
+        md.buff = copy(buff);
+        return md;
+    }
+
+    /**
+     * 出力済みの残りも写す.
+     * @param src 写し元
+     */
+    @Override
+    protected void restoreState(BlockMessageDigest src) {
+        super.restoreState(src);
+        buff = copy(((KeccakXOF) src).buff);
+    }
+
+    private static Packet copy(Packet src) {
+        byte[] d = src.toByteArray();
+        src.backWrite(d);
+        Packet p = new PacketA();
+        p.write(d);
+        return p;
+    }
+
+    /**
+     * squeeze の続きを rate 単位で足す.
+     * @param len 必要なバイト長
+     */
     private void gen(long len) {
         if (!buff.readable(len)) {
-            
             int r = getBitBlockLength() / 8;
-            long blockLen = (len - buff.size() + r - 1) / r * r;
-            sponge(buff, blockLen);
+            byte[] b = new byte[(int) ((len - buff.size() + r - 1) / r * r)];
+            squeeze(b, 0, b.length);
+            buff.write(b);
         }
     }
     
@@ -16,7 +16,6 @@
 package net.siisise.security.digest;
 
 import net.siisise.lang.Bin;
-import net.siisise.security.io.BlockOutput;
 
 /**
  * RFC 1320
@@ -26,7 +25,7 @@ import net.siisise.security.io.BlockOutput;
 public class MD4 extends BlockMessageDigest {
 
     private final int[] IV = new int[]{0x67452301, 0xefcdab89, 0x98badcfe, 0x10325476};
-    private int[] ad;
+    private final int[] ad = new int[4];
 
     public MD4() {
         super("MD4");
@@ -45,9 +44,9 @@ public class MD4 extends BlockMessageDigest {
 
     @Override
     protected void engineReset() {
-        ad = IV.clone();
+        System.arraycopy(IV, 0, ad, 0, IV.length);
         length = 0;
-        pac = new BlockOutput(this);
+        blockReset();
     }
 
     static final int[] S1 = {3, 19, 11, 7};
@@ -120,17 +119,7 @@ public class MD4 extends BlockMessageDigest {
 
     @Override
     protected byte[] engineDigest() {
-
-        long len = length;
-
-        // ラスト周
-        // padding
-        pac.write(new byte[]{(byte) 0x80});
-        int padlen = 512 - (int) ((len + 64 + 8) % 512);
-        pac.write(new byte[padlen / 8]);
-        byte[] lena = Bin.lltob(len);
-
-        pac.write(lena, 0, lena.length);
+        pac.pad(length, 8, false);
 
         byte[] ret = Bin.litob(ad);
         engineReset();
@@ -15,20 +15,21 @@
  */
 package net.siisise.security.digest;
 
+import java.nio.ByteBuffer;
 import net.siisise.lang.Bin;
-import net.siisise.security.io.BlockOutput;
+import net.siisise.security.io.BlockBufferListener;
 
 /**
  * RFC 1321 MD5の実装.
  * @deprecated RFC 6151 署名禁止 RFC 6331 歴史的 RFC 9155 TLS 1.2 DTLS 1.2 脆弱
  */
 @Deprecated
-public class MD5 extends BlockMessageDigest {
+public class MD5 extends BlockMessageDigest implements BlockBufferListener,Cloneable {
 
     public static String OBJECTIDENTIFIER = "1.2.840.113549.2.5";
 
     private final int digestLength;
-    private int[] ad;
+    private int[] ad = new int[4];
 
     static final int[] S1 = {7, 22, 17, 12};
     static final int[] S2 = {5, 20, 14, 9};
@@ -100,9 +101,22 @@ public class MD5 extends BlockMessageDigest {
 
     @Override
     protected void engineReset() {
-        ad = IV.clone();
+        System.arraycopy(IV, 0, ad, 0, IV.length);
         length = 0;
-        pac = new BlockOutput(this);
+        blockReset();
+    }
+
+    @Override
+    public MD5 clone() throws CloneNotSupportedException {
+        MD5 md = (MD5) super.clone();
+        md.ad = ad.clone();
+        md.x = new int[16];
+        return md;
+    }
+
+    @Override
+    protected void restoreState(BlockMessageDigest src) {
+        System.arraycopy(((MD5) src).ad, 0, ad, 0, ad.length);
     }
 
     private void abcdf(int m, int i) {
@@ -152,15 +166,28 @@ public class MD5 extends BlockMessageDigest {
     
     @Override
     public void blockWrite(byte[] input, int offset, int len) {
+        Bin.btoli(input, offset, x, 16);
+        compress();
+    }
 
+    @Override
+    public void blockWrite(ByteBuffer input, int offset, int len) {
+        for (int i = 0; i < 16; i++, offset += 4) {
+            x[i] = Integer.reverseBytes(input.getInt(offset));
+        }
+        compress();
+    }
+
+    /**
+     * x に読み込んだ1ブロック分.
+     */
+    private void compress() {
         int aa, bb, cc, dd;
         aa = ad[0];
         bb = ad[1];
         cc = ad[2];
         dd = ad[3];
 
-        Bin.btoli(input, offset, x, 16);
-
         /* Round 1. */
         for (int i = 0; i < 16; i++) {
             abcdf(x[i], i);
@@ -186,17 +213,7 @@ public class MD5 extends BlockMessageDigest {
 
     @Override
     protected byte[] engineDigest() {
-
-        long len = length;
-
-        // ラスト周
-        // padding
-        pac.write(new byte[]{(byte) 0x80});
-        int padlen = 512 - (int) ((len + 64 + 8) % 512);
-        pac.write(new byte[padlen / 8]);
-        byte[] lena = Bin.lltob(len);
-
-        pac.write(lena, 0, lena.length);
+        pac.pad(length, 8, false);
 
         byte[] ret = new byte[digestLength];
         for (int i = 0; i < digestLength; i++) {
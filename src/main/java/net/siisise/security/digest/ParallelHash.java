@@ -15,8 +15,16 @@
  */
 package net.siisise.security.digest;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
 /**
- * NIST SP 800-185 6 ParallelHash. 並列ではないかも.
+ * NIST SP 800-185 6 ParallelHash.
+ * まとめて渡されたブロックが閾値以上あれば各ブロックの cSHAKE を ForkJoinPool で並列に計算し,
+ * 順に外側へ渡す. 結果は逐次と同じ.
  */
 public class ParallelHash extends RawcSHAKE {
 
@@ -32,8 +40,13 @@ public class ParallelHash extends RawcSHAKE {
      * block 残サイズ
      */
     int size;
-    private final SHAKE shake;
+    private SHAKE shake;
+    private final int c;
     int n;
+    /**
+     * 並列にするブロック数.
+     */
+    private int threshold;
 
     /**
      *
@@ -48,7 +61,9 @@ public class ParallelHash extends RawcSHAKE {
         this.B = B;
         this.L = xof ? 0 : L;
         size = B;
+        this.c = c;
         shake = new SHAKE(c, c * 2);
+        threshold = Math.max(2, 65536 / B);
 //        z = new PacketA();
         //z.dwrite(SHA3Derived.left_encode(B));
         byte[] zb = SHA3Derived.left_encode(B);
@@ -56,8 +71,57 @@ public class ParallelHash extends RawcSHAKE {
         n = 0;
     }
 
+    @Override
+    public ParallelHash clone() throws CloneNotSupportedException {
+        ParallelHash md = (ParallelHash) super.clone();
+        md.shake = (SHAKE) shake.clone();
+        return md;
+    }
+
+    @Override
+    protected void restoreState(BlockMessageDigest src) {
+        super.restoreState(src);
+        ParallelHash p = (ParallelHash) src;
+        shake.restore(p.shake);
+        size = p.size;
+        n = p.n;
+    }
+
+    /**
+     * 並列に計算する閾値.
+     * 1回の update で threshold ブロック以上あるときに並列にする.
+     * @param threshold ブロック数 Integer.MAX_VALUE で逐次のみ
+     */
+    public void setParallelThreshold(int threshold) {
+        this.threshold = Math.max(2, threshold);
+    }
+
+    /**
+     * 並列に処理できる長さずつ配列に写して渡す.
+     * @param src ソース
+     */
+    @Override
+    protected void engineUpdate(ByteBuffer src) {
+        updateArray(src, (int) Math.min(1 << 24, 4L * B * threshold));
+    }
+
     @Override
     public void engineUpdate(byte[] src, int offset, int length) {
+        if (size < B && size <= length) { // 途中のブロックを埋める
+            shake.update(src, offset, size);
+            length -= size;
+            offset += size;
+            byte[] dj = shake.digest();
+            super.engineUpdate(dj, 0, dj.length);
+            size = B;
+            n++;
+        }
+        int blocks = length / B;
+        if (blocks >= threshold) {
+            parallel(src, offset, blocks);
+            offset += blocks * B;
+            length -= blocks * B;
+        }
         while (size <= length) {
             shake.update(src, offset, size);
             length -= size;
@@ -74,12 +138,37 @@ public class ParallelHash extends RawcSHAKE {
     }
 
     /**
-     * digest
-     *
-     * @return ダイジェスト
+     * ブロックごとの cSHAKE を分けて計算し, 順に外側へ渡す.
+     * @param src データ
+     * @param offset 位置
+     * @param blocks ブロック数
+     */
+    private void parallel(byte[] src, int offset, int blocks) {
+        int dl = c / 4;
+        byte[] z = new byte[blocks * dl];
+        int tasks = Math.min(blocks, ForkJoinPool.getCommonPoolParallelism() * 4);
+        List<ForkJoinTask<?>> list = new ArrayList<>();
+        for (int t = 0; t < tasks; t++) {
+            int first = (int) ((long) blocks * t / tasks);
+            int last = (int) ((long) blocks * (t + 1) / tasks);
+            list.add(ForkJoinTask.adapt(() -> {
+                SHAKE leaf = new SHAKE(c, c * 2);
+                for (int i = first; i < last; i++) {
+                    leaf.update(src, offset + i * B, B);
+                    System.arraycopy(leaf.digest(), 0, z, i * dl, dl);
+                }
+            }));
+        }
+        ForkJoinTask.invokeAll(list);
+        super.engineUpdate(z, 0, z.length);
+        n += blocks;
+    }
+
+    /**
+     * 最後のブロック, ブロック数, 出力長を付けて閉じる.
      */
     @Override
-    public byte[] engineDigest() {
+    protected void finish() {
         if (size < B) {
             byte[] dj = shake.digest();
             super.engineUpdate(dj, 0, dj.length);
@@ -92,7 +181,7 @@ public class ParallelHash extends RawcSHAKE {
         super.engineUpdate(a, 0, a.length);
 
         n = 0;
-        return super.engineDigest();
+        super.finish();
     }
 
 }
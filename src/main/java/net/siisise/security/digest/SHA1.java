@@ -15,8 +15,9 @@
  */
 package net.siisise.security.digest;
 
+import java.nio.ByteBuffer;
 import net.siisise.lang.Bin;
-import net.siisise.security.io.BlockOutput;
+import net.siisise.security.io.BlockBufferListener;
 
 /**
  * RFC 3174 SHA-1.
@@ -25,10 +26,10 @@ import net.siisise.security.io.BlockOutput;
  * @deprecated 
  */
 @Deprecated
-public final class SHA1 extends BlockMessageDigest {
+public final class SHA1 extends BlockMessageDigest implements BlockBufferListener,Cloneable {
 
     public static final String OBJECTIDENTIFIER = "1.3.14.3.2.26";
-    private final int[] h = new int[5];
+    private int[] h = new int[5];
     private final int bit;
     
     public SHA1() {
@@ -65,10 +66,23 @@ public final class SHA1 extends BlockMessageDigest {
         h[2] = 0x98badcfe;
         h[3] = 0x10325476;
         h[4] = 0xc3d2e1f0;
-        pac = new BlockOutput(this);
+        blockReset();
         length = 0;
     }
 
+    @Override
+    public SHA1 clone() throws CloneNotSupportedException {
+        SHA1 md = (SHA1) super.clone();
+        md.h = h.clone();
+        md.w = new int[80];
+        return md;
+    }
+
+    @Override
+    protected void restoreState(BlockMessageDigest src) {
+        System.arraycopy(((SHA1) src).h, 0, h, 0, h.length);
+    }
+
     private static int fk(int t, int b, int c, int d) {
         if (t <= 19) { // Ch(x,y,z)
 //            return ((b & c) | ((~b) & d)) + 0x5a827999;
@@ -86,7 +100,36 @@ public final class SHA1 extends BlockMessageDigest {
 
     @Override
     public void blockWrite(byte[] src, int offset, int len) {
+        compress(h, w, src, offset);
+    }
+
+    @Override
+    public void blockWrite(ByteBuffer src, int offset, int len) {
+        for (int t = 0; t < 16; t++, offset += 4) {
+            w[t] = src.getInt(offset);
+        }
+        compress(h, w);
+    }
+
+    /**
+     * 1ブロック分の圧縮関数.
+     * @param h 状態
+     * @param w 80語の作業領域
+     * @param src 64バイト
+     * @param offset 位置
+     */
+    private static void compress(final int[] h, final int[] w, final byte[] src, final int offset) {
+        // a.
+        Bin.btoi(src, offset, w, 16);
+        compress(h, w);
+    }
 
+    /**
+     * 1ブロック分の圧縮関数.
+     * @param h 状態
+     * @param w 80語の作業領域 先頭16語に入力を読み込んだもの
+     */
+    private static void compress(final int[] h, final int[] w) {
         int a, b, c, d, e;
         // 6.1.
         // c.
@@ -95,8 +138,6 @@ public final class SHA1 extends BlockMessageDigest {
         c = h[2];
         d = h[3];
         e = h[4];
-        // a.
-        Bin.btoi(src, offset, w, 16);
         // b.
         for (int t = 16; t < 80; t++) {
             int n = w[t - 3] ^ w[t - 8] ^ w[t - 14] ^ w[t - 16];
@@ -125,21 +166,7 @@ public final class SHA1 extends BlockMessageDigest {
      */
     @Override
     protected byte[] engineDigest() {
-
-        long len = length;
-
-        // ラスト周
-        // padding
-        pac.write(new byte[]{(byte) 0x80});
-        int padlen = 512 - (int) ((len + 64 + 8) % 512);
-        pac.write(new byte[padlen / 8]);
-        byte[] lena = new byte[8];
-        for ( int i = 0; i < 8; i++ ) {
-            lena[7-i] = (byte) (len & 0xff);
-            len >>>= 8;
-        }
-
-        pac.write(lena, 0, lena.length);
+        pac.pad(length, 8, true);
 
         byte[] ret = SHA256.toB(h, bit / 8);
         engineReset();
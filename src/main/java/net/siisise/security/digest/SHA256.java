@@ -15,9 +15,9 @@
  */
 package net.siisise.security.digest;
 
+import java.nio.ByteBuffer;
 import net.siisise.iso.asn1.tag.OBJECTIDENTIFIER;
-import net.siisise.lang.Bin;
-import net.siisise.security.io.BlockOutput;
+import net.siisise.security.io.BlockBufferListener;
 
 /**
  * SHA-2.
@@ -25,7 +25,7 @@ import net.siisise.security.io.BlockOutput;
  * FIPS PUB 180-3
  * RFC 6234
  */
-public class SHA256 extends BlockMessageDigest {
+public class SHA256 extends BlockMessageDigest implements BlockBufferListener,Cloneable {
 
     public static final OBJECTIDENTIFIER nistAlgorithm = new OBJECTIDENTIFIER("2.16.840.1.101.3.4");
     /**
@@ -88,7 +88,7 @@ public class SHA256 extends BlockMessageDigest {
         0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
     };
 
-    final int[] H = new int[8];
+    int[] H = new int[8];
     private final int[] IV;
 
     public SHA256() {
@@ -114,20 +114,33 @@ public class SHA256 extends BlockMessageDigest {
     @Override
     protected void engineReset() {
         System.arraycopy(IV, 0, H, 0, IV.length);
-        pac = new BlockOutput(this);
+        blockReset();
         length = 0;
     }
 
+    @Override
+    public SHA256 clone() throws CloneNotSupportedException {
+        SHA256 md = (SHA256) super.clone();
+        md.H = H.clone();
+        md.w = new int[64];
+        return md;
+    }
+
+    @Override
+    protected void restoreState(BlockMessageDigest src) {
+        System.arraycopy(((SHA256) src).H, 0, H, 0, H.length);
+    }
+
     private static int Ch(final int x, final int y, final int z) {
-        return (x & y) ^ ((~x) & z);
+        return ((y ^ z) & x) ^ z;
     }
 
     private static int Maj(final int x, final int y, final int z) {
-        return (x & y) ^ (x & z) ^ (y & z);
+        return (x & y) | (z & (x | y));
     }
 
     private static int ROTR(final int x, final int n) {
-        return (x >>> n) | (x << (32 - n));
+        return Integer.rotateRight(x, n);
     }
 
     private static int Σ0(final int x) {
@@ -146,66 +159,91 @@ public class SHA256 extends BlockMessageDigest {
         return ROTR(x, 17) ^ ROTR(x, 19) ^ (x >>> 10);
     }
 
-    int w[] = new int[64];
+    /**
+     * big endian で int を読む.
+     */
+    private static int be(byte[] in, int offset) {
+        return (in[offset] << 24) | ((in[offset + 1] & 0xff) << 16) | ((in[offset + 2] & 0xff) << 8) | (in[offset + 3] & 0xff);
+    }
+
+    /**
+     * メッセージスケジュール
+     */
+    private int[] w = new int[64];
 
     @Override
     public void blockWrite(byte[] in, int offset, int length) {
+        compress(H, w, in, offset);
+    }
 
-        int a, b, c, d, e, f, g, h;
-        a = H[0];
-        b = H[1];
-        c = H[2];
-        d = H[3];
-        e = H[4];
-        f = H[5];
-        g = H[6];
-        h = H[7];
-
-        Bin.btoi(in, offset, w, 16);
-        for (int t = 16; t < 64; t++) {
-            w[t] = σ1(w[t - 2]) + w[t - 7] + σ0(w[t - 15]) + w[t - 16];
+    @Override
+    public void blockWrite(ByteBuffer in, int offset, int length) {
+        for (int t = 0; t < 16; t++, offset += 4) {
+            w[t] = in.getInt(offset);
         }
+        compress(H, w);
+    }
 
-        for (int t = 0; t < 64; t++) {
-            int temp1 = h + Σ1(e) + Ch(e, f, g) + K[t] + w[t];
-            int temp2 = Σ0(a) + Maj(a, b, c);
-            h = g;
-            g = f;
-            f = e;
-            e = d + temp1;
-            d = c;
-            c = b;
-            b = a;
-            a = temp1 + temp2;
+    /**
+     * 1ブロック分の圧縮関数.
+     * 1回で通し, 8ラウンドずつ展開して変数名の入れ替えで回す.
+     * @param H 状態
+     * @param w 64語の作業領域
+     * @param in 64バイト
+     * @param offset 位置
+     */
+    static void compress(final int[] H, final int[] w, final byte[] in, int offset) {
+        for (int t = 0; t < 16; t++, offset += 4) {
+            w[t] = be(in, offset);
         }
-/*
-        // シフトしているのは元に戻る
-        for (int t = 63; t >=0; t--) {
-            int temp1 = a;
-            a = b;
-            b = c;
-            c = d;
-            int temp2 = Σ0(a) + Maj(a, b, c);
-            temp1 -= temp2;
-            d = e - temp1;
-            e = f;
-            f = g;
-            g = h;
-            h = temp1 - (Σ1(e) + Ch(e, f, g) + K[t] + w[t]); // h か wが定まらないと不確定
+        compress(H, w);
+    }
+
+    /**
+     * 1ブロック分の圧縮関数.
+     * @param H 状態
+     * @param w 64語の作業領域 先頭16語に入力を読み込んだもの
+     */
+    static void compress(final int[] H, final int[] w) {
+        int a = H[0];
+        int b = H[1];
+        int c = H[2];
+        int d = H[3];
+        int e = H[4];
+        int f = H[5];
+        int g = H[6];
+        int h = H[7];
+
+        for (int t = 16; t < 64; t++) {
+            w[t] = σ1(w[t - 2]) + w[t - 7] + σ0(w[t - 15]) + w[t - 16];
         }
-        for (int t = 0; t < 64; t++) {
-            int temp1 = h + Σ1(e) + Ch(e, f, g) + K[t] + w[t];
-            int temp2 = Σ0(a) + Maj(a, b, c);
-            h = g;
-            g = f;
-            f = e;
-            e = d + temp1;
-            d = c;
-            c = b;
-            b = a;
-            a = temp1 + temp2;
+        for (int t = 0; t < 64; t += 8) {
+            h += Σ1(e) + Ch(e, f, g) + K[t] + w[t];
+            d += h;
+            h += Σ0(a) + Maj(a, b, c);
+            g += Σ1(d) + Ch(d, e, f) + K[t + 1] + w[t + 1];
+            c += g;
+            g += Σ0(h) + Maj(h, a, b);
+            f += Σ1(c) + Ch(c, d, e) + K[t + 2] + w[t + 2];
+            b += f;
+            f += Σ0(g) + Maj(g, h, a);
+            e += Σ1(b) + Ch(b, c, d) + K[t + 3] + w[t + 3];
+            a += e;
+            e += Σ0(f) + Maj(f, g, h);
+            d += Σ1(a) + Ch(a, b, c) + K[t + 4] + w[t + 4];
+            h += d;
+            d += Σ0(e) + Maj(e, f, g);
+            c += Σ1(h) + Ch(h, a, b) + K[t + 5] + w[t + 5];
+            g += c;
+            c += Σ0(d) + Maj(d, e, f);
+            b += Σ1(g) + Ch(g, h, a) + K[t + 6] + w[t + 6];
+            f += b;
+            b += Σ0(c) + Maj(c, d, e);
+            a += Σ1(f) + Ch(f, g, h) + K[t + 7] + w[t + 7];
+            e += a;
+            a += Σ0(b) + Maj(b, c, d);
         }
-*/
+
         H[0] += a;
         H[1] += b;
         H[2] += c;
@@ -232,21 +270,7 @@ public class SHA256 extends BlockMessageDigest {
 
     @Override
     protected byte[] engineDigest() {
-
-        long len = length;
-
-        // ラスト周
-        // padding
-        pac.write(new byte[]{(byte) 0x80});
-        int padlen = 512 - (int) ((len + 64 + 8) % 512);
-        pac.write(new byte[padlen / 8]);
-        byte[] lena = new byte[8];
-        for (int i = 0; i < 8; i++) {
-            lena[7 - i] = (byte) len;
-            len >>>= 8;
-        }
-
-        pac.write(lena, 0, lena.length);
+        pac.pad(length, 8, true);
 
         byte[] ret = toB(H, engineGetDigestLength());
         engineReset();
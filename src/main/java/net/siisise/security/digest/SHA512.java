@@ -16,19 +16,19 @@
 package net.siisise.security.digest;
 
 import java.io.UnsupportedEncodingException;
-import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import net.siisise.iso.asn1.tag.OBJECTIDENTIFIER;
 import net.siisise.lang.Bin;
-import net.siisise.security.io.BlockOutput;
+import net.siisise.security.io.BlockBufferListener;
 
 /**
  * NIST FIPS PUB 180-4.
  * RFC 4634
  * RFC 6234
  */
-public class SHA512 extends BlockMessageDigest {
+public class SHA512 extends BlockMessageDigest implements BlockBufferListener,Cloneable {
 
     public static final OBJECTIDENTIFIER OID = SHA256.hashAlgs.sub(3);
 
@@ -98,10 +98,9 @@ public class SHA512 extends BlockMessageDigest {
         return H0;
     }
 
-    protected final long[] H = new long[8];
+    protected long[] H = new long[8];
     private final int digestLength;
     private final long[] IV;
-    private BigInteger length;
 
     /**
      * 汎用初期.
@@ -146,8 +145,21 @@ public class SHA512 extends BlockMessageDigest {
     @Override
     protected void engineReset() {
         System.arraycopy(IV, 0, H, 0, IV.length);
-        pac = new BlockOutput(this);
-        length = BigInteger.valueOf(0);
+        blockReset();
+        length = 0;
+    }
+
+    @Override
+    public SHA512 clone() throws CloneNotSupportedException {
+        SHA512 md = (SHA512) super.clone();
+        md.H = H.clone();
+        md.w = new long[80];
+        return md;
+    }
+
+    @Override
+    protected void restoreState(BlockMessageDigest src) {
+        System.arraycopy(((SHA512) src).H, 0, H, 0, H.length);
     }
 
     static final long ch(final long x, final long y, final long z) {
@@ -178,17 +190,39 @@ public class SHA512 extends BlockMessageDigest {
         return ROTR(x, 19) ^ ROTR(x, 61) ^ (x >>> 6);
     }
 
-    @Override
-    protected void engineUpdate(byte[] input, int offset, int len) {
-        pac.write(input, offset, len);
-        length = length.add(BigInteger.valueOf(len * 8l));
-    }
-    
     long w[] = new long[80];
 
     @Override
     public void blockWrite(byte[] in, int offset, int len) {
-    
+        compress(H, w, in, offset);
+    }
+
+    @Override
+    public void blockWrite(ByteBuffer in, int offset, int len) {
+        for (int t = 0; t < 16; t++, offset += 8) {
+            w[t] = in.getLong(offset);
+        }
+        compress(H, w);
+    }
+
+    /**
+     * 1ブロック分の圧縮関数.
+     * @param H 状態
+     * @param w 80語の作業領域
+     * @param in 128バイト
+     * @param offset 位置
+     */
+    static void compress(final long[] H, final long[] w, final byte[] in, final int offset) {
+        Bin.btol(in, offset, w,16);
+        compress(H, w);
+    }
+
+    /**
+     * 1ブロック分の圧縮関数.
+     * @param H 状態
+     * @param w 80語の作業領域 先頭16語に入力を読み込んだもの
+     */
+    static void compress(final long[] H, final long[] w) {
         long a, b, c, d, e, f, g, h;
 
         a = H[0];
@@ -200,7 +234,6 @@ public class SHA512 extends BlockMessageDigest {
         g = H[6];
         h = H[7];
 
-        Bin.btol(in, offset, w,16);
         for (int t = 16; t < 80; t++) {
             w[t] = σ1(w[t - 2]) + w[t - 7] + σ0(w[t - 15]) + w[t - 16];
         }
@@ -237,17 +270,7 @@ public class SHA512 extends BlockMessageDigest {
 
     @Override
     protected byte[] engineDigest() {
-
-        BigInteger len = length;
-        byte[] lb = len.toByteArray(); // 128bit
-
-        // ラスト周
-        // padding
-        pac.write(new byte[]{(byte) 0x80});
-        int padlen = 1024 - ((len.mod(BigInteger.valueOf(1024)).intValue() + 16 * 8 + 8) % 1024);
-        pac.write(new byte[padlen / 8 + (16 - lb.length)]);
-
-        engineUpdate(lb, 0, lb.length);
+        pac.pad(length, 16, true);
 
         byte[] digest = toB(H, digestLength / 8);
         engineReset();
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2023 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.digest;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+/**
+ * Merkle Tree Hash.
+ * RFC 6962 2.1. Merkle Hash Trees の形で, 固定長に区切ったものを葉にする.
+ *
+ * 葉は HASH(0x00 || d), 節は HASH(0x01 || 左 || 右).
+ * n 枚の葉は n 未満で最大の 2のべき乗 k で左右に分ける. 空の入力は HASH().
+ * まとめて渡された葉が閾値以上あれば ForkJoinPool で並列に計算する. 結果は逐次と同じ.
+ *
+ * digest したときの葉のハッシュを残すので, 変更した葉だけ計算し直して root で根を求められる.
+ */
+public class TreeHash extends BlockMessageDigest {
+
+    /**
+     * 葉
+     */
+    static final byte LEAF = 0x00;
+    /**
+     * 節
+     */
+    static final byte NODE = 0x01;
+
+    private final Supplier<BlockMessageDigest> hash;
+    /**
+     * 葉のバイト長
+     */
+    private final int B;
+    private final int digestLength;
+    /**
+     * 途中の葉
+     */
+    private final BlockMessageDigest leaf;
+    /**
+     * 葉の残サイズ
+     */
+    private int size;
+    private final List<byte[]> leaves = new ArrayList<>();
+    /**
+     * 最後に digest したときの葉
+     */
+    private byte[][] last = new byte[0][];
+    /**
+     * 並列にする葉の数.
+     */
+    private int threshold = 2;
+
+    /**
+     * SHA-256, 1MiB ごと.
+     */
+    public TreeHash() {
+        this(SHA256::new, 1024 * 1024);
+    }
+
+    /**
+     * @param alg 節のハッシュ名 SHA-256, SHA3-256 など
+     * @param B 葉のバイト長
+     */
+    public TreeHash(String alg, int B) {
+        this(supplier(alg), B);
+    }
+
+    /**
+     * @param hash 節のハッシュ 並列で使うので呼ぶごとに新しいもの
+     * @param B 葉のバイト長
+     */
+    public TreeHash(Supplier<BlockMessageDigest> hash, int B) {
+        this(hash, hash.get(), B);
+    }
+
+    private TreeHash(Supplier<BlockMessageDigest> hash, BlockMessageDigest leaf, int B) {
+        super("TreeHash-" + leaf.getAlgorithm());
+        if (B < 1) {
+            throw new IllegalStateException("leaf size");
+        }
+        this.hash = hash;
+        this.leaf = leaf;
+        this.B = B;
+        digestLength = leaf.getDigestLength();
+        engineReset();
+    }
+
+    private static Supplier<BlockMessageDigest> supplier(String alg) {
+        Supplier<BlockMessageDigest> s = DigestAlgorithm.supplier(alg);
+        if (s == null) {
+            throw new UnsupportedOperationException(alg);
+        }
+        return s;
+    }
+
+    /**
+     * 並列に計算する閾値.
+     * 1回の update で threshold 枚以上の葉があるときに並列にする.
+     * @param threshold 葉の数 Integer.MAX_VALUE で逐次のみ
+     */
+    public void setParallelThreshold(int threshold) {
+        this.threshold = Math.max(2, threshold);
+    }
+
+    /**
+     * 葉のバイト長.
+     * @return 葉のバイト長
+     */
+    public int getLeafSize() {
+        return B;
+    }
+
+    @Override
+    public int getBitBlockLength() {
+        return B * 8;
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return digestLength;
+    }
+
+    @Override
+    protected void engineReset() {
+        leaf.reset();
+        leaf.update(LEAF);
+        size = B;
+        leaves.clear();
+        length = 0;
+    }
+
+    /**
+     * 1枚分揃ったとき.
+     * @param src 元
+     * @param offset 位置
+     * @param len 葉のバイト長
+     */
+    @Override
+    public void blockWrite(byte[] src, int offset, int len) {
+        leaves.add(leafHash(src, offset, len));
+    }
+
+    @Override
+    protected void engineUpdate(byte[] src, int offset, int length) {
+        engineUpdate(ByteBuffer.wrap(src, offset, length));
+    }
+
+    @Override
+    protected void engineUpdate(ByteBuffer src) {
+        length += src.remaining() * 8L;
+        if (size < B && size <= src.remaining()) { // 途中の葉を埋める
+            next(src, size);
+        }
+        int blocks = src.remaining() / B;
+        if (blocks >= threshold) {
+            parallel(src, blocks);
+        }
+        while (size <= src.remaining()) {
+            next(src, size);
+        }
+        size -= src.remaining();
+        leaf.update(src);
+    }
+
+    /**
+     * 途中の葉を閉じる.
+     * @param src データ
+     * @param len 残り
+     */
+    private void next(ByteBuffer src, int len) {
+        ByteBuffer s = src.duplicate();
+        s.limit(s.position() + len);
+        leaf.update(s);
+        src.position(s.position());
+        leaves.add(leaf.digest());
+        leaf.update(LEAF);
+        size = B;
+    }
+
+    /**
+     * 葉を分けて計算する.
+     * @param src データ
+     * @param blocks 葉の数
+     */
+    private void parallel(ByteBuffer src, int blocks) {
+        byte[][] z = new byte[blocks][];
+        int offset = src.position();
+        int tasks = Math.min(blocks, ForkJoinPool.getCommonPoolParallelism() * 4);
+        List<ForkJoinTask<?>> list = new ArrayList<>();
+        for (int t = 0; t < tasks; t++) {
+            int first = (int) ((long) blocks * t / tasks);
+            int end = (int) ((long) blocks * (t + 1) / tasks);
+            ByteBuffer s = src.duplicate();
+            list.add(ForkJoinTask.adapt(() -> {
+                BlockMessageDigest md = hash.get();
+                for (int i = first; i < end; i++) {
+                    s.limit(offset + (i + 1) * B).position(offset + i * B);
+                    md.update(LEAF);
+                    md.update(s);
+                    z[i] = md.digest();
+                }
+            }));
+        }
+        ForkJoinTask.invokeAll(list);
+        leaves.addAll(Arrays.asList(z));
+        src.position(offset + blocks * B);
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        if (size < B) { // 端数の葉
+            leaves.add(leaf.digest());
+        }
+        last = leaves.toArray(new byte[leaves.size()][]);
+        byte[] r = root(last);
+        engineReset();
+        return r;
+    }
+
+    /**
+     * 最後に digest したときの葉のハッシュ.
+     * @return 葉のハッシュ 先頭から順
+     */
+    public byte[][] getLeafHashes() {
+        byte[][] l = new byte[last.length][];
+        for (int i = 0; i < l.length; i++) {
+            l[i] = last[i].clone();
+        }
+        return l;
+    }
+
+    /**
+     * 葉のハッシュ.
+     * 変更した葉を計算し直すときに使う.
+     * @param src データ
+     * @param offset 位置
+     * @param len 長さ 葉のバイト長以下
+     * @return HASH(0x00 || d)
+     */
+    public byte[] leafHash(byte[] src, int offset, int len) {
+        MessageDigest md = hash.get();
+        md.update(LEAF);
+        md.update(src, offset, len);
+        return md.digest();
+    }
+
+    /**
+     * 節のハッシュ.
+     * @param left 左
+     * @param right 右
+     * @return HASH(0x01 || left || right)
+     */
+    public byte[] nodeHash(byte[] left, byte[] right) {
+        MessageDigest md = hash.get();
+        md.update(NODE);
+        md.update(left);
+        md.update(right);
+        return md.digest();
+    }
+
+    /**
+     * 葉のハッシュから根を求める.
+     * @param leaves 葉のハッシュ
+     * @return MTH
+     */
+    public byte[] root(byte[][] leaves) {
+        if (leaves.length == 0) {
+            return hash.get().digest();
+        }
+        return mth(leaves, 0, leaves.length);
+    }
+
+    /**
+     * RFC 6962 2.1. MTH(D[n])
+     * @param leaves 葉のハッシュ
+     * @param from 先頭
+     * @param to 末尾
+     * @return 部分木のハッシュ
+     */
+    private byte[] mth(byte[][] leaves, int from, int to) {
+        int n = to - from;
+        if (n == 1) {
+            return leaves[from];
+        }
+        int k = split(n);
+        return nodeHash(mth(leaves, from, from + k), mth(leaves, from + k, to));
+    }
+
+    /**
+     * @param n 2以上
+     * @return n 未満で最大の 2のべき乗
+     */
+    private static int split(int n) {
+        return Integer.highestOneBit(n - 1);
+    }
+
+    /**
+     * RFC 6962 2.1.1. Merkle Audit Paths
+     * 葉から根までに必要な節のハッシュ.
+     * @param leaves 葉のハッシュ
+     * @param index 葉の位置
+     * @return 葉に近い方から順の節
+     */
+    public byte[][] path(byte[][] leaves, int index) {
+        if (index < 0 || index >= leaves.length) {
+            throw new IllegalStateException("index");
+        }
+        List<byte[]> p = new ArrayList<>();
+        path(leaves, index, 0, leaves.length, p);
+        return p.toArray(new byte[p.size()][]);
+    }
+
+    private void path(byte[][] leaves, int m, int from, int to, List<byte[]> p) {
+        int n = to - from;
+        if (n == 1) {
+            return;
+        }
+        int k = split(n);
+        if (m < k) {
+            path(leaves, m, from, from + k, p);
+            p.add(mth(leaves, from + k, to));
+        } else {
+            path(leaves, m - k, from + k, to, p);
+            p.add(mth(leaves, from, from + k));
+        }
+    }
+
+    /**
+     * RFC 9162 2.1.3.2. Verifying an Inclusion Proof
+     * 1枚の葉が根に含まれていることを確かめる.
+     * @param root 根
+     * @param index 葉の位置
+     * @param count 葉の数
+     * @param leafHash 葉のハッシュ
+     * @param path 節
+     * @return 含まれている
+     */
+    public boolean verify(byte[] root, int index, int count, byte[] leafHash, byte[][] path) {
+        if (index < 0 || index >= count) {
+            return false;
+        }
+        int fn = index;
+        int sn = count - 1;
+        byte[] r = leafHash;
+        for (byte[] p : path) {
+            if (sn == 0) {
+                return false;
+            }
+            if ((fn & 1) == 1 || fn == sn) {
+                r = nodeHash(p, r);
+                while ((fn & 1) == 0 && fn != 0) {
+                    fn >>= 1;
+                    sn >>= 1;
+                }
+            } else {
+                r = nodeHash(r, p);
+            }
+            fn >>= 1;
+            sn >>= 1;
+        }
+        return sn == 0 && MessageDigest.isEqual(r, root);
+    }
+}
@@ -15,6 +15,8 @@
  */
 package net.siisise.security.digest;
 
+import java.nio.ByteBuffer;
+
 /**
  * TupleHash.
  * update X 1回で1つ分のデータということにしておく.
@@ -70,10 +72,22 @@ public class TupleHash extends RawcSHAKE {
         super.engineUpdate(src, offset, length);
     }
 
+    /**
+     * ByteBuffer 1つで1つ分のデータ.
+     * @param src ソース
+     */
+    @Override
+    protected void engineUpdate(ByteBuffer src) {
+        updateArray(src, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 出力長を付けて閉じる.
+     */
     @Override
-    protected byte[] engineDigest() {
+    protected void finish() {
         byte[] encLen = SHA3Derived.right_encode(L);
         super.engineUpdate(encLen,0,encLen.length);
-        return super.engineDigest();
+        super.finish();
     }
 }
@@ -87,6 +87,20 @@ public interface XOF extends Input {
      */
     void digest(Output out);
 
+    /**
+     * 出力を続けて取り出す.
+     * 初回で入力を閉じ, 呼ぶごとに前回の続きを出す. reset で入力に戻る.
+     * @param dst 出力先
+     * @param offset 位置
+     * @param length バイト長
+     */
+    void squeeze(byte[] dst, int offset, int length);
+
+    /**
+     * MessageDigest 互換.
+     */
+    void reset();
+
     @Override
     default InputStream getInputStream() {
         return new FilterInput(this);
@@ -16,6 +16,7 @@
 package net.siisise.security.io;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import net.siisise.io.BaseBitPac;
 import net.siisise.io.LittleBitPacket;
 import net.siisise.io.Output;
@@ -27,9 +28,10 @@ import net.siisise.io.Output;
  */
 public class BitBlockOutput extends BlockOutput {
 
+    private final BaseBitPac pac;
+
     public BitBlockOutput(BlockIOListener listener) {
-        super(listener);
-        pac = new LittleBitPacket();
+        this(listener, new LittleBitPacket());
     }
 
     public BitBlockOutput(BlockIOListener listener, BaseBitPac packet) {
@@ -37,29 +39,144 @@ public class BitBlockOutput extends BlockOutput {
         pac = packet;
     }
 
+    /**
+     * バイト単位で揃っているときはパケットを通さずにブロックを渡す.
+     * @param data 元
+     * @param offset byte offset バイト位置
+     * @param length byte length バイト長
+     * @return this
+     */
     @Override
     public Output put(byte[] data, int offset, int length) {
+        long bitLength = pac.bitLength();
+        if (bitLength % 8 != 0) {
+            pac.put(data, offset, length);
+            out();
+            return this;
+        }
+        try {
+            int size = (int) (bitLength / 8);
+            if (size > 0 && size + length >= max) {
+                pac.read(block, 0, size);
+                int s = max - size;
+                System.arraycopy(data, offset, block, size, s);
+                offset += s;
+                length -= s;
+                listener.blockWrite(block, 0, max);
+                size = 0;
+            }
+            if (size == 0) {
+                while (length >= max) {
+                    listener.blockWrite(data, offset, max);
+                    offset += max;
+                    length -= max;
+                }
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
         pac.put(data, offset, length);
-        out();
         return this;
     }
 
+    /**
+     * バイト単位で揃っているときは BlockOutput と同じく写さずに渡す.
+     * @param src 元
+     * @return this
+     */
+    @Override
+    public Output put(ByteBuffer src) {
+        if (src.hasArray()) {
+            return super.put(src);
+        }
+        long bitLength = pac.bitLength();
+        if (bitLength % 8 != 0) {
+            while (src.hasRemaining()) { // block を作業領域にして分けて渡す
+                int s = Math.min(max, src.remaining());
+                src.get(block, 0, s);
+                put(block, 0, s);
+            }
+            return this;
+        }
+        try {
+            int size = (int) (bitLength / 8);
+            if (size > 0 && size + src.remaining() >= max) {
+                pac.read(block, 0, size);
+                src.get(block, size, max - size);
+                listener.blockWrite(block, 0, max);
+                size = 0;
+            }
+            if (size == 0) {
+                blocks(src);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        int r = src.remaining();
+        src.get(block, 0, r);
+        pac.put(block, 0, r);
+        return this;
+    }
+
+    @Override
+    public Output put(byte data) {
+        return put(new byte[]{data}, 0, 1);
+    }
+
+    @Override
+    public void clear() {
+        long bitLength = pac.bitLength();
+        if (bitLength > 0) { // 空の readBit は例外になる
+            pac.readBit(new byte[(int) ((bitLength + 7) / 8)], 0, bitLength);
+        }
+    }
+
+    /**
+     * 端数を写す.
+     * 写し元のパケットは読んで書き戻す.
+     * @param src 写し元
+     */
+    @Override
+    public void restore(BlockOutput src) {
+        clear();
+        BaseBitPac spac = ((BitBlockOutput) src).pac;
+        long bitLength = spac.bitLength();
+        if (bitLength == 0) {
+            return;
+        }
+        byte[] d = new byte[(int) ((bitLength + 7) / 8)];
+        spac.readBit(d, 0, bitLength);
+        spac.writeBit(d, 0, bitLength);
+        pac.writeBit(d, 0, bitLength);
+    }
+
+    @Override
+    public BlockOutput copy(BlockIOListener listener) {
+        BitBlockOutput out = new BitBlockOutput(listener);
+        out.restore(this);
+        return out;
+    }
+
+    @Override
+    public int size() {
+        return (int) (pac.bitLength() / 8);
+    }
+
     public void writeBit(byte[] data, long bitOffset, long bitLength) {
-        ((BaseBitPac) pac).writeBit(data, bitOffset, bitLength);
+        pac.writeBit(data, bitOffset, bitLength);
         out();
     }
 
     public void writeBit(int data, int bitLength) {
-        ((BaseBitPac) pac).writeBit(data, bitLength);
+        pac.writeBit(data, bitLength);
         out();
     }
 
     private void out() {
         while (pac.readable(max)) {
-            byte[] d = new byte[max];
-            pac.read(d);
+            pac.read(block, 0, max);
             try {
-                listener.blockWrite(d, 0, max);
+                listener.blockWrite(block, 0, max);
             } catch (IOException ex) {
                 throw new IllegalStateException(ex);
             }
@@ -67,6 +184,6 @@ public class BitBlockOutput extends BlockOutput {
     }
 
     public long bitLength() {
-        return ((BaseBitPac) pac).bitLength();
+        return pac.bitLength();
     }
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2023 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ByteBuffer からブロックを直接読めるもの.
+ * direct buffer, mapped buffer を配列に写さずに処理する.
+ */
+public interface BlockBufferListener extends BlockListener {
+
+    /**
+     * データが揃ったら呼び出される.
+     * src の position, limit は変更しないこと.
+     * @param src 元 BIG_ENDIAN
+     * @param offset データ位置
+     * @param length 固定ブロックサイズ(参考)
+     */
+    void blockWrite(ByteBuffer src, int offset, int length);
+}
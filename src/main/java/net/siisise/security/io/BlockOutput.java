@@ -16,18 +16,23 @@
 package net.siisise.security.io;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import net.siisise.io.Output;
-import net.siisise.io.Packet;
-import net.siisise.io.PacketA;
 
 /**
  * ブロック切り入力機能.
+ * 端数は固定のブロックバッファに持ち, 揃ったブロックは入力元の配列からそのまま渡す.
  */
 public class BlockOutput extends Output.AbstractOutput {
     
     BlockIOListener listener;
-    protected Packet pac = new PacketA();
     protected int max;
+    /**
+     * 端数ブロック
+     */
+    protected final byte[] block;
     int offset;
     
     /**
@@ -37,6 +42,7 @@ public class BlockOutput extends Output.AbstractOutput {
     public BlockOutput(BlockIOListener listener) {
         this.listener = listener;
         max = (listener.getBitBlockLength() + 7) / 8;
+        block = new byte[max];
         offset = 0;
     }
     
@@ -72,24 +78,10 @@ public class BlockOutput extends Output.AbstractOutput {
             }
         });
     }
-/*
-    @Override
-    public Output put(byte[] data, int offset, int length) {
-        try {
-            pac.put(data, offset, length);
-            byte[] block = new byte[max];
-            while (pac.readable(max)) {
-                pac.read(block);
-                listener.blockWrite(block, 0, max);
-            }
-        } catch (IOException ex) {
-            throw new IllegalStateException(ex);
-        }
-        return this;
-    }
-*/
+
     /**
      * コピー量を減らした実装.
+     * 端数を埋めたときのみブロックバッファから渡す.
      * @param data 元
      * @param offset byte offset バイト位置
      * @param length byte length バイト長
@@ -98,20 +90,19 @@ public class BlockOutput extends Output.AbstractOutput {
     @Override
     public Output put(byte[] data, int offset, int length) {
         try {
-            if ( this.offset + length >= max) {
-                byte[] block = new byte[max];
-                pac.read(block);
-                int s = max - this.offset;
+            if (this.offset > 0) {
+                int s = Math.min(max - this.offset, length);
                 System.arraycopy(data, offset, block, this.offset, s);
+                this.offset += s;
                 offset += s;
                 length -= s;
+                if (this.offset < max) {
+                    return this;
+                }
                 listener.blockWrite(block, 0, max);
                 this.offset = 0;
             }
             while (length >= max) {
-//                byte[] t = new byte[max];
-//                System.arraycopy(data, offset, t, 0, max);
-//                System.out.println("bbb:" + Bin.toHex(t));
                 listener.blockWrite(data, offset, max);
                 offset += max;
                 length -= max;
@@ -119,12 +110,138 @@ public class BlockOutput extends Output.AbstractOutput {
         } catch (IOException ex) {
             throw new IllegalStateException(ex);
         }
-        pac.put(data, offset, length);
-        this.offset += length;
+        System.arraycopy(data, offset, block, 0, length);
+        this.offset = length;
         return this;
     }
-    
+
+    /**
+     * ByteBuffer から読む.
+     * 配列を持つものは配列で, direct buffer は BlockBufferListener なら写さずに渡す.
+     * @param src 元 position から limit まで読む
+     * @return this
+     */
+    public Output put(ByteBuffer src) {
+        if (src.hasArray()) {
+            int p = src.position();
+            int len = src.remaining();
+            put(src.array(), src.arrayOffset() + p, len);
+            src.position(p + len);
+            return this;
+        }
+        try {
+            if (offset > 0) {
+                int s = Math.min(max - offset, src.remaining());
+                src.get(block, offset, s);
+                offset += s;
+                if (offset < max) {
+                    return this;
+                }
+                listener.blockWrite(block, 0, max);
+                offset = 0;
+            }
+            blocks(src);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        offset = src.remaining();
+        src.get(block, 0, offset);
+        return this;
+    }
+
+    /**
+     * 揃っているブロックを渡す.
+     * 端数は src に残す.
+     * @param src 元
+     * @throws IOException 
+     */
+    void blocks(ByteBuffer src) throws IOException {
+        if (listener instanceof BlockBufferListener) {
+            BlockBufferListener l = (BlockBufferListener) listener;
+            ByteBuffer bb = src.duplicate().order(ByteOrder.BIG_ENDIAN);
+            int p = src.position();
+            int limit = src.limit();
+            while (limit - p >= max) {
+                l.blockWrite(bb, p, max);
+                p += max;
+            }
+            src.position(p);
+        } else {
+            while (src.remaining() >= max) {
+                src.get(block, 0, max);
+                listener.blockWrite(block, 0, max);
+            }
+        }
+    }
+
+    @Override
+    public Output put(byte data) {
+        block[offset++] = data;
+        if (offset == max) {
+            try {
+                listener.blockWrite(block, 0, max);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            offset = 0;
+        }
+        return this;
+    }
+
+    /**
+     * MD4, MD5, SHA-1, SHA-2 のパディング.
+     * 0x80, 0埋め, ビット長を書いて最後のブロックまで渡す.
+     * @param bitLength メッセージのビット長
+     * @param lengthBytes ビット長欄のバイト長 8 または 16
+     * @param bigEndian ビット長欄の並び
+     */
+    public void pad(long bitLength, int lengthBytes, boolean bigEndian) {
+        try {
+            block[offset++] = (byte) 0x80;
+            if (offset > max - lengthBytes) {
+                Arrays.fill(block, offset, max, (byte) 0);
+                listener.blockWrite(block, 0, max);
+                offset = 0;
+            }
+            Arrays.fill(block, offset, max, (byte) 0);
+            for (int i = 0; i < 8; i++) {
+                block[bigEndian ? max - 1 - i : max - lengthBytes + i] = (byte) (bitLength >>> (i * 8));
+            }
+            listener.blockWrite(block, 0, max);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        offset = 0;
+    }
+
+    /**
+     * 端数を写す.
+     * @param src 写し元
+     */
+    public void restore(BlockOutput src) {
+        System.arraycopy(src.block, 0, block, 0, src.offset);
+        offset = src.offset;
+    }
+
+    /**
+     * 同じ端数を持つものを作る.
+     * @param listener 転送先
+     * @return 複製
+     */
+    public BlockOutput copy(BlockIOListener listener) {
+        BlockOutput out = new BlockOutput(listener);
+        out.restore(this);
+        return out;
+    }
+
+    /**
+     * 端数を捨てて初期状態に戻す.
+     */
+    public void clear() {
+        offset = 0;
+    }
+
     public int size() {
-        return pac.size();
+        return offset;
     }
 }
@@ -15,30 +15,132 @@
  */
 package net.siisise.security.mac;
 
-import net.siisise.io.FIFOPacket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 import net.siisise.io.Output;
 import net.siisise.lang.Bin;
-import net.siisise.lang.ParamThread;
-import net.siisise.math.GFRev;
 
 /**
  * GCM 内部用GHASH.
  * 一般的に利用できる暗号化ハッシュ関数ではない.
  * RFC 4543 GMAC の元
  *
+ * H の倍数を8bit単位で表にしておく Shoup の方法.
+ * 表は鍵ごとに 4KB. Key にまとめて共有できる.
+ *
+ * 長いデータは updateParallel で H^1～H^4 の表を使い4ブロックずつ畳み込み,
+ * 範囲ごとに並列で計算してから H^n 倍して合成する.
  */
 public class GHASH extends Output.AbstractOutput implements MAC {
 
-    // hash subkey Cache
-    GFRev H;
+    /**
+     * 8bit 右シフトではみ出した分の還元. 上位16bitのみ.
+     */
+    private static final long[] R8 = new long[256];
+
+    static {
+        for (int r = 0; r < 256; r++) {
+            long zh = 0;
+            long zl = r;
+            for (int i = 0; i < 8; i++) {
+                long c = zl & 1;
+                zl = (zh << 63) | (zl >>> 1);
+                zh = (zh >>> 1) ^ (-c & 0xe100000000000000l);
+            }
+            R8[r] = zh;
+        }
+    }
+
+    /**
+     * 並列処理で1タスクが受け持つブロック数.
+     */
+    static final int PARALLEL_BLOCKS = 4096;
+
+    /**
+     * 鍵 H ごとの倍数表.
+     * 作成後は変更しないので複数の GHASH, スレッドで共有できる.
+     */
+    public static final class Key {
+
+        /**
+         * i・H の上位64bit
+         */
+        final long[] hh;
+        /**
+         * i・H の下位64bit
+         */
+        final long[] hl;
+        /**
+         * H^1～H^4 の表 [k-1][0] 上位, [k-1][1] 下位. 使うときに作る.
+         */
+        private volatile long[][][] powers;
+        /**
+         * H^PARALLEL_BLOCKS の表
+         */
+        private long[][] chunkPower;
+
+        /**
+         * H の倍数表を作る.
+         * @param H GHASHの鍵 暗号化した0列
+         */
+        public Key(long[] H) {
+            long[][] t = table(H[0], H[1]);
+            hh = t[0];
+            hl = t[1];
+        }
+
+        /**
+         * H^1～H^4 と H^PARALLEL_BLOCKS の表.
+         * @return H^1～H^4
+         */
+        long[][][] powers() {
+            long[][][] p = powers;
+            if (p != null) {
+                return p;
+            }
+            p = new long[4][][];
+            p[0] = new long[][] {hh, hl};
+            long[] z = new long[2];
+            for (int k = 1; k < 4; k++) {
+                z[0] = 0;
+                z[1] = 0;
+                mul(p[k - 1][0], p[k - 1][1], hh[0x80], hl[0x80], z);
+                p[k] = table(z[0], z[1]);
+            }
+            // 2乗を繰り返す
+            long[][] t = p[0];
+            for (int n = 1; n < PARALLEL_BLOCKS; n <<= 1) {
+                z[0] = 0;
+                z[1] = 0;
+                mul(t[0], t[1], t[0][0x80], t[1][0x80], z);
+                t = table(z[0], z[1]);
+            }
+            chunkPower = t;
+            powers = p;
+            return p;
+        }
+    }
+
+    private Key key;
+    private long[] hh;
+    private long[] hl;
     private long[] y;
 
-    private FIFOPacket pool;
-    // AAD length
-    private FIFOPacket lens;
-    private long alen;
-    
-    ParamThread th;
+    /**
+     * 16バイト未満の端数
+     */
+    private final byte[] buf = new byte[16];
+    private int bufLength;
+    /**
+     * AAD または 暗号文の長さ byte
+     */
+    private long len;
+    /**
+     * len(A), len(C) bit
+     */
+    private final long[] lens = new long[2];
+    private int lensCount;
 
     public GHASH() {
     }
@@ -54,13 +156,49 @@ public class GHASH extends Output.AbstractOutput implements MAC {
     /**
      * 初期化っぽいこと.
      * AADを後付する必要あり?.
+     * H の倍数表を作る.
      * @param H GHASHの鍵 暗号化した0列
      */
     public void init(long[] H) {
-        pool = new FIFOPacket();
-        lens = new FIFOPacket();
-        this.H = new GFRev(H);
-        y = new long[H.length];
+        init(new Key(H));
+    }
+
+    /**
+     * 作成済みの表を使う.
+     * @param key H の倍数表
+     */
+    public void init(Key key) {
+        this.key = key;
+        hh = key.hh;
+        hl = key.hl;
+        y = new long[2];
+        clear();
+    }
+
+    /**
+     * 倍数表.
+     * @param vh 上位64bit
+     * @param vl 下位64bit
+     * @return [0] 上位, [1] 下位
+     */
+    private static long[][] table(long vh, long vl) {
+        long[] th = new long[256];
+        long[] tl = new long[256];
+        // 0x80 が 1, 0x40 が x
+        for (int i = 0x80; i > 0; i >>>= 1) {
+            th[i] = vh;
+            tl[i] = vl;
+            long c = vl & 1;
+            vl = (vh << 63) | (vl >>> 1);
+            vh = (vh >>> 1) ^ (-c & 0xe100000000000000l);
+        }
+        for (int i = 2; i < 256; i <<= 1) {
+            for (int j = 1; j < i; j++) {
+                th[i + j] = th[i] ^ th[j];
+                tl[i + j] = tl[i] ^ tl[j];
+            }
+        }
+        return new long[][] {th, tl};
     }
 
     /**
@@ -78,7 +216,11 @@ public class GHASH extends Output.AbstractOutput implements MAC {
      * H を維持したまま他を消す.
      */
     public void clear() {
-        y = new long[y.length];
+        y[0] = 0;
+        y[1] = 0;
+        bufLength = 0;
+        len = 0;
+        lensCount = 0;
     }
 
     /**
@@ -86,77 +228,175 @@ public class GHASH extends Output.AbstractOutput implements MAC {
      * @param a AAD 暗号化しない部分
      */
     public void aad(byte[] a) {
-        alen = 0;
+        len = 0;
         update(a, 0, a.length);
         blockClose();
     }
 
     /**
-     * y にブロックを y C_n
+     * y = (y xor x)・H
      *
-     * @param x ブロック列っぽく
+     * @param xh 上位64bit
+     * @param xl 下位64bit
      */
-    private void xorMul(byte[] x) {
-        Bin.xorl(y, x, 0, y.length);
-        y = H.mul(y);
+    private void xorMul(long xh, long xl) {
+        xh ^= y[0];
+        xl ^= y[1];
+        y[0] = 0;
+        y[1] = 0;
+        mul(hh, hl, xh, xl, y);
     }
 
-    @Override
-    public void update(byte[] src, int offset, int length) {
-        alen += length;
-        pool.write(src, offset, length);
-        thread();
+    /**
+     * z ^= x・T
+     * @param th T の倍数表 上位
+     * @param tl T の倍数表 下位
+     * @param xh 上位64bit
+     * @param xl 下位64bit
+     * @param z 加算先
+     */
+    private static void mul(long[] th, long[] tl, long xh, long xl, long[] z) {
+        int b = (int) xl & 0xff;
+        long zh = th[b];
+        long zl = tl[b];
+        for (int i = 8; i < 64; i += 8) {
+            b = (int) (xl >>> i) & 0xff;
+            int r = (int) zl & 0xff;
+            zl = (zh << 56) | (zl >>> 8);
+            zh = (zh >>> 8) ^ R8[r] ^ th[b];
+            zl ^= tl[b];
+        }
+        for (int i = 0; i < 64; i += 8) {
+            b = (int) (xh >>> i) & 0xff;
+            int r = (int) zl & 0xff;
+            zl = (zh << 56) | (zl >>> 8);
+            zh = (zh >>> 8) ^ R8[r] ^ th[b];
+            zl ^= tl[b];
+        }
+        z[0] ^= zh;
+        z[1] ^= zl;
     }
 
     /**
-     * MAC計算用別スレッドが停止していたら走らせる.
+     * 0 から始めたGHASH.
+     * 4ブロックずつ H^4, H^3, H^2, H を掛けて足す.
+     * @param src データ
+     * @param offset 位置
+     * @param blocks ブロック数
+     * @return 途中の y
      */
-    void thread() {
-        ParamThread t = th;
-        if ( t == null || !t.isAlive()) {
-            try {
-                th = new ParamThread(this, "q");
-                th.start();
-            } catch (NoSuchMethodException ex) {
-                throw new IllegalStateException(ex);
+    private long[] hash(byte[] src, int offset, int blocks) {
+        long[][][] p = key.powers();
+        long[] z = new long[2];
+        for (; blocks >= 4; blocks -= 4) {
+            long x1h = btol(src, offset) ^ z[0];
+            long x1l = btol(src, offset + 8) ^ z[1];
+            z[0] = 0;
+            z[1] = 0;
+            mul(p[3][0], p[3][1], x1h, x1l, z);
+            mul(p[2][0], p[2][1], btol(src, offset + 16), btol(src, offset + 24), z);
+            mul(p[1][0], p[1][1], btol(src, offset + 32), btol(src, offset + 40), z);
+            mul(hh, hl, btol(src, offset + 48), btol(src, offset + 56), z);
+            offset += 64;
+        }
+        for (; blocks > 0; blocks--) {
+            long xh = btol(src, offset) ^ z[0];
+            long xl = btol(src, offset + 8) ^ z[1];
+            z[0] = 0;
+            z[1] = 0;
+            mul(hh, hl, xh, xl, z);
+            offset += 16;
+        }
+        return z;
+    }
+
+    private static long btol(byte[] src, int offset) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (src[offset + i] & 0xff);
+        }
+        return v;
+    }
+
+    @Override
+    public void update(byte[] src, int offset, int length) {
+        len += length;
+        if (bufLength > 0) {
+            int l = Math.min(16 - bufLength, length);
+            System.arraycopy(src, offset, buf, bufLength, l);
+            bufLength += l;
+            offset += l;
+            length -= l;
+            if (bufLength < 16) {
+                return;
             }
+            xorMul(btol(buf, 0), btol(buf, 8));
+            bufLength = 0;
+        }
+        while (length >= 16) {
+            xorMul(btol(src, offset), btol(src, offset + 8));
+            offset += 16;
+            length -= 16;
+        }
+        if (length > 0) {
+            System.arraycopy(src, offset, buf, 0, length);
+            bufLength = length;
         }
     }
 
     /**
-     * MAC計算スレッド.
-     * 別スレッドにするだけ.
+     * 長いデータ用の update.
+     * PARALLEL_BLOCKS ごとに分けて ForkJoinPool で計算して合成する.
+     * 結果は update と同じ.
+     *
+     * @param src データ
+     * @param offset 位置
+     * @param length 長さ
      */
-    public void q() throws java.lang.SecurityException {
-        byte[] d = new byte[16];
-        while (pool.readable(16)) {
-            pool.read(d);
-            xorMul(d);
+    public void updateParallel(byte[] src, int offset, int length) {
+        int chunkLength = PARALLEL_BLOCKS * 16;
+        int chunks = length / chunkLength;
+        if (bufLength > 0 || chunks < 2) {
+            update(src, offset, length);
+            return;
         }
-        th = null;
+        key.powers();
+        long[][] ys = new long[chunks][];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < chunks; i++) {
+            int n = i;
+            tasks.add(ForkJoinTask.adapt(() -> {
+                ys[n] = hash(src, offset + n * chunkLength, PARALLEL_BLOCKS);
+            }));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        long[][] cp = key.chunkPower;
+        long[] z = new long[2];
+        for (long[] yc : ys) {
+            z[0] = yc[0];
+            z[1] = yc[1];
+            mul(cp[0], cp[1], y[0], y[1], z);
+            y[0] = z[0];
+            y[1] = z[1];
+        }
+        len += (long) chunks * chunkLength;
+        update(src, offset + chunks * chunkLength, length - chunks * chunkLength);
     }
 
     /**
      * AAD、暗号ブロックの終端.
      */
     void blockClose() {
-        Thread t = th;
-        if ( t != null ) {
-            try {
-                t.join();
-            } catch (InterruptedException ex) {
-                throw new IllegalStateException(ex);
+        if (bufLength > 0) { // padding
+            for (int i = bufLength; i < 16; i++) {
+                buf[i] = 0;
             }
-        }
-        
-        int ps = pool.size();
-        if (ps > 0) { // padding
-            pool.write(new byte[16 - ps]);
-            xorMul(pool.toByteArray());
+            xorMul(btol(buf, 0), btol(buf, 8));
+            bufLength = 0;
         }
 
-        lens.write(Bin.toByte(alen * 8));
-        alen = 0;
+        lens[lensCount++ & 1] = len * 8;
+        len = 0;
     }
 
     /**
@@ -166,7 +406,8 @@ public class GHASH extends Output.AbstractOutput implements MAC {
     @Override
     public byte[] sign() {
         blockClose();
-        xorMul(lens.toByteArray());
+        xorMul(lens[0], lens[1]);
+        lensCount = 0;
         return Bin.ltob(y);
     }
 
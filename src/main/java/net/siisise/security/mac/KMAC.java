@@ -30,6 +30,7 @@ public abstract class KMAC extends Output.AbstractOutput implements MAC, KDF {
 
     private cSHAKE cshake;
     protected long L;
+    private boolean squeezing;
 
     // RFC 8702
     public static final OBJECTIDENTIFIER KmacWithSHAKE128 = new OBJECTIDENTIFIER("2.16.840.1.101.3.4.2.19");
@@ -46,6 +47,7 @@ public abstract class KMAC extends Output.AbstractOutput implements MAC, KDF {
      */
     protected void init(int c, byte[] key, long length, String S) {
         L = length;
+        squeezing = false;
         cshake = new cSHAKE(c, length, "KMAC", S);
         byte[] newX = SHA3Derived.bytepad(SHA3Derived.encode_string(key), cshake.getBitBlockLength() / 8);
         cshake.update(newX);
@@ -88,12 +90,36 @@ public abstract class KMAC extends Output.AbstractOutput implements MAC, KDF {
         cshake.update(src, offset, length);
     }
 
+    /**
+     * squeeze 中は続きを出力長分出す.
+     * cSHAKE は reset されるので squeeze も終わる.
+     * @return MAC
+     */
     @Override
     public byte[] sign() {
-        cshake.update(SHA3Derived.right_encode(L));
+        if (!squeezing) {
+            cshake.update(SHA3Derived.right_encode(L));
+        }
+        squeezing = false;
         return cshake.digest();
     }
 
+    /**
+     * KMACXOF の出力を続けて取り出す.
+     * 呼ぶごとに前回の続きを出す. 配列は確保しない.
+     * sign で終わる.
+     * @param dst 出力先
+     * @param offset 位置
+     * @param length バイト長
+     */
+    public void squeeze(byte[] dst, int offset, int length) {
+        if (!squeezing) {
+            cshake.update(SHA3Derived.right_encode(L));
+            squeezing = true;
+        }
+        cshake.squeeze(dst, offset, length);
+    }
+
     @Override
     public int getMacLength() {
         return cshake.getDigestLength();
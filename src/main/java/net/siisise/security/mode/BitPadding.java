@@ -36,5 +36,14 @@ public class BitPadding extends BlockMode {
     public int[] decrypt(int[] src, int offset) {
         return block.decrypt(src,offset);
     }
-    
+
+    @Override
+    public void encrypt(int[] src, int offset, int[] dst, int doffset) {
+        block.encrypt(src, offset, dst, doffset);
+    }
+
+    @Override
+    public void decrypt(int[] src, int offset, int[] dst, int doffset) {
+        block.decrypt(src, offset, dst, doffset);
+    }
 }
@@ -25,6 +25,14 @@ import net.siisise.security.mac.MAC;
 public class BlockAEAD extends LongBlockMode implements StreamAEAD {
     private MAC mac;
     int blockLength;
+    /**
+     * reset 用 mac鍵
+     */
+    private byte[] macKey;
+    /**
+     * reset 用 block パラメータ
+     */
+    private byte[][] blockParams;
     /**
      * 
      * @param block ブロック暗号 AES/CBC など
@@ -42,13 +50,39 @@ public class BlockAEAD extends LongBlockMode implements StreamAEAD {
      */
     @Override
     public void init(byte[]... params) {
-       mac.init(params[0]);
+       macKey = params[0];
+       mac.init(macKey);
        int p = 1;
        if ( params.length > 3) {
            mac.update(params[1]);
            p++;
        }
-       block.init(in(p,params));
+       blockParams = in(p,params);
+       block.init(blockParams);
+    }
+
+    /**
+     * 鍵はそのままで IV と AAD を差し替える.
+     * block パラメータの最後を iv として置き換える.
+     * @param iv mode iv
+     * @param aad AAD
+     */
+    @Override
+    public void reset(byte[] iv, byte[] aad) {
+        if (blockParams == null) {
+            throw new IllegalStateException("init");
+        }
+        mac.init(macKey);
+        mac.update(aad);
+        byte[][] bp;
+        if (blockParams.length > 1) {
+            bp = blockParams.clone();
+        } else {
+            bp = new byte[blockParams.length + 1][];
+            System.arraycopy(blockParams, 0, bp, 0, blockParams.length);
+        }
+        bp[bp.length - 1] = iv;
+        block.init(bp);
     }
     
     @Override
@@ -77,6 +111,18 @@ public class BlockAEAD extends LongBlockMode implements StreamAEAD {
         return block.decrypt(src, offset);
     }
 
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        block.encrypt(src, offset, dst, doffset);
+        mac.update(dst, doffset, blockLength);
+    }
+
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        mac.update(src, offset, blockLength);
+        block.decrypt(src, offset, dst, doffset);
+    }
+
     @Override
     public byte[] tag() {
         return mac.sign();
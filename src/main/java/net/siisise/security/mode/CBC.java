@@ -15,20 +15,50 @@
  */
 package net.siisise.security.mode;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 import net.siisise.lang.Bin;
 import net.siisise.security.block.Block;
+import net.siisise.security.block.CipherWrap;
 
 /**
  * Cipher Block Chaining.
  * iv は 0 でいいがJavaのは必須?
+ *
+ * 長いデータの復号は範囲で分けて ForkJoinPool で並列に処理する.
+ * 範囲の手前の暗号ブロックを先に控えておくので src と dst は同じでもよい.
  */
 public class CBC extends LongBlockMode {
 
+    /**
+     * 並列処理で1タスクが受け持つブロック数.
+     * この2倍未満のときは呼び出したスレッドで処理する.
+     */
+    static final int PARALLEL_BLOCKS = 4096;
+
     protected long[] vectorl;
+    /**
+     * 復号用 暗号ブロックの控え.
+     */
+    private long[] back;
+    private boolean parallel;
 
     public CBC(Block block) {
         super(block);
         vectorl = new long[block.getBlockLength() / 64];
+        back = new long[vectorl.length];
+        parallel = !(block instanceof CipherWrap);
+    }
+
+    /**
+     * 並列処理の有無.
+     * 内側の暗号がスレッドセーフでない場合は false にする.
+     * @param parallel 長いデータの復号を並列で処理する
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
     }
 
     /**
@@ -49,6 +79,7 @@ public class CBC extends LongBlockMode {
         }
         block.init(params2);
         vectorl = Bin.btol(vector);
+        back = new long[vectorl.length];
     }
 
     /**
@@ -60,31 +91,57 @@ public class CBC extends LongBlockMode {
     public void init(Block block, byte[] key) {
         super.init(block, key);
         vectorl = new long[block.getBlockLength() / 64];
+        back = new long[vectorl.length];
     }
 
     @Override
     public byte[] encrypt(byte[] src, int offset) {
-        int vl = vectorl.length;
-        Bin.xorl(vectorl, src, offset, vl);
-        return Bin.ltob(vectorl = block.encrypt(vectorl,0));
+        byte[] ret = new byte[vectorl.length * 8];
+        encrypt(src, offset, ret, 0);
+        return ret;
     }
 
     @Override
     public int[] encrypt(int[] src, int offset) {
-        int vl = vectorl.length;
-        Bin.xorl(vectorl, src, offset, vl);
-        return Bin.ltoi(vectorl = block.encrypt(vectorl,0));
+        int[] ret = new int[vectorl.length * 2];
+        encrypt(src, offset, ret, 0);
+        return ret;
     }
 
     @Override
     public long[] encrypt(long[] src, int offset) {
-        Bin.xorl(vectorl, src, offset, vectorl.length);
-        long[] ret = block.encrypt(vectorl,0);
-        // 複製が必要かもしれない
-        System.arraycopy(ret, 0, vectorl, 0, ret.length);
+        long[] ret = new long[vectorl.length];
+        encrypt(src, offset, ret, 0);
         return ret;
     }
 
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        Bin.xorl(vectorl, src, offset, vectorl.length);
+        block.encrypt(vectorl, 0, vectorl, 0);
+        Bin.ltob(vectorl, dst, doffset);
+    }
+
+    @Override
+    public void encrypt(int[] src, int offset, int[] dst, int doffset) {
+        Bin.xorl(vectorl, src, offset, vectorl.length);
+        block.encrypt(vectorl, 0, vectorl, 0);
+        for (int i = 0; i < vectorl.length; i++) {
+            dst[doffset++] = (int)(vectorl[i] >>> 32);
+            dst[doffset++] = (int) vectorl[i];
+        }
+    }
+
+    @Override
+    public void encrypt(long[] src, int offset, long[] dst, int doffset) {
+        int vl = vectorl.length;
+        for (int i = 0; i < vl; i++) {
+            vectorl[i] ^= src[offset + i];
+        }
+        block.encrypt(vectorl, 0, vectorl, 0);
+        System.arraycopy(vectorl, 0, dst, doffset, vl);
+    }
+
     /**
      * 暗号化 byte to long
      * @param src 平文 plane text
@@ -94,17 +151,10 @@ public class CBC extends LongBlockMode {
      */
     @Override
     public byte[] encrypt(byte[] src, int offset, int length) {
-        int vl = vectorl.length;
+        int bl = vectorl.length * 8;
         byte[] ret = new byte[length];
-        int o4 = 0;
-        
-        while (o4 < length) {
-            Bin.xorl(vectorl, src, offset + o4, vl);
-
-            vectorl = block.encrypt(vectorl, 0);
-            
-            Bin.ltob(vectorl,ret,o4);
-            o4 += vl*8;
+        for (int o = 0; o < length; o += bl) {
+            encrypt(src, offset + o, ret, o);
         }
         return ret;
     }
@@ -120,18 +170,8 @@ public class CBC extends LongBlockMode {
     public long[] encrypt(long[] src, int offset, int length) {
         int vl = vectorl.length;
         long[] ret = new long[length];
-        int roffset = 0;
-
-        while (length > 0) {
-//          XOR
-            for (int i = 0; i < vl; i++) {
-                vectorl[i] ^= src[offset++];
-            }
-            vectorl = block.encrypt(vectorl, 0);
-            // 複製が必要かもしれない
-            System.arraycopy(vectorl, 0, ret, roffset, vl);
-            length -= vl;
-            roffset += vl;
+        for (int o = 0; o < length; o += vl) {
+            encrypt(src, offset + o, ret, o);
         }
         return ret;
     }
@@ -144,17 +184,91 @@ public class CBC extends LongBlockMode {
      */
     @Override
     public byte[] decrypt(byte[] src, int offset) {
-        long[] n = Bin.btol(src, offset, vectorl.length);
-        long[] ret = block.decrypt(n, 0);
-        // 複製が必要かもしれない
-        Bin.xorl(ret,vectorl,0,vectorl.length);
-        vectorl = n;
-        return Bin.ltob(ret);
+        byte[] ret = new byte[vectorl.length * 8];
+        decrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    /**
+     * 復号.
+     * 
+     * @param src 暗号文
+     * @param offset src offset
+     * @return 平文
+     */
+    @Override
+    public long[] decrypt(long[] src, int offset) {
+        long[] ret = new long[vectorl.length];
+        decrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    @Override
+    public int[] decrypt(int[] src, int offset) {
+        int[] ret = new int[vectorl.length * 2];
+        decrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    /**
+     * 次の vector (暗号ブロック) と入れ替える.
+     */
+    private void swap() {
+        long[] t = vectorl;
+        vectorl = back;
+        back = t;
+    }
+
+    /**
+     * 復号.
+     * 暗号ブロックを控えてから復号するので src と dst は同じでもよい.
+     *
+     * @param src 暗号文
+     * @param offset 暗号位置
+     * @param dst 平文出力先
+     * @param doffset 出力位置
+     */
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        int vl = vectorl.length;
+        Bin.btol(src, offset, back, vl);
+        block.decrypt(src, offset, dst, doffset);
+        for (int i = 0; i < vl; i++) {
+            long v = vectorl[i];
+            for (int j = 56; j >= 0; j -= 8) {
+                dst[doffset++] ^= v >>> j;
+            }
+        }
+        swap();
+    }
+
+    @Override
+    public void decrypt(int[] src, int offset, int[] dst, int doffset) {
+        int vl = vectorl.length;
+        for (int i = 0; i < vl; i++) {
+            back[i] = ((long)src[offset + i * 2] << 32) | (src[offset + i * 2 + 1] & 0xffffffffl);
+        }
+        block.decrypt(src, offset, dst, doffset);
+        for (int i = 0; i < vl; i++) {
+            dst[doffset++] ^= (int)(vectorl[i] >>> 32);
+            dst[doffset++] ^= (int) vectorl[i];
+        }
+        swap();
+    }
+
+    @Override
+    public void decrypt(long[] src, int offset, long[] dst, int doffset) {
+        int vl = vectorl.length;
+        System.arraycopy(src, offset, back, 0, vl);
+        block.decrypt(src, offset, dst, doffset);
+        for (int i = 0; i < vl; i++) {
+            dst[doffset + i] ^= vectorl[i];
+        }
+        swap();
     }
 
     /**
      * 復号 byte to int decrypt
-     * ToDo: 並列化が可能
      * @param src 暗号文
      * @param offset 位置
      * @param length 長さ
@@ -163,28 +277,7 @@ public class CBC extends LongBlockMode {
     @Override
     public byte[] decrypt(byte[] src, int offset, int length) {
         byte[] ret = new byte[length];
-//        int bl = ;
-
-//        Blocks.subBlocks(src,128).stream();
-
-        for (int toffset = 0; toffset < length; ) {
-            long[] ls = Bin.btol(src, offset + toffset, vectorl.length);
-            long[] re = block.decrypt(ls, 0);
-            
-            for (int i = 0; i < vectorl.length; i++, toffset+=8) {
-                long x = re[i] ^ vectorl[i];
-                
-                ret[toffset  ] = (byte)(x >> 56);
-                ret[toffset+1] = (byte)(x >> 48);
-                ret[toffset+2] = (byte)(x >> 40);
-                ret[toffset+3] = (byte)(x >> 32);
-                ret[toffset+4] = (byte)(x >> 24);
-                ret[toffset+5] = (byte)(x >> 16);
-                ret[toffset+6] = (byte)(x >>  8);
-                ret[toffset+7] = (byte) x;
-            }
-            vectorl = ls;
-        }
+        decrypt(src, offset, ret, 0, length);
         return ret;
     }
 
@@ -197,53 +290,100 @@ public class CBC extends LongBlockMode {
      */
     @Override
     public long[] decrypt(long[] src, int offset, int length) {
-        int bl = vectorl.length;
-
-        if ( length < bl) {
-            return new long[0];
-        }
-
-        int roffset = 0;
         long[] ret = new long[length];
-        long[] re;
-
-        re = block.decrypt(src, offset);
-        for (int i = 0; i < bl; i++) {
-            ret[roffset+i] = re[i] ^ vectorl[i];
-        }
-        length += offset;
-        offset += bl;
+        decrypt(src, offset, ret, 0, length);
+        return ret;
+    }
 
-        while (length > offset) {
-            re = block.decrypt(src, offset);
-            for (int i = 0; i < bl; i++) {
-                ret[roffset+i] = re[i] ^ src[offset - bl];
+    /**
+     * 復号.
+     * ブロックの復号は互いに独立しているのでまとめて内側の暗号に渡し,
+     * あとから1つ前の暗号ブロックをXORする.
+     * 長い場合は範囲で分けて並列に処理する.
+     * src と dst が同じ配列で短いときは1ブロックずつ処理する.
+     *
+     * @param src 暗号文
+     * @param offset 位置
+     * @param dst 平文出力先
+     * @param doffset 出力位置
+     * @param length 長さ ブロック長の倍数
+     */
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        int vl = vectorl.length;
+        int bl = vl * 8;
+        length -= length % bl;
+        int blocks = length / bl;
+        if (parallel && blocks >= PARALLEL_BLOCKS * 2 && (src != dst || offset == doffset)) {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int b = 0; b < blocks; b += PARALLEL_BLOCKS) {
+                long[] prev = vectorl.clone();
+                int o = b * bl;
+                if (b > 0) {
+                    Bin.btol(src, offset + o - bl, prev, vl);
+                }
+                int n = Math.min(PARALLEL_BLOCKS, blocks - b) * bl;
+                tasks.add(ForkJoinTask.adapt(() -> decrypt(prev, src, offset + o, dst, doffset + o, n)));
             }
-            offset += bl;
-            roffset += bl;
+            Bin.btol(src, offset + length - bl, vectorl, vl);
+            ForkJoinTask.invokeAll(tasks);
+            return;
+        } else if (src == dst) {
+            super.decrypt(src, offset, dst, doffset, length);
+            return;
+        } else if (length == 0) {
+            return;
         }
-        System.arraycopy(src, offset - bl, vectorl, 0, bl);
-        return ret;
+        decrypt(vectorl, src, offset, dst, doffset, length);
+        Bin.btol(src, offset + length - bl, vectorl, vl);
     }
 
     /**
-     * 復号.
-     * 
+     * 範囲の復号.
+     * src と dst が同じ配列のときは暗号文を複製してから処理する.
+     *
+     * @param prev 1つ前の暗号ブロック または IV
      * @param src 暗号文
-     * @param offset src offset
-     * @return 平文
+     * @param offset 位置
+     * @param dst 平文出力先
+     * @param doffset 出力位置
+     * @param length 長さ ブロック長の倍数
      */
+    private void decrypt(long[] prev, byte[] src, int offset, byte[] dst, int doffset, int length) {
+        int bl = prev.length * 8;
+        if (src == dst) {
+            src = Arrays.copyOfRange(src, offset, offset + length);
+            offset = 0;
+        }
+        block.decrypt(src, offset, dst, doffset, length);
+        for (int i = 0; i < prev.length; i++) {
+            long v = prev[i];
+            for (int j = 56; j >= 0; j -= 8) {
+                dst[doffset++] ^= v >>> j;
+            }
+        }
+        for (int i = bl; i < length; i++) {
+            dst[doffset++] ^= src[offset + i - bl];
+        }
+    }
+
     @Override
-    public long[] decrypt(long[] src, int offset) {
-        long[] n = new long[vectorl.length];
-        System.arraycopy(src, offset, n, 0, vectorl.length);
-        long[] ret = block.decrypt(n, 0);
-        // 複製が必要かもしれない
-//        xor(ret,vectori,0,vectori.length);
-        for (int i = 0; i < vectorl.length; i++) {
-            ret[i] ^= vectorl[i];
+    public void decrypt(long[] src, int offset, long[] dst, int doffset, int length) {
+        int vl = vectorl.length;
+        length -= length % vl;
+        if (src == dst) {
+            super.decrypt(src, offset, dst, doffset, length);
+            return;
+        } else if (length == 0) {
+            return;
         }
-        vectorl = n;
-        return ret;
+        block.decrypt(src, offset, dst, doffset, length);
+        for (int i = 0; i < vl; i++) {
+            dst[doffset + i] ^= vectorl[i];
+        }
+        for (int i = vl; i < length; i++) {
+            dst[doffset + i] ^= src[offset + i - vl];
+        }
+        System.arraycopy(src, offset + length - vl, vectorl, 0, vl);
     }
 }
@@ -15,12 +15,14 @@
  */
 package net.siisise.security.mode;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import net.siisise.io.Packet;
 import net.siisise.io.PacketA;
 import net.siisise.lang.Bin;
 import net.siisise.security.block.Block;
-import net.siisise.security.mac.CBCMAC;
+import net.siisise.security.block.ByteBuffers;
 
 /**
  * TLS 1.3用 CCM.
@@ -29,23 +31,53 @@ import net.siisise.security.mac.CBCMAC;
  * CTR と CBC-MAC の K は同じ
  * 
  * nonce から L を決める
+ *
+ * CBC-MAC と CTR を同じブロックのループで計算する.
+ * B_0 に本文の長さが必要なので, 長さがわかっている場合 (setLength, doFinal のみ) は
+ * 本文を溜めずに1回で処理する.
+ * 長さがわからないまま update した場合は平文を控えておき, 最後に CBC-MAC を計算する.
  */
 public class CCM extends StreamMode implements StreamAEAD {
 
-    private CBCMAC cbc;
-    private CTR ctr;
+    /**
+     * authentication field の octet数
+     */
+    private final int M;
+    private int L;
+    private byte[] nonce;
     /**
      * The associated data String
      */
-    private Packet a;
-//    private byte[] ac;
-    // ivの元
-//    private int flag;
-//    private int l;
-//    private int m;
-    private byte[][] upkey;
-    private byte[] iv;
-    
+    private byte[] a;
+
+    /**
+     * CBC-MAC の途中
+     */
+    private final long[] y = new long[2];
+    /**
+     * カウンタブロック A_i
+     */
+    private final long[] ctr = new long[2];
+    /**
+     * 鍵ストリームの端数
+     */
+    private final byte[] pad = new byte[16];
+    /**
+     * CBC-MAC 用平文の端数
+     */
+    private final byte[] mbuf = new byte[16];
+    private int macLength;
+    /**
+     * 予定の本文の長さ. 未定は -1
+     */
+    private long length;
+    /**
+     * 処理済みの本文の長さ
+     */
+    private long count;
+    /**
+     * 長さ未定のときの平文の控え
+     */
     private Packet x;
     
     public CCM(Block block) {
@@ -74,12 +106,7 @@ public class CCM extends StreamMode implements StreamAEAD {
         if (block.getBlockLength() != 128 ) {
             throw new SecurityException("block length");
         }
-        iv = new byte[16];
-        // flag
-        // M L
-        int Mbit = (M - 2) / 2;
-        iv[0] |= Mbit << 3;
-        x = new PacketA();
+        this.M = M;
     }
 
     static private final byte[] A4 = new byte[] {(byte)0xff,(byte)0xfe};
@@ -94,142 +121,416 @@ public class CCM extends StreamMode implements StreamAEAD {
      */
     @Override
     public void init(byte[]... params) {
-//        block.init(in(2,params));
         int size = params.length - block.getParamLength().length;
-        upkey = in(size, params);
-        super.init(upkey); // ctrで置き換え?
+        super.init(in(size, params));
         
-        byte[] nonce = params[params.length - size]; // N
-        int L = 15 - nonce.length;
+        byte[] aad = size > 1 ? params[params.length - 1] : new byte[0]; // nonceの他にaがある
+        reset(params[params.length - size], aad);
+    }
+
+    /**
+     * 鍵はそのままで nonce と A を差し替える.
+     * @param nonce N
+     * @param aad associated data A
+     */
+    @Override
+    public void reset(byte[] nonce, byte[] aad) {
+        L = 15 - nonce.length;
         if ( L < 2 || L > 8 ) {
             throw new IllegalStateException("nonce length");
         }
+        this.nonce = nonce;
+        a = aad != null && aad.length > 0 ? aad : null;
+        clear();
+    }
 
-        // 暗号側 CTR
-        ctr = new CTR(block);
-        byte[] ctrIV = new byte[16];
-        ctrIV[0] |= L-1;
-        ctrIV[15] = 1;
-        System.arraycopy(nonce, 0, ctrIV, 1, nonce.length);
-        byte[][] ctrParams = new byte[][] {params[0], ctrIV};
-        ctr.init(ctrParams);
-
-        // MAC
-        iv[0] |= ctrIV[0]; // flag
-        System.arraycopy(nonce, 0, iv, 1, nonce.length);
-
-        if ( size > 1) { // nonceの他にaがある
-            byte[] ac = params[params.length - 1];
-            if ( ac.length > 0 ) {
-                iv[0] |= 0x40;
-                a = new PacketA(ac);
-                long al = a.length();
-                byte[] ab = Bin.ltob(new long[] {al});
-                if ( al <= 0xfeff ) {
-                    a.backWrite(ab, 6, 2);
-                } else if (al < 0x100000000l) {
-                    a.backWrite(ab, 4, 4);
-                    a.backWrite(A4);
-                } else {
-                    a.backWrite(ab);
-                    a.backWrite(A8);
-                }
-                int padlen = 16 - (int)(a.length() % 16);
-                if ( padlen < 16 ) {
-                    a.write(new byte[padlen]);
-                }
+    /**
+     * 本文の処理前に戻す.
+     */
+    private void clear() {
+        byte[] a0 = counter(0);
+        ctr[0] = btol(a0, 0);
+        ctr[1] = btol(a0, 8) + 1;
+        y[0] = 0;
+        y[1] = 0;
+        macLength = 0;
+        length = -1;
+        count = 0;
+        x = null;
+    }
+
+    /**
+     * A_i の元.
+     * @param flags 先頭
+     * @return flags || nonce || 0
+     */
+    private byte[] counter(int flags) {
+        byte[] b = new byte[16];
+        b[0] = (byte)(flags | (L - 1));
+        System.arraycopy(nonce, 0, b, 1, nonce.length);
+        return b;
+    }
+
+    /**
+     * 本文の長さを先に指定する.
+     * 指定すると CBC-MAC と CTR を同時に処理し, 本文を溜めない.
+     * init のあと, 本文の前に呼ぶ.
+     *
+     * @param length 本文の長さ
+     */
+    public void setLength(long length) {
+        if (count > 0 || this.length >= 0) {
+            throw new IllegalStateException("use before update");
+        }
+        startMac(length);
+        this.length = length;
+    }
+
+    /**
+     * B_0 と a を CBC-MAC に通す.
+     * @param len 本文の長さ
+     */
+    private void startMac(long len) {
+        if (len < 0 || (L < 8 && (len >>> (L * 8)) != 0)) {
+            throw new IllegalStateException("length");
+        }
+        byte[] b0 = counter((a != null ? 0x40 : 0) | ((M - 2) / 2) << 3);
+        byte[] lb = Bin.ltob(new long[] {0l, len});
+        System.arraycopy(lb, 16 - L, b0, 16 - L, L);
+        macUpdate(b0, 0, 16);
+        if ( a != null ) {
+            long al = a.length;
+            byte[] ab = Bin.ltob(new long[] {al});
+            if ( al <= 0xfeff ) {
+                macUpdate(ab, 6, 2);
+            } else if (al < 0x100000000l) {
+                macUpdate(A4, 0, 2);
+                macUpdate(ab, 4, 4);
             } else {
-                a = null;
+                macUpdate(A8, 0, 2);
+                macUpdate(ab, 0, 8);
             }
-        } else {
-            a = null;
+            macUpdate(a, 0, a.length);
+            macPad();
         }
-    
     }
-    
+
+    /**
+     * CBC-MAC に追加する.
+     */
+    private void macUpdate(byte[] src, int offset, int len) {
+        while (len > 0) {
+            int l = Math.min(16 - macLength, len);
+            System.arraycopy(src, offset, mbuf, macLength, l);
+            macLength += l;
+            offset += l;
+            len -= l;
+            if (macLength == 16) {
+                macBlock();
+            }
+        }
+    }
+
+    /**
+     * mbuf を CBC-MAC に通す.
+     */
+    private void macBlock() {
+        y[0] ^= btol(mbuf, 0);
+        y[1] ^= btol(mbuf, 8);
+        block.encrypt(y, 0, y, 0);
+        macLength = 0;
+    }
+
+    /**
+     * 0で埋めてブロックを閉じる.
+     */
+    private void macPad() {
+        if (macLength > 0) {
+            Arrays.fill(mbuf, macLength, 16, (byte)0);
+            macBlock();
+        }
+    }
+
+    private static long btol(byte[] src, int offset) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (src[offset + i] & 0xff);
+        }
+        return v;
+    }
+
+    private static void ltob(long v, byte[] dst, int offset) {
+        for (int i = 7; i >= 0; i--) {
+            dst[offset + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+
     /**
+     * 暗号化と CBC-MAC を同じループで処理する.
+     * src と dst は同じ位置でもよい.
      * 
      * C = (P ^ MSB Plen(S)) || (T ^ MSB Tlen(S0))
-     * @param src
-     * @param offset
-     * @param length
-     * @return 
+     * @param src 平文
+     * @param offset 位置
+     * @param dst 暗号文出力先
+     * @param doffset 出力位置
+     * @param length 長さ
      */
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        boolean mac = begin(length);
+        if (!mac) {
+            x.write(src, offset, length);
+        }
+        long[] ks = new long[2];
+        while (length > 0) {
+            int pos = (int) count & 15;
+            if (pos == 0 && length >= 16) {
+                long p0 = btol(src, offset);
+                long p1 = btol(src, offset + 8);
+                if (mac) {
+                    y[0] ^= p0;
+                    y[1] ^= p1;
+                    block.encrypt(y, 0, y, 0);
+                }
+                keyStream(ks);
+                ltob(p0 ^ ks[0], dst, doffset);
+                ltob(p1 ^ ks[1], dst, doffset + 8);
+                offset += 16;
+                doffset += 16;
+                length -= 16;
+                count += 16;
+            } else {
+                if (pos == 0) {
+                    keyStream(ks);
+                    ltob(ks[0], pad, 0);
+                    ltob(ks[1], pad, 8);
+                }
+                byte p = src[offset++];
+                if (mac) {
+                    mbuf[macLength++] = p;
+                    if (macLength == 16) {
+                        macBlock();
+                    }
+                }
+                dst[doffset++] = (byte)(p ^ pad[pos]);
+                length--;
+                count++;
+            }
+        }
+    }
+
+    /**
+     * 復号と CBC-MAC を同じループで処理する.
+     * src と dst は同じ位置でもよい.
+     *
+     * @param src 暗号文
+     * @param offset 位置
+     * @param dst 平文出力先
+     * @param doffset 出力位置
+     * @param length 長さ
+     */
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        boolean mac = begin(length);
+        int o = doffset;
+        int l = length;
+        long[] ks = new long[2];
+        while (length > 0) {
+            int pos = (int) count & 15;
+            if (pos == 0 && length >= 16) {
+                keyStream(ks);
+                long p0 = btol(src, offset) ^ ks[0];
+                long p1 = btol(src, offset + 8) ^ ks[1];
+                ltob(p0, dst, doffset);
+                ltob(p1, dst, doffset + 8);
+                if (mac) {
+                    y[0] ^= p0;
+                    y[1] ^= p1;
+                    block.encrypt(y, 0, y, 0);
+                }
+                offset += 16;
+                doffset += 16;
+                length -= 16;
+                count += 16;
+            } else {
+                if (pos == 0) {
+                    keyStream(ks);
+                    ltob(ks[0], pad, 0);
+                    ltob(ks[1], pad, 8);
+                }
+                byte p = (byte)(src[offset++] ^ pad[pos]);
+                dst[doffset++] = p;
+                if (mac) {
+                    mbuf[macLength++] = p;
+                    if (macLength == 16) {
+                        macBlock();
+                    }
+                }
+                length--;
+                count++;
+            }
+        }
+        if (!mac) {
+            x.write(dst, o, l);
+        }
+    }
+
+    /**
+     * 本文の処理を始める.
+     * @param len 追加する長さ
+     * @return CBC-MAC を同時に計算する
+     */
+    private boolean begin(int len) {
+        if (length >= 0) {
+            if (count + len > length) {
+                throw new IllegalStateException("length");
+            }
+            return true;
+        }
+        if (x == null) {
+            x = new PacketA();
+        }
+        return false;
+    }
+
+    /**
+     * S_i を作ってカウンタを進める.
+     * @param ks 出力
+     */
+    private void keyStream(long[] ks) {
+        block.encrypt(ctr, 0, ks, 0);
+        ctr[1]++;
+    }
+
     @Override
     public byte[] encrypt(byte[] src, int offset, int length) {
-        x.write(src, offset, length);
-        return ctr.encrypt(src, offset, length);
+        byte[] ret = new byte[length];
+        encrypt(src, offset, ret, 0, length);
+        return ret;
     }
 
     @Override
     public byte[] decrypt(byte[] src, int offset, int length) {
-        byte[] t = ctr.decrypt(src, offset, length);
-        x.write(t);
-        return t;
+        byte[] ret = new byte[length];
+        decrypt(src, offset, ret, 0, length);
+        return ret;
+    }
+
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        encrypt(src, offset, dst, doffset, 16);
+    }
+
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        decrypt(src, offset, dst, doffset, 16);
     }
 
     @Override
     public byte[] tag() {
-        return doFinalEncrypt();
+        return doMac();
     }
 
     @Override
     public byte[] doFinalEncrypt(byte[] src, int offset, int length) {
-        byte[] ret = encrypt(src, offset, length);
-        
-        byte[] mac = doMac();
-
-        x.write(ret);
-        x.write(mac);
-        return x.toByteArray();
+        if (count == 0 && this.length < 0) {
+            setLength(length);
+        }
+        byte[] ret = new byte[length + M];
+        encrypt(src, offset, ret, 0, length);
+        System.arraycopy(doMac(), 0, ret, length, M);
+        return ret;
     }
 
+    /**
+     * 復号と検証.
+     * 検証に失敗した場合は平文を消して例外にする.
+     * @param src 暗号文 + タグ
+     * @param offset 位置
+     * @param length 長さ
+     * @return 平文
+     */
     @Override
     public byte[] doFinalDecrypt(byte[] src, int offset, int length) {
-        Packet tmp = new PacketA();
-        tmp.write(src, offset, length);
-        int M = ((iv[0] >>> 3) & 0x07) * 2 + 2;
-        byte[] dmac = new byte[M];
-        tmp.backRead(dmac);
-        byte[] d = new byte[length - M];
-        tmp.read(d);
-        byte[] ret = decrypt(d, 0, d.length);
+        if (length < M) {
+            throw new IllegalStateException();
+        }
+        int len = length - M;
+        if (count == 0 && this.length < 0) {
+            setLength(len);
+        }
+        byte[] ret = new byte[len];
+        decrypt(src, offset, ret, 0, len);
 
         byte[] mac = doMac();
-        if ( !Arrays.equals(mac, dmac)) {
+        int d = 0;
+        for (int i = 0; i < M; i++) {
+            d |= mac[i] ^ src[offset + len + i];
+        }
+        if (d != 0) {
+            Arrays.fill(ret, (byte)0);
             throw new IllegalStateException();
         }
         return ret;
     }
 
+    /**
+     * タグを計算して本文の処理前に戻す.
+     * @return T ^ MSB Tlen(S0)
+     */
     private byte[] doMac() {
-        // 本文の長さをIVに埋め込み
-        long len = x.length();
-        byte[] lb = Bin.ltob(new long[] {0l, len});
-        int L = (((int)(iv[0] & 0x07)) + 1);
-        System.arraycopy(lb, 16 - L, iv, 16 - L, L);
+        if (length < 0) {
+            startMac(count);
+            if (x != null) {
+                byte[] b = x.toByteArray();
+                macUpdate(b, 0, b.length);
+            }
+        } else if (count != length) {
+            throw new IllegalStateException("length");
+        }
+        macPad();
 
-        cbc = new CBCMAC(block); // init不足
-        cbc.update(iv); // B_0
-        if ( a != null ) {
-            byte[] b = a.toByteArray();
-            cbc.update(b,0,b.length);
+        long[] s0 = Bin.btol(counter(0));
+        block.encrypt(s0, 0, s0, 0);
+        s0[0] ^= y[0];
+        s0[1] ^= y[1];
+        clear();
+        return Arrays.copyOf(Bin.ltob(s0), M);
+    }
+    
+
+    /**
+     * ByteBuffer 版.
+     * 暗号文とタグを dst に書く.
+     * @param src 平文
+     * @param dst 暗号文 + タグ 出力先
+     */
+    @Override
+    public void doFinalEncrypt(ByteBuffer src, ByteBuffer dst) {
+        if (dst.remaining() < src.remaining() + M) {
+            throw new BufferOverflowException();
         }
-        cbc.update(x.toByteArray());
-        int padlen = 16 - (int)(len % 16);
-        if ( padlen < 16 ) {
-            cbc.update(new byte[padlen]);
+        if (count == 0 && length < 0) {
+            setLength(src.remaining());
         }
-        byte[] T = cbc.doFinal();
+        encrypt(src, dst);
+        dst.put(doMac());
+    }
 
-        int M = ((iv[0] >>> 3) & 0x07) * 2 + 2;
-        iv[0] &= 0x07;
-        for (int i = 16 - L; i < 16; i++) {
-            iv[i] = 0;
+    /**
+     * ByteBuffer 版.
+     * src の末尾にタグが含まれる前提.
+     * 検証に失敗した場合は dst に書いた平文を消して例外にする.
+     * @param src 暗号文 + タグ
+     * @param dst 平文出力先
+     */
+    @Override
+    public void doFinalDecrypt(ByteBuffer src, ByteBuffer dst) {
+        if (count == 0 && length < 0 && src.remaining() >= M) {
+            setLength(src.remaining() - M);
         }
-        ctr.init(upkey[0], iv);
-        byte[] S_0 = ctr.encrypt(T);
-        return Arrays.copyOf(S_0, M);
+        ByteBuffers.doFinalDecrypt(src, dst, M, this::decrypt, this::doMac);
     }
-    
 }
@@ -15,21 +15,35 @@
  */
 package net.siisise.security.mode;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 import net.siisise.lang.Bin;
 import net.siisise.security.block.Block;
+import net.siisise.security.block.CipherWrap;
 
 /**
  * Cipher Feedback.
  * ストリームにも転用可能 (CFB8とかいうらしい)
- * 復号処理の並列化が可能
+ * 長いデータの復号は範囲で分けて ForkJoinPool で並列に処理する.
  */
 public final class CFB extends LongStreamMode {
-    
-    private byte[] vector;
+
+    /**
+     * 並列処理で1タスクが受け持つブロック数.
+     * この2倍未満のときは呼び出したスレッドで処理する.
+     */
+    static final int PARALLEL_BLOCKS = 4096;
+
+    /**
+     * vectorl 内のバイト位置.
+     */
     protected int offset;
-    
+    private boolean parallel;
+
     public CFB(Block block) {
         super(block);
+        parallel = !(block instanceof CipherWrap);
     }
 
     public CFB(Block block, byte[] key, byte[] iv) {
@@ -45,44 +59,83 @@ public final class CFB extends LongStreamMode {
     public void init(byte[]... params) {
         super.init(in(1,params));
         byte[] cfbkey = params[params.length - 1];
-        vector = new byte[block.getBlockLength() / 8];
+        byte[] vector = new byte[block.getBlockLength() / 8];
 
         System.arraycopy(cfbkey, 0, vector, 0, vector.length > cfbkey.length ? cfbkey.length : vector.length);
         vectorl = Bin.btol(vector);
-        vectorl = block.encrypt(vectorl, 0);
+        block.encrypt(vectorl, 0, vectorl, 0);
+        offset = 0;
     }
 
     /**
-     * Block Mode encrypt
-     * @param src
-     * @param offset
-     * @return 
+     * 並列処理の有無.
+     * 内側の暗号がスレッドセーフでない場合は false にする.
+     * @param parallel 長いデータの復号を並列で処理する
      */
-/*
-    @Override
-    public byte[] encrypt(byte[] src, int offset) {
-        xor(vector, src, offset, vector.length);
-        byte[] ret = vector;
-        vector = block.encrypt(ret, 0);
-        return ret;
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
     }
-*/
+
     @Override
     public long[] encrypt(long[] src, int offset) {
-        Bin.xorl(vectorl, src, offset, vector.length);
-        long[] ret = vectorl;
-        vectorl = block.encrypt(ret, 0);
+        long[] ret = new long[vectorl.length];
+        encrypt(src, offset, ret, 0);
         return ret;
     }
 
     @Override
     public long[] decrypt(long[] src, int offset) {
-        long[] ret = vectorl;
-        Bin.xorl(ret, src, offset, ret.length);
-        vectorl = block.encrypt(src, offset);
+        long[] ret = new long[vectorl.length];
+        decrypt(src, offset, ret, 0);
         return ret;
     }
 
+    /**
+     * Block Mode encrypt.
+     * @param src 平文
+     * @param offset 位置
+     * @param dst 暗号出力先
+     * @param doffset 出力位置
+     */
+    @Override
+    public void encrypt(long[] src, int offset, long[] dst, int doffset) {
+        int vl = vectorl.length;
+        if (this.offset != 0) { // ストリームの途中
+            System.arraycopy(encrypt(src, offset, vl), 0, dst, doffset, vl);
+            return;
+        }
+        for (int i = 0; i < vl; i++) {
+            vectorl[i] ^= src[offset + i];
+            dst[doffset + i] = vectorl[i];
+        }
+        block.encrypt(vectorl, 0, vectorl, 0);
+    }
+
+    @Override
+    public void decrypt(long[] src, int offset, long[] dst, int doffset) {
+        int vl = vectorl.length;
+        if (this.offset != 0) {
+            System.arraycopy(decrypt(src, offset, vl), 0, dst, doffset, vl);
+            return;
+        }
+        for (int i = 0; i < vl; i++) {
+            long c = src[offset + i];
+            dst[doffset + i] = vectorl[i] ^ c;
+            vectorl[i] = c;
+        }
+        block.encrypt(vectorl, 0, vectorl, 0);
+    }
+
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        encrypt(src, offset, dst, doffset, vectorl.length * 8);
+    }
+
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        decrypt(src, offset, dst, doffset, vectorl.length * 8);
+    }
+
     /**
      * Stream Mode encrypt
      * @param src
@@ -92,94 +145,170 @@ public final class CFB extends LongStreamMode {
      */
     @Override
     public long[] encrypt(long[] src, int offset, int length) {
-        int l = vectorl.length - this.offset;
-        long[] ret = new long[length];
-        int ro = 0;
-        while (ro < ret.length) {
-            if (length < l) {
-                l = length;
-            }
-            for (int i = 0; i < l; i++) {
-                vectorl[this.offset] ^= src[offset++];
-                ret[ro++] = vectorl[this.offset++];
-                length--;
-            }
-            if (this.offset >= vectorl.length) {
-                this.offset = 0;
-                vectorl = block.encrypt(vectorl, 0);
-                l = vectorl.length;
-            }
-        }
-        return ret;
+        return Bin.btol(encrypt(Bin.ltob(src, offset, length), 0, length * 8));
     }
 
     @Override
     public long[] decrypt(long[] src, int offset, int length) {
-        int l = vectorl.length - this.offset;
-        long[] ret = new long[length];
-        int ro = 0;
-        while (ro < ret.length) {
-            if (length < l) {
-                l = length;
-            }
-            for (int i = 0; i < l; i++) {
-                ret[ro++] = vectorl[this.offset + i] ^ src[offset + i];
-                vectorl[this.offset++] = src[offset++];
-                length--;
-            }
-            if (this.offset >= vectorl.length) {
-                this.offset = 0;
-                vectorl = block.encrypt(vectorl, 0);
-                l = vectorl.length;
-            }
-        }
-        return ret;
+        return Bin.btol(decrypt(Bin.ltob(src, offset, length), 0, length * 8));
     }
 
     @Override
     public byte[] encrypt(byte[] src, int offset, int length) {
-        int l = vector.length - this.offset;
         byte[] ret = new byte[length];
-        int ro = 0;
-        while (ro < ret.length) {
-            if (length < l) {
-                l = length;
-            }
-            for (int i = 0; i < l; i++) {
-                vector[this.offset] ^= src[offset++];
-                ret[ro++] = vector[this.offset++];
-                length--;
-            }
-            if (this.offset >= vector.length) {
-                this.offset = 0;
-                vector = block.encrypt(vector, 0);
-                l = vector.length;
-            }
-        }
+        encrypt(src, offset, ret, 0, length);
         return ret;
     }
 
     @Override
     public byte[] decrypt(byte[] src, int offset, int length) {
-        int l = vector.length - this.offset;
         byte[] ret = new byte[length];
-        int ro = 0;
-        while (ro < ret.length) {
-            if (length < l) {
-                l = length;
+        decrypt(src, offset, ret, 0, length);
+        return ret;
+    }
+
+    /**
+     * ストリーム暗号化.
+     * ブロック境界ではlong単位でまとめて処理する.
+     *
+     * @param src 平文
+     * @param offset 位置
+     * @param dst 暗号出力先
+     * @param doffset 出力位置
+     * @param length 長さ
+     */
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        int bl = vectorl.length * 8;
+        while (length > 0) {
+            if (this.offset == 0 && length >= bl) {
+                for (int i = 0; i < vectorl.length; i++) {
+                    long c = vectorl[i];
+                    for (int j = 56; j >= 0; j -= 8) {
+                        c ^= (long)(src[offset++] & 0xff) << j;
+                        dst[doffset++] = (byte)(c >>> j);
+                    }
+                    vectorl[i] = c;
+                }
+                length -= bl;
+            } else {
+                int j = this.offset >>> 3;
+                int sh = 56 - (this.offset & 7) * 8;
+                vectorl[j] ^= (long)(src[offset++] & 0xff) << sh;
+                dst[doffset++] = (byte)(vectorl[j] >>> sh);
+                this.offset++;
+                length--;
+                if (this.offset < bl) {
+                    continue;
+                }
             }
-            for (int i = 0; i < l; i++) {
-                ret[ro++] = (byte)(vector[this.offset + i] ^ src[offset + i]);
-                vector[this.offset++] = src[offset++];
+            this.offset = 0;
+            block.encrypt(vectorl, 0, vectorl, 0);
+        }
+    }
+
+    /**
+     * ストリーム復号.
+     * ブロック境界から長く続く場合は並列に処理する.
+     *
+     * @param src 暗号
+     * @param offset 位置
+     * @param dst 平文出力先
+     * @param doffset 出力位置
+     * @param length 長さ
+     */
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        int bl = vectorl.length * 8;
+        while (length > 0) {
+            if (this.offset == 0 && parallel && length / bl >= PARALLEL_BLOCKS * 2
+                    && (src != dst || offset == doffset)) {
+                int n = length / bl * bl;
+                decryptParallel(src, offset, dst, doffset, n);
+                offset += n;
+                doffset += n;
+                length -= n;
+                continue;
+            } else if (this.offset == 0 && length >= bl) {
+                for (int i = 0; i < vectorl.length; i++) {
+                    long v = vectorl[i];
+                    long c = 0;
+                    for (int j = 56; j >= 0; j -= 8) {
+                        long b = src[offset++] & 0xff;
+                        c |= b << j;
+                        dst[doffset++] = (byte)((v >>> j) ^ b);
+                    }
+                    vectorl[i] = c;
+                }
+                length -= bl;
+            } else {
+                int j = this.offset >>> 3;
+                int sh = 56 - (this.offset & 7) * 8;
+                long b = src[offset++] & 0xff;
+                dst[doffset++] = (byte)((vectorl[j] >>> sh) ^ b);
+                vectorl[j] = vectorl[j] & ~(0xffl << sh) | b << sh;
+                this.offset++;
                 length--;
+                if (this.offset < bl) {
+                    continue;
+                }
             }
-            if (this.offset >= vector.length) {
-                this.offset = 0;
-                vector = block.encrypt(vector, 0);
-                l = vector.length;
+            this.offset = 0;
+            block.encrypt(vectorl, 0, vectorl, 0);
+        }
+    }
+
+    /**
+     * ブロック単位の並列復号.
+     * 範囲の手前の暗号ブロックを先に暗号化しておき, 範囲ごとに処理する.
+     *
+     * @param src 暗号
+     * @param offset 位置
+     * @param dst 平文出力先
+     * @param doffset 出力位置
+     * @param length 長さ ブロック長の倍数
+     */
+    private void decryptParallel(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        int vl = vectorl.length;
+        int bl = vl * 8;
+        int chunk = PARALLEL_BLOCKS * bl;
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int o = 0; o < length; o += chunk) {
+            long[] v = vectorl.clone();
+            if (o > 0) {
+                Bin.btol(src, offset + o - bl, v, vl);
+                block.encrypt(v, 0, v, 0);
             }
+            int so = offset + o;
+            int dso = doffset + o;
+            int n = Math.min(chunk, length - o);
+            tasks.add(ForkJoinTask.adapt(() -> decrypt(v, src, so, dst, dso, n)));
         }
-        return ret;
+        Bin.btol(src, offset + length - bl, vectorl, vl);
+        ForkJoinTask.invokeAll(tasks);
+        block.encrypt(vectorl, 0, vectorl, 0);
     }
 
+    /**
+     * 範囲の復号.
+     * 鍵ストリームを先にまとめて作るので src と dst は同じでもよい.
+     *
+     * @param v 先頭ブロックの鍵ストリーム
+     * @param src 暗号
+     * @param offset 位置
+     * @param dst 平文出力先
+     * @param doffset 出力位置
+     * @param length 長さ ブロック長の倍数
+     */
+    private void decrypt(long[] v, byte[] src, int offset, byte[] dst, int doffset, int length) {
+        int bl = v.length * 8;
+        byte[] ks = new byte[length];
+        Bin.ltob(v, ks, 0);
+        if (length > bl) {
+            block.encrypt(src, offset, ks, bl, length - bl);
+        }
+        for (int i = 0; i < length; i++) {
+            dst[doffset + i] = (byte) (src[offset + i] ^ ks[i]);
+        }
+    }
 }
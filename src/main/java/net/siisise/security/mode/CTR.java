@@ -15,25 +15,51 @@
  */
 package net.siisise.security.mode;
 
-import java.util.Arrays;
-import net.siisise.io.Packet;
-import net.siisise.io.PacketA;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 import net.siisise.lang.Bin;
-import net.siisise.lang.ParamThread;
 import net.siisise.security.block.Block;
+import net.siisise.security.block.CipherWrap;
 
 /**
  * Counter.
  * ivは適当な実装
  * ノンスとブロック番号を分けずに全部カウントするので隙なし.
+ *
+ * 長いデータはカウンタの範囲で分けて ForkJoinPool で並列に処理する.
+ * 分け方によらず結果は同じ.
  */
 public class CTR extends LongStreamMode {
 
-    Packet xp;
-    Thread th;
+    /**
+     * 並列処理で1タスクが受け持つブロック数.
+     * この2倍未満のときは呼び出したスレッドで処理する.
+     */
+    static final int PARALLEL_BLOCKS = 4096;
+
+    /**
+     * まとめて鍵ストリームを作るブロック数.
+     */
+    private static final int MASK_BLOCKS = 64;
+
+    /**
+     * 1ブロック分の鍵ストリーム
+     */
+    private long[] ks;
+    /**
+     * 使い残した鍵ストリーム
+     */
+    private byte[] pad;
+    /**
+     * pad の使用済み位置
+     */
+    private int padOffset;
+    private boolean parallel;
 
     public CTR(Block b) {
         super(b);
+        parallel = !(b instanceof CipherWrap);
     }
 
     /**
@@ -43,7 +69,7 @@ public class CTR extends LongStreamMode {
      * @param iv counter の初期値 - 1を含む長さで
      */
     public CTR(Block b, byte[] key, byte[] iv) {
-        super(b);
+        this(b);
         init(key, iv);
     }
 
@@ -60,89 +86,116 @@ public class CTR extends LongStreamMode {
     @Override
     public void init(byte[]... params) {
         super.init(in(1, params));
+        initCounter(params[params.length - 1]);
+    }
 
+    /**
+     * 初期化済みの暗号をそのまま使い, カウンタのみ初期化する.
+     * @param iv カウンタの初期値
+     */
+    void initCounter(byte[] iv) {
         int vlen = block.getBlockLength() / 8;
-        byte[] vecsrc = params[params.length - 1];
-        // iv
-        byte[] v = new byte[vlen];
-        System.arraycopy(vecsrc, 0, v, 0, Math.min(vecsrc.length, v.length));
-        vectorl = Bin.btol(v);
-
-        xp = new PacketA();
-        thread();
+        vectorl = new long[vlen / 8];
+        ks = new long[vectorl.length];
+        pad = new byte[vlen];
+        setCounter(iv);
     }
 
     /**
-     *
-     * @param len　ほしい長さ
-     */
-    public void cc(int len) {
-        int size = xp.size();
-        while (size < len && th != null) {
-            xp.write(Bin.ltob(block.encrypt(vectorl, 0)));
-            size += 16;
-            next();
-        }
-        th = null;
+     * 並列処理の有無.
+     * 内側の暗号がスレッドセーフでない場合は false にする.
+     * @param parallel 長いデータを並列で処理する
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
     }
 
     /**
-     * 
-     * @param len ほしい長さ
+     * カウンタを指定する.
+     * 鍵はそのまま. 使い残した鍵ストリームは捨てる.
+     * @param counter 次に使うカウンタブロック 短い場合は後ろを0で埋める
      */
-    void lcc(int len) {
-        int size = xp.size();
-        while (size < len) {
-            xp.write(Bin.ltob(block.encrypt(vectorl, 0)));
-            size += 16;
-            next();
-        }
+    public void setCounter(byte[] counter) {
+        byte[] v = new byte[pad.length];
+        System.arraycopy(counter, 0, v, 0, Math.min(counter.length, v.length));
+        vectorl = Bin.btol(v);
+        padOffset = pad.length;
     }
 
-    void thread() {
-        Thread t = th;
-        if (t == null) {
-            try {
-                th = new ParamThread(this, "cc", 20000);
-//            next();
-            } catch (NoSuchMethodException ex) {
-                throw new IllegalStateException(ex);
-            }
+    /**
+     * ブロック単位で読み飛ばす.
+     * ブロックの途中にいる場合はブロック内の位置を保つ.
+     * 大きなファイルの途中から復号する場合などに
+     * setCounter(初期値) のあと skip(位置 / ブロック長) してから端数分を処理する.
+     * @param blocks 進めるブロック数
+     */
+    public void skip(long blocks) {
+        if (blocks < 0) {
+            throw new IllegalArgumentException();
         }
-    }
-
-    private void join() {
-        Thread t = th;
-        th = null;
-        if (t != null) {
-            try {
-                t.join();
-            } catch (InterruptedException ex) {
-                throw new IllegalStateException(ex);
-            }
+        if (blocks == 0) {
+            return;
         }
-    }
-    
-    private void join(int len) {
-        Thread t = th;
-        th = null;
-        if (t != null) {
-            try {
-                t.join();
-            } catch (InterruptedException ex) {
-                throw new IllegalStateException(ex);
-            }
+        if (padOffset < pad.length) {
+            add(vectorl, blocks - 1);
+            int o = padOffset;
+            fill();
+            padOffset = o;
+        } else {
+            add(vectorl, blocks);
         }
-        lcc(len);
     }
 
+    /**
+     * 次のカウンタ.
+     */
     void next() {
+        next(vectorl);
+    }
+
+    /**
+     * カウンタを1進める.
+     * @param v カウンタ
+     */
+    void next(long[] v) {
         // カウントするだけ
-        int x = vectorl.length;
+        int x = v.length;
         do {
             x--;
-            vectorl[x]++;
-        } while (vectorl[x] == 0 && x != 0);
+            v[x]++;
+        } while (v[x] == 0 && x != 0);
+    }
+
+    /**
+     * カウンタを n 進める.
+     * @param v カウンタ
+     * @param n 符号なし
+     */
+    void add(long[] v, long n) {
+        int x = v.length - 1;
+        long s = v[x] + n;
+        boolean carry = Long.compareUnsigned(s, n) < 0;
+        v[x] = s;
+        while (carry && x != 0) {
+            x--;
+            v[x]++;
+            carry = v[x] == 0;
+        }
+    }
+
+    /**
+     * 1ブロック分の鍵ストリームを pad に作る.
+     */
+    private void fill() {
+        block.encrypt(vectorl, 0, ks, 0);
+        next();
+        int o = 0;
+        for (long m : ks) {
+            for (int j = 56; j >= 0; j -= 8) {
+                pad[o++] = (byte) (m >>> j);
+            }
+        }
+        padOffset = 0;
     }
 
     /**
@@ -153,21 +206,23 @@ public class CTR extends LongStreamMode {
      */
     @Override
     public byte[] encrypt(byte[] src, int offset) {
-        byte[] ret = new byte[16];
-        join(16);
-        int s = xp.read(ret);
-//        if ( s != 16 ) {
-            //xp.backWrite(ret, 0, s);
-//            ret = Bin.ltob(block.encrypt(vectorl, 0));
-//            next();
-//        }
-        thread();
-        for (int i = 0; i < ret.length; i++) {
-            ret[i] ^= src[offset + i];
-        }
+        byte[] ret = new byte[pad.length];
+        encrypt(src, offset, ret, 0, ret.length);
         return ret;
     }
 
+    /**
+     * ブロックモード用.
+     * @param src 平文
+     * @param offset 位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     */
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        encrypt(src, offset, dst, doffset, pad.length);
+    }
+
     /**
      * ブロックモード用.
      * @param src
@@ -179,6 +234,11 @@ public class CTR extends LongStreamMode {
         return encrypt(src, offset);
     }
 
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        encrypt(src, offset, dst, doffset, pad.length);
+    }
+
     /**
      * ブロックモード用.
      * @param src
@@ -187,20 +247,23 @@ public class CTR extends LongStreamMode {
      */
     @Override
     public long[] encrypt(long[] src, int offset) {
-        long[] ret;
-        if ( xp.readable(16)) {
-            byte[] r = new byte[16];
-            xp.read(r);
-            ret = Bin.btol(r);
-        } else {
-            ret = block.encrypt(vectorl, 0);
+        long[] ret = new long[vectorl.length];
+        encrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    @Override
+    public void encrypt(long[] src, int offset, long[] dst, int doffset) {
+        int vl = vectorl.length;
+        if (padOffset < pad.length) {
+            System.arraycopy(Bin.btol(encrypt(Bin.ltob(src, offset, vl), 0, vl * 8)), 0, dst, doffset, vl);
+            return;
         }
-        Bin.xorl(ret, src, offset, ret.length);
-//        for (int i = 0; i < ret.length; i++) {
-//            ret[i] ^= src[offset + i];
-//        }
+        block.encrypt(vectorl, 0, ks, 0);
         next();
-        return ret;
+        for (int i = 0; i < vl; i++) {
+            dst[doffset + i] = src[offset + i] ^ ks[i];
+        }
     }
 
     @Override
@@ -209,46 +272,116 @@ public class CTR extends LongStreamMode {
     }
 
     @Override
-    public byte[] encrypt(byte[] src, int offset, int length) {
-        join();
-        int rl = xp.size();
-        byte[] ret = Arrays.copyOfRange(src, offset, offset + length);
-        int roffset = 0;
-        if (rl > 0) {
-            roffset = Math.min(rl, length);
-            byte[] mask = new byte[roffset];
-            xp.read(mask);
-            for (int i = 0; i < roffset; i++) {
-                ret[i] ^= mask[i];
+    public void decrypt(long[] src, int offset, long[] dst, int doffset) {
+        encrypt(src, offset, dst, doffset);
+    }
+
+    /**
+     * 鍵ストリームをまとめて生成してXORする.
+     * 長い場合はカウンタの範囲で分けて並列に処理する.
+     *
+     * @param src 入力
+     * @param offset 位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     * @param blocks ブロック数
+     */
+    private void mask(byte[] src, int offset, byte[] dst, int doffset, int blocks) {
+        if (parallel && blocks >= PARALLEL_BLOCKS * 2) {
+            int bl = pad.length;
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int b = 0; b < blocks; b += PARALLEL_BLOCKS) {
+                long[] ctr = vectorl.clone();
+                add(ctr, b);
+                int o = b * bl;
+                int n = Math.min(PARALLEL_BLOCKS, blocks - b);
+                tasks.add(ForkJoinTask.adapt(() -> mask(ctr, src, offset + o, dst, doffset + o, n)));
             }
-            length -= roffset;
+            ForkJoinTask.invokeAll(tasks);
+            add(vectorl, blocks);
+        } else {
+            mask(vectorl, src, offset, dst, doffset, blocks);
         }
-        int vl = vectorl.length * 8;
+    }
 
-        while (length >= vl) { // 並列化すると速いかも
-            long[] mask = block.encrypt(vectorl, 0);
-            for (int j = 0; j < mask.length; j++) {
-                for (int i = 7; i >= 0; i--) {
-                    ret[roffset++] ^= mask[j] >>> (i * 8);
+    /**
+     * カウンタを進めながら鍵ストリームをXORする.
+     * カウンタを並べて内側の暗号の複数ブロック処理に渡す.
+     *
+     * @param ctr カウンタ 進める
+     * @param src 入力
+     * @param offset 位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     * @param blocks ブロック数
+     */
+    private void mask(long[] ctr, byte[] src, int offset, byte[] dst, int doffset, int blocks) {
+        int vl = ctr.length;
+        long[] ctrs = new long[Math.min(blocks, MASK_BLOCKS) * vl];
+        while (blocks > 0) {
+            int len = Math.min(blocks, MASK_BLOCKS) * vl;
+            for (int i = 0; i < len; i += vl) {
+                System.arraycopy(ctr, 0, ctrs, i, vl);
+                next(ctr);
+            }
+            block.encrypt(ctrs, 0, ctrs, 0, len);
+            for (int i = 0; i < len; i++) {
+                long m = ctrs[i];
+                for (int j = 56; j >= 0; j -= 8) {
+                    dst[doffset++] = (byte) (src[offset++] ^ (m >>> j));
                 }
             }
-            length -= vl;
-            next();
+            blocks -= len / vl;
+        }
+    }
+
+    @Override
+    public byte[] encrypt(byte[] src, int offset, int length) {
+        byte[] ret = new byte[length];
+        encrypt(src, offset, ret, 0, length);
+        return ret;
+    }
+
+    /**
+     * 暗号化.
+     * src と dst は同じ位置でもよい.
+     * @param src 入力
+     * @param offset 位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     * @param length 長さ
+     */
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        int rl = Math.min(pad.length - padOffset, length);
+        for (int i = 0; i < rl; i++) {
+            dst[doffset++] = (byte) (src[offset++] ^ pad[padOffset++]);
+        }
+        length -= rl;
+
+        int bl = pad.length;
+        int blocks = length / bl;
+        if (blocks > 0) {
+            mask(src, offset, dst, doffset, blocks);
+            offset += blocks * bl;
+            doffset += blocks * bl;
+            length -= blocks * bl;
         }
         if (length > 0) {
-            byte[] tmp = Bin.ltob(block.encrypt(vectorl, 0));
-            for (int i = 0; i < length; i++) {
-                ret[roffset++] ^= tmp[i];
+            fill();
+            while (padOffset < length) {
+                dst[doffset++] = (byte) (src[offset++] ^ pad[padOffset++]);
             }
-            xp.write(tmp, length, tmp.length - length);
-            next();
         }
-        thread();
-        return ret;
     }
 
     @Override
     public byte[] decrypt(byte[] src, int offset, int length) {
         return encrypt(src, offset, length);
     }
+
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        encrypt(src, offset, dst, doffset, length);
+    }
 }
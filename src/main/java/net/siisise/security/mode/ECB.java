@@ -74,4 +74,64 @@ public class ECB extends BlockMode {
     public int[] decrypt(int[] src, int offset, int length) {
         return block.decrypt(src, offset, length);
     }
+
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        block.encrypt(src, offset, dst, doffset);
+    }
+
+    @Override
+    public void encrypt(int[] src, int offset, int[] dst, int doffset) {
+        block.encrypt(src, offset, dst, doffset);
+    }
+
+    @Override
+    public void encrypt(long[] src, int offset, long[] dst, int doffset) {
+        block.encrypt(src, offset, dst, doffset);
+    }
+
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        block.decrypt(src, offset, dst, doffset);
+    }
+
+    @Override
+    public void decrypt(int[] src, int offset, int[] dst, int doffset) {
+        block.decrypt(src, offset, dst, doffset);
+    }
+
+    @Override
+    public void decrypt(long[] src, int offset, long[] dst, int doffset) {
+        block.decrypt(src, offset, dst, doffset);
+    }
+
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        block.encrypt(src, offset, dst, doffset, length);
+    }
+
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        block.decrypt(src, offset, dst, doffset, length);
+    }
+
+    @Override
+    public long[] encrypt(long[] src, int offset, int length) {
+        return block.encrypt(src, offset, length);
+    }
+
+    @Override
+    public long[] decrypt(long[] src, int offset, int length) {
+        return block.decrypt(src, offset, length);
+    }
+
+    @Override
+    public void encrypt(long[] src, int offset, long[] dst, int doffset, int length) {
+        block.encrypt(src, offset, dst, doffset, length);
+    }
+
+    @Override
+    public void decrypt(long[] src, int offset, long[] dst, int doffset, int length) {
+        block.decrypt(src, offset, dst, doffset, length);
+    }
 }
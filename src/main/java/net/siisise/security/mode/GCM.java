@@ -15,12 +15,18 @@
  */
 package net.siisise.security.mode;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 import net.siisise.io.Packet;
 import net.siisise.io.PacketA;
 import net.siisise.lang.Bin;
 import net.siisise.security.block.AES;
 import net.siisise.security.block.Block;
+import net.siisise.security.block.ByteBuffers;
 import net.siisise.security.mac.GHASH;
 
 /**
@@ -52,13 +58,83 @@ public class GCM extends LongStreamMode implements StreamAEAD {
          * vector LSB 32bitのみカウントする
          */
         @Override
-        void next() {
-            long u = vectorl[1] & 0xffffffff00000000l;
-            long d = ++vectorl[1] & 0x00000000ffffffffl;
-            vectorl[1] = u | d;
+        void next(long[] v) {
+            inc32(v);
+        }
+
+        /**
+         * inc32. vector LSB 32bitのみカウントする
+         * @param v vector
+         */
+        static void inc32(long[] v) {
+            long u = v[1] & 0xffffffff00000000l;
+            long d = ++v[1] & 0x00000000ffffffffl;
+            v[1] = u | d;
+        }
+
+        /**
+         * vector LSB 32bitのみ加算する
+         */
+        @Override
+        void add(long[] v, long n) {
+            v[1] = (v[1] & 0xffffffff00000000l) | ((v[1] + n) & 0x00000000ffffffffl);
         }
     }
     
+    /**
+     * doFinal でGHASHを並列に計算する長さ.
+     */
+    static final int LARGE_LENGTH = 256 * 1024;
+
+    /**
+     * sealAll, openAll でまとめて鍵ストリームを作るブロック数の目安.
+     */
+    static final int BATCH_BLOCKS = 256;
+
+    /**
+     * 鍵ごとの共通部分.
+     * 暗号の鍵スケジュール, H, GHASH の表を持つ.
+     * 作成後は変更しないのでスレッド間で共有できる.
+     * 内側の暗号は AES などスレッドセーフに暗号化できるものに限る.
+     */
+    public static final class Key {
+
+        final Block block;
+        final GHASH.Key hkey;
+
+        /**
+         * AES-GCM.
+         * AES の実装はシステムプロパティで選ぶ.
+         * @param key AESの鍵
+         */
+        public Key(byte[] key) {
+            this(AES.newInstance(0), key);
+        }
+
+        /**
+         * 
+         * @param block 128bit ブロック暗号 この Key 専用にする
+         * @param key 暗号の鍵
+         */
+        public Key(Block block, byte[] key) {
+            block.init(key);
+            this.block = block;
+            hkey = new GHASH.Key(block.encrypt(new long[block.getBlockLength() / 64]));
+        }
+
+        /**
+         * メッセージごとの GCM.
+         * @param iv IV 使い捨て
+         * @param aad AAD
+         * @return 初期化済みの GCM
+         */
+        public GCM newMessage(byte[] iv, byte[] aad) {
+            GCM gcm = new GCM(this);
+            gcm.reset(iv, aad);
+            return gcm;
+        }
+    }
+
     private GCTR ctr;
     private byte[] iv;
     
@@ -67,13 +143,19 @@ public class GCM extends LongStreamMode implements StreamAEAD {
     
     private byte[] tag;
     
-    private byte[] key;
+    private Key gkey;
+    /**
+     * 共有の Key から作った
+     */
+    private final boolean shared;
     
     /**
      * AES-GCM にしよう.
+     * AES の実装はシステムプロパティで選ぶ.
      */
     public GCM() {
-        super(new AES());
+        super(AES.newInstance(0));
+        shared = false;
     }
     
     /**
@@ -82,6 +164,18 @@ public class GCM extends LongStreamMode implements StreamAEAD {
      */
     public GCM(Block block) {
         super(block);
+        shared = false;
+    }
+
+    /**
+     * 共有の鍵から作る.
+     * init ではなく reset で IV, AAD を渡す.
+     * @param key 鍵ごとの共通部分
+     */
+    public GCM(Key key) {
+        super(key.block);
+        gkey = key;
+        shared = true;
     }
 
     @Override
@@ -109,21 +203,10 @@ public class GCM extends LongStreamMode implements StreamAEAD {
      */
     @Override
     public void init(byte[]... params) {
-        // iv 生成用AES?
-        key = params[0];
-        block.init(key);
-
-        // GHASH
-        gh = new GHASH();
-        long[] H = block.encrypt(new long[block.getBlockLength() / 64]);
-        gh.init(H);
-
-        iv = J0(params[1]);
-
-        ctr = new GCTR(block);
-
-        ctr.init(key,iv);
-        ctr.next(); // データ用初期値
+        if (shared) {
+            throw new IllegalStateException("use reset");
+        }
+        gkey = new Key(block, params[0]);
 
         byte[] aad;
         if ( params.length >= 3) {
@@ -131,6 +214,30 @@ public class GCM extends LongStreamMode implements StreamAEAD {
         } else {
             aad = new byte[0];
         }
+        reset(params[1], aad);
+    }
+
+    /**
+     * 鍵はそのままで IV と AAD を差し替える.
+     * 暗号の鍵スケジュール, H, GHASH の表は作り直さない.
+     * @param iv Y0用iv 使い捨て
+     * @param aad AAD
+     */
+    @Override
+    public void reset(byte[] iv, byte[] aad) {
+        // GHASH
+        if (gh == null) {
+            gh = new GHASH();
+        }
+        gh.init(gkey.hkey);
+
+        this.iv = J0(gh, iv);
+
+        if (ctr == null) {
+            ctr = new GCTR(block);
+        }
+        ctr.initCounter(this.iv);
+        ctr.next(); // データ用初期値
 
         // GHASH
         tag = null;
@@ -140,9 +247,10 @@ public class GCM extends LongStreamMode implements StreamAEAD {
     
     /**
      * Algorithm 4: GCM-AE_K(IV, P, A) Step 2.
+     * @param gh 作業用
      * @param iv 候補 96bit でも それ以外でもよし
      */
-    private byte[] J0(byte[] iv) {
+    private byte[] J0(GHASH gh, byte[] iv) {
         byte[] m = new byte[block.getBlockLength() / 8];
         if (iv.length == 12) { // 96 bit
             System.arraycopy(iv, 0, m, 0, iv.length);
@@ -157,6 +265,117 @@ public class GCM extends LongStreamMode implements StreamAEAD {
         return gh.sign();
     }
     
+    /**
+     * 同じ鍵でまとめて暗号化する.
+     * 複数レコードのカウンタブロックを並べて内側の暗号に渡す.
+     * @param records IV, AAD, 平文
+     * @return 暗号文 + タグ を続けたもの
+     */
+    @Override
+    public Batch sealAll(List<Record> records) {
+        return batch(records, true);
+    }
+
+    /**
+     * 同じ鍵でまとめて復号, 検証する.
+     * @param records IV, AAD, 暗号文 + タグ
+     * @return 平文を続けたもの
+     */
+    @Override
+    public Batch openAll(List<Record> records) {
+        return batch(records, false);
+    }
+
+    private Batch batch(List<Record> records, boolean enc) {
+        if (gkey == null) {
+            throw new IllegalStateException("init");
+        }
+        int n = records.size();
+        int[] offsets = new int[n];
+        int[] lengths = new int[n];
+        boolean[] valid = new boolean[n];
+        int total = 0;
+        for (int i = 0; i < n; i++) {
+            Record r = records.get(i);
+            offsets[i] = total;
+            lengths[i] = Math.max(enc ? r.length + 16 : r.length - 16, 0);
+            total += lengths[i];
+        }
+        byte[] data = new byte[total];
+        GHASH h = new GHASH();
+        for (int i = 0; i < n;) {
+            // BATCH_BLOCKS 程度ずつ
+            int j = i;
+            int blocks = 0;
+            while (j < n && (j == i || blocks < BATCH_BLOCKS)) {
+                blocks += (records.get(j).length + 15) / 16 + 1;
+                j++;
+            }
+            long[] ks = new long[blocks * 2];
+            int p = 0;
+            for (int k = i; k < j; k++) {
+                Record r = records.get(k);
+                h.init(gkey.hkey);
+                long[] c = Bin.btol(J0(h, r.iv));
+                int b = (r.length + 15) / 16;
+                for (int q = 0; q <= b; q++) {
+                    ks[p++] = c[0];
+                    ks[p++] = c[1];
+                    GCTR.inc32(c);
+                }
+            }
+            block.encrypt(ks, 0, ks, 0, ks.length);
+            p = 0;
+            for (int k = i; k < j; k++) {
+                Record r = records.get(k);
+                int len = enc ? r.length : r.length - 16;
+                int s0 = p;
+                p += ((r.length + 15) / 16 + 1) * 2;
+                if (len < 0) {
+                    continue;
+                }
+                h.clear();
+                h.aad(r.aad);
+                if (enc) {
+                    xor(r.src, r.offset, ks, s0 + 2, data, offsets[k], len);
+                    h.update(data, offsets[k], len);
+                } else {
+                    h.update(r.src, r.offset, len);
+                }
+                byte[] t = h.sign();
+                for (int q = 0; q < 16; q++) {
+                    t[q] ^= ks[s0 + q / 8] >>> (56 - (q & 7) * 8);
+                }
+                if (enc) {
+                    System.arraycopy(t, 0, data, offsets[k] + len, 16);
+                    valid[k] = true;
+                } else {
+                    int d = 0;
+                    for (int q = 0; q < 16; q++) {
+                        d |= t[q] ^ r.src[r.offset + len + q];
+                    }
+                    valid[k] = d == 0;
+                    if (valid[k]) {
+                        xor(r.src, r.offset, ks, s0 + 2, data, offsets[k], len);
+                    } else {
+                        lengths[k] = 0;
+                    }
+                }
+            }
+            i = j;
+        }
+        return new Batch(data, offsets, lengths, valid);
+    }
+
+    /**
+     * 鍵ストリームをXORする.
+     */
+    private static void xor(byte[] src, int offset, long[] ks, int ko, byte[] dst, int doffset, int length) {
+        for (int q = 0; q < length; q++) {
+            dst[doffset + q] = (byte) (src[offset + q] ^ (ks[ko + q / 8] >>> (56 - (q & 7) * 8)));
+        }
+    }
+
     @Override
     public byte[] encrypt(byte[] src, int offset) {
         byte[] c = ctr.encrypt(src, offset);
@@ -164,6 +383,30 @@ public class GCM extends LongStreamMode implements StreamAEAD {
         return c;
     }
 
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        ctr.encrypt(src, offset, dst, doffset);
+        gh.update(dst, doffset, 16);
+    }
+
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        gh.update(src, offset, 16);
+        ctr.encrypt(src, offset, dst, doffset);
+    }
+
+    @Override
+    public void encrypt(long[] src, int offset, long[] dst, int doffset) {
+        ctr.encrypt(src, offset, dst, doffset);
+        gh.update(Bin.ltob(dst, doffset, 2));
+    }
+
+    @Override
+    public void decrypt(long[] src, int offset, long[] dst, int doffset) {
+        gh.update(Bin.ltob(src, offset, 2));
+        ctr.encrypt(src, offset, dst, doffset);
+    }
+
     /**
      * ブロック用
      * @param src
@@ -210,6 +453,36 @@ public class GCM extends LongStreamMode implements StreamAEAD {
         return c;
     }
 
+    /**
+     * ストリーム用.
+     * src と dst は同じ位置でもよい.
+     * @param src 平文
+     * @param offset 位置
+     * @param dst 暗号文出力先
+     * @param doffset 出力位置
+     * @param length 長さ
+     */
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        ctr.encrypt(src, offset, dst, doffset, length);
+        gh.update(dst, doffset, length);
+    }
+
+    /**
+     * ストリーム用.
+     * src と dst は同じ位置でもよい.
+     * @param src 暗号文
+     * @param offset 位置
+     * @param dst 平文出力先
+     * @param doffset 出力位置
+     * @param length 長さ
+     */
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        gh.update(src, offset, length);
+        ctr.encrypt(src, offset, dst, doffset, length);
+    }
+
     /**
      * 
      * @param src
@@ -240,6 +513,7 @@ public class GCM extends LongStreamMode implements StreamAEAD {
     
     /**
      * タグを含む.
+     * LARGE_LENGTH 以上は CTR, GHASH とも並列で処理する.
      * @param src
      * @param offset
      * @param length
@@ -247,6 +521,13 @@ public class GCM extends LongStreamMode implements StreamAEAD {
      */
     @Override
     public byte[] doFinalEncrypt(byte[] src, int offset, int length) {
+        if (length >= LARGE_LENGTH) {
+            byte[] ret = new byte[length + 16];
+            ctr.encrypt(src, offset, ret, 0, length);
+            gh.updateParallel(ret, 0, length);
+            System.arraycopy(tag(), 0, ret, length, 16);
+            return ret;
+        }
         Packet pac = new PacketA();
         pac.write(encrypt(src, offset, length));
         pac.write(tag());
@@ -255,6 +536,7 @@ public class GCM extends LongStreamMode implements StreamAEAD {
     
     /**
      * MAC に必要な長さが含まれる前提.
+     * LARGE_LENGTH 以上は CTR, GHASH とも並列で処理する.
      * @param src 認証コードを含む
      * @param offset
      * @param length 16以上
@@ -262,13 +544,50 @@ public class GCM extends LongStreamMode implements StreamAEAD {
      */
     @Override
     public byte[] doFinalDecrypt(byte[] src, int offset, int length) {
-        byte[] dec = decrypt(src, offset, length - 16);
+        byte[] dec;
+        if (length - 16 >= LARGE_LENGTH) {
+            // 認証と復号を並行する
+            ForkJoinTask<?> auth = ForkJoinTask.adapt(() -> gh.updateParallel(src, offset, length - 16)).fork();
+            dec = ctr.encrypt(src, offset, length - 16);
+            auth.join();
+        } else {
+            dec = decrypt(src, offset, length - 16);
+        }
         byte[] t = tag();
 //        byte[] st = Arrays.copyOfRange(src, offset + length - 16, 16);
 //        if (!Arrays.equals(t, st)) {
-        if (!Arrays.equals(t, 0, 16, src, offset + length - 16, 16)) {
+        if (!MessageDigest.isEqual(t, Arrays.copyOfRange(src, offset + length - 16, offset + length))) { // 時間一定
             throw new IllegalStateException();
         }
         return dec;
     }
+
+    /**
+     * ByteBuffer 版.
+     * 暗号文とタグを dst に書く.
+     * src と dst は同じ buffer でもよい.
+     * @param src 平文
+     * @param dst 暗号文 + タグ 出力先
+     */
+    @Override
+    public void doFinalEncrypt(ByteBuffer src, ByteBuffer dst) {
+        if (dst.remaining() < src.remaining() + 16) {
+            throw new BufferOverflowException();
+        }
+        encrypt(src, dst);
+        dst.put(tag());
+    }
+
+    /**
+     * ByteBuffer 版.
+     * src の末尾にタグが含まれる前提.
+     * 検証に失敗した場合は dst に書いた平文を消して例外にする.
+     * src と dst は同じ buffer でもよい. その場合 position は平文の後ろになる.
+     * @param src 暗号文 + タグ
+     * @param dst 平文出力先
+     */
+    @Override
+    public void doFinalDecrypt(ByteBuffer src, ByteBuffer dst) {
+        ByteBuffers.doFinalDecrypt(src, dst, 16, this::decrypt, this::tag);
+    }
 }
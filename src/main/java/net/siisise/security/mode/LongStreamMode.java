@@ -62,6 +62,45 @@ public abstract class LongStreamMode extends LongBlockMode {
     @Override
     public abstract byte[] decrypt(byte[] src, int offset, int length);
 
+    /**
+     * ストリーム用暗号化.
+     * ブロック長の倍数でなくてもよい.
+     *
+     * @param src 元データ
+     * @param offset 位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     * @param length 長さ
+     */
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        System.arraycopy(encrypt(src, offset, length), 0, dst, doffset, length);
+    }
+
+    /**
+     * ストリーム用復号.
+     *
+     * @param src 元データ
+     * @param offset 位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     * @param length 長さ
+     */
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        System.arraycopy(decrypt(src, offset, length), 0, dst, doffset, length);
+    }
+
+    @Override
+    public void encrypt(long[] src, int offset, long[] dst, int doffset, int length) {
+        System.arraycopy(encrypt(src, offset, length), 0, dst, doffset, length);
+    }
+
+    @Override
+    public void decrypt(long[] src, int offset, long[] dst, int doffset, int length) {
+        System.arraycopy(decrypt(src, offset, length), 0, dst, doffset, length);
+    }
+
     /**
      * ブロック暗号として利用.
      *
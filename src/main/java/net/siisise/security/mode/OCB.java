@@ -0,0 +1,475 @@
+/*
+ * Copyright 2023 okome.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.mode;
+
+import java.util.Arrays;
+import net.siisise.lang.Bin;
+import net.siisise.security.block.Block;
+
+/**
+ * OCB3.
+ * RFC 7253 The OCB Authenticated-Encryption Algorithm
+ *
+ * ブロックごとに暗号1回とXORのみ. 体の乗算は L の2倍のみ.
+ * Offset は L_i の表から作り, 複数ブロックまとめて内側の暗号に渡す.
+ *
+ * ストリームで使う場合, 16バイト未満の端数は次の update または doFinal まで持ち越す.
+ * encrypt, decrypt の戻り値は完成したブロックぶんのみ.
+ */
+public class OCB extends LongStreamMode implements StreamAEAD {
+
+    /**
+     * まとめて内側の暗号に渡すブロック数.
+     */
+    private static final int BULK_BLOCKS = 64;
+
+    /**
+     * タグの長さ byte
+     */
+    private final int tagLength;
+
+    /**
+     * L_* 上位, 下位
+     */
+    private final long[] lstar = new long[2];
+    /**
+     * L_$
+     */
+    private final long[] ldollar = new long[2];
+    /**
+     * L_0 から L_63. [i*2] 上位, [i*2+1] 下位
+     */
+    private final long[] l = new long[128];
+
+    /**
+     * Offset_0
+     */
+    private final long[] offset0 = new long[2];
+    /**
+     * HASH(K,A)
+     */
+    private final long[] sum = new long[2];
+
+    private final long[] offset = new long[2];
+    private final long[] checksum = new long[2];
+    /**
+     * 処理済みブロック数
+     */
+    private long count;
+    /**
+     * 端数
+     */
+    private final byte[] pending = new byte[16];
+    private int pendingLength;
+
+    private final long[] xs = new long[BULK_BLOCKS * 2];
+    private final long[] os = new long[BULK_BLOCKS * 2];
+
+    /**
+     * タグ 128bit.
+     * @param block 128bit ブロック暗号
+     */
+    public OCB(Block block) {
+        this(block, 16);
+    }
+
+    /**
+     * @param block 128bit ブロック暗号
+     * @param tagLength タグの長さ byte 1～16
+     */
+    public OCB(Block block, int tagLength) {
+        super(block);
+        if (tagLength < 1 || tagLength > 16) {
+            throw new IllegalStateException();
+        }
+        if (block.getBlockLength() != 128) {
+            throw new SecurityException("block length");
+        }
+        this.tagLength = tagLength;
+    }
+
+    @Override
+    public int getBlockLength() {
+        return 128;
+    }
+
+    /**
+     * nonce
+     * @return key, nonce bit length
+     */
+    @Override
+    public int[] getParamLength() {
+        int[] pl = block.getParamLength();
+        int[] np = Arrays.copyOf(pl, pl.length + 1);
+        np[np.length - 1] = 96;
+        return np;
+    }
+
+    /**
+     *
+     * @param params (block key,) nonce 120bit以下, [associated data]
+     */
+    @Override
+    public void init(byte[]... params) {
+        int size = params.length - block.getParamLength().length;
+        block.init(in(size, params));
+
+        long[] z = new long[2];
+        block.encrypt(z, 0, lstar, 0);
+        dbl(lstar, ldollar);
+        dbl(ldollar, z);
+        for (int i = 0; i < 64; i++) {
+            l[i * 2] = z[0];
+            l[i * 2 + 1] = z[1];
+            dbl(z, z);
+        }
+
+        byte[] aad = size > 1 ? params[params.length - 1] : new byte[0];
+        reset(params[params.length - size], aad);
+    }
+
+    /**
+     * 鍵はそのままで nonce と AAD を差し替える.
+     * @param nonce N 120bit以下 使い捨て
+     * @param aad associated data A
+     */
+    @Override
+    public void reset(byte[] nonce, byte[] aad) {
+        if (nonce.length > 15) {
+            throw new IllegalStateException("nonce length");
+        }
+        byte[] n = new byte[16];
+        n[0] = (byte) ((tagLength * 8 % 128) << 1);
+        n[15 - nonce.length] |= 1;
+        System.arraycopy(nonce, 0, n, 16 - nonce.length, nonce.length);
+        int bottom = n[15] & 0x3f;
+        n[15] &= 0xc0;
+        long[] ktop = Bin.btol(n);
+        block.encrypt(ktop, 0, ktop, 0);
+        long s0 = ktop[0];
+        long s1 = ktop[1];
+        long s2 = s0 ^ ((s0 << 8) | (s1 >>> 56));
+        if (bottom == 0) {
+            offset0[0] = s0;
+            offset0[1] = s1;
+        } else {
+            offset0[0] = (s0 << bottom) | (s1 >>> (64 - bottom));
+            offset0[1] = (s1 << bottom) | (s2 >>> (64 - bottom));
+        }
+        hash(aad);
+        clear();
+    }
+
+    /**
+     * 本文の処理前に戻す.
+     */
+    private void clear() {
+        offset[0] = offset0[0];
+        offset[1] = offset0[1];
+        checksum[0] = 0;
+        checksum[1] = 0;
+        count = 0;
+        pendingLength = 0;
+    }
+
+    /**
+     * double(S).
+     * @param s 元
+     * @param d 出力先 s と同じでもよい
+     */
+    private static void dbl(long[] s, long[] d) {
+        long c = s[0] >> 63;
+        d[0] = (s[0] << 1) | (s[1] >>> 63);
+        d[1] = (s[1] << 1) ^ (c & 0x87);
+    }
+
+    /**
+     * HASH(K,A).
+     * @param a associated data
+     */
+    private void hash(byte[] a) {
+        long[] o = new long[2];
+        sum[0] = 0;
+        sum[1] = 0;
+        int blocks = a.length / 16;
+        long i = 0;
+        for (int b = 0; b < blocks; b += BULK_BLOCKS) {
+            int n = Math.min(BULK_BLOCKS, blocks - b) * 2;
+            for (int j = 0; j < n; j += 2) {
+                int z = Long.numberOfTrailingZeros(++i) * 2;
+                o[0] ^= l[z];
+                o[1] ^= l[z + 1];
+                xs[j] = btol(a, (b * 2 + j) * 8) ^ o[0];
+                xs[j + 1] = btol(a, (b * 2 + j) * 8 + 8) ^ o[1];
+            }
+            block.encrypt(xs, 0, xs, 0, n);
+            for (int j = 0; j < n; j += 2) {
+                sum[0] ^= xs[j];
+                sum[1] ^= xs[j + 1];
+            }
+        }
+        int r = a.length % 16;
+        if (r > 0) {
+            byte[] p = new byte[16];
+            System.arraycopy(a, blocks * 16, p, 0, r);
+            p[r] = (byte) 0x80;
+            long[] x = Bin.btol(p);
+            x[0] ^= o[0] ^ lstar[0];
+            x[1] ^= o[1] ^ lstar[1];
+            block.encrypt(x, 0, x, 0);
+            sum[0] ^= x[0];
+            sum[1] ^= x[1];
+        }
+    }
+
+    private static long btol(byte[] src, int offset) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (src[offset + i] & 0xff);
+        }
+        return v;
+    }
+
+    private static void ltob(long v, byte[] dst, int offset) {
+        for (int i = 7; i >= 0; i--) {
+            dst[offset + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+
+    /**
+     * 完全なブロックをまとめて処理する.
+     * src と dst は同じ位置でもよい.
+     *
+     * @param src 入力
+     * @param soffset 位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     * @param blocks ブロック数
+     * @param enc 暗号化
+     */
+    private void blocks(byte[] src, int soffset, byte[] dst, int doffset, int blocks, boolean enc) {
+        while (blocks > 0) {
+            int n = Math.min(BULK_BLOCKS, blocks) * 2;
+            for (int j = 0; j < n; j += 2) {
+                int z = Long.numberOfTrailingZeros(++count) * 2;
+                offset[0] ^= l[z];
+                offset[1] ^= l[z + 1];
+                os[j] = offset[0];
+                os[j + 1] = offset[1];
+                long x0 = btol(src, soffset);
+                long x1 = btol(src, soffset + 8);
+                if (enc) {
+                    checksum[0] ^= x0;
+                    checksum[1] ^= x1;
+                }
+                xs[j] = x0 ^ offset[0];
+                xs[j + 1] = x1 ^ offset[1];
+                soffset += 16;
+            }
+            if (enc) {
+                block.encrypt(xs, 0, xs, 0, n);
+            } else {
+                block.decrypt(xs, 0, xs, 0, n);
+            }
+            for (int j = 0; j < n; j += 2) {
+                long y0 = xs[j] ^ os[j];
+                long y1 = xs[j + 1] ^ os[j + 1];
+                if (!enc) {
+                    checksum[0] ^= y0;
+                    checksum[1] ^= y1;
+                }
+                ltob(y0, dst, doffset);
+                ltob(y1, dst, doffset + 8);
+                doffset += 16;
+            }
+            blocks -= n / 2;
+        }
+    }
+
+    /**
+     * 端数を持ち越しながら処理する.
+     * @return 出力した長さ
+     */
+    private int update(byte[] src, int offset, int length, byte[] dst, int doffset, boolean enc) {
+        int d = doffset;
+        if (pendingLength > 0) {
+            int l = Math.min(16 - pendingLength, length);
+            System.arraycopy(src, offset, pending, pendingLength, l);
+            pendingLength += l;
+            offset += l;
+            length -= l;
+            if (pendingLength < 16) {
+                return 0;
+            }
+            blocks(pending, 0, dst, d, 1, enc);
+            pendingLength = 0;
+            d += 16;
+        }
+        int n = length / 16;
+        blocks(src, offset, dst, d, n, enc);
+        d += n * 16;
+        pendingLength = length - n * 16;
+        System.arraycopy(src, offset + n * 16, pending, 0, pendingLength);
+        return d - doffset;
+    }
+
+    @Override
+    public byte[] encrypt(byte[] src, int offset, int length) {
+        byte[] ret = new byte[(pendingLength + length) / 16 * 16];
+        int l = update(src, offset, length, ret, 0, true);
+        return l == ret.length ? ret : Arrays.copyOf(ret, l);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] src, int offset, int length) {
+        byte[] ret = new byte[(pendingLength + length) / 16 * 16];
+        int l = update(src, offset, length, ret, 0, false);
+        return l == ret.length ? ret : Arrays.copyOf(ret, l);
+    }
+
+    /**
+     * ブロック長の倍数のみ.
+     * src と dst は同じ位置でもよい.
+     *
+     * @param src 平文
+     * @param offset 位置
+     * @param dst 暗号文出力先
+     * @param doffset 出力位置
+     * @param length 長さ 16の倍数
+     */
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        if (pendingLength > 0 || length % 16 != 0) {
+            throw new IllegalStateException("block length");
+        }
+        blocks(src, offset, dst, doffset, length / 16, true);
+    }
+
+    /**
+     * ブロック長の倍数のみ.
+     * src と dst は同じ位置でもよい.
+     *
+     * @param src 暗号文
+     * @param offset 位置
+     * @param dst 平文出力先
+     * @param doffset 出力位置
+     * @param length 長さ 16の倍数
+     */
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset, int length) {
+        if (pendingLength > 0 || length % 16 != 0) {
+            throw new IllegalStateException("block length");
+        }
+        blocks(src, offset, dst, doffset, length / 16, false);
+    }
+
+    /**
+     * 端数の処理とタグ.
+     * @param dst 端数の出力先
+     * @param doffset 出力位置
+     * @param enc 暗号化
+     * @return タグ 全長
+     */
+    private byte[] finish(byte[] dst, int doffset, boolean enc) {
+        long t0 = checksum[0] ^ offset[0];
+        long t1 = checksum[1] ^ offset[1];
+        if (pendingLength > 0) {
+            long o0 = offset[0] ^ lstar[0];
+            long o1 = offset[1] ^ lstar[1];
+            long[] pad = {o0, o1};
+            block.encrypt(pad, 0, pad, 0);
+            byte[] p = new byte[16];
+            ltob(pad[0], p, 0);
+            ltob(pad[1], p, 8);
+            for (int i = 0; i < pendingLength; i++) {
+                byte b = (byte) (pending[i] ^ p[i]);
+                dst[doffset + i] = b;
+                // P_* || 1 || 0...
+                p[i] = enc ? pending[i] : b;
+            }
+            p[pendingLength] = (byte) 0x80;
+            Arrays.fill(p, pendingLength + 1, 16, (byte) 0);
+            t0 = checksum[0] ^ btol(p, 0) ^ o0;
+            t1 = checksum[1] ^ btol(p, 8) ^ o1;
+        }
+        long[] t = {t0 ^ ldollar[0], t1 ^ ldollar[1]};
+        block.encrypt(t, 0, t, 0);
+        t[0] ^= sum[0];
+        t[1] ^= sum[1];
+        clear();
+        return Bin.ltob(t);
+    }
+
+    /**
+     * タグ単体.
+     * 端数の残っていない場合のみ.
+     * @return 認証タグ
+     */
+    @Override
+    public byte[] tag() {
+        if (pendingLength > 0) {
+            throw new IllegalStateException("use doFinalEncrypt");
+        }
+        return Arrays.copyOf(finish(null, 0, true), tagLength);
+    }
+
+    /**
+     * タグを含む.
+     * @param src 平文
+     * @param offset 位置
+     * @param length 長さ
+     * @return 暗号 + 認証タグ
+     */
+    @Override
+    public byte[] doFinalEncrypt(byte[] src, int offset, int length) {
+        int total = pendingLength + length;
+        byte[] ret = new byte[total + tagLength];
+        int l = update(src, offset, length, ret, 0, true);
+        byte[] tag = finish(ret, l, true);
+        System.arraycopy(tag, 0, ret, total, tagLength);
+        return ret;
+    }
+
+    /**
+     * タグの検証.
+     * 失敗した場合は平文を消して例外にする.
+     * @param src 暗号文 + 認証タグ
+     * @param offset 位置
+     * @param length 長さ タグ長以上
+     * @return 平文
+     */
+    @Override
+    public byte[] doFinalDecrypt(byte[] src, int offset, int length) {
+        if (length < tagLength) {
+            throw new IllegalStateException();
+        }
+        int len = length - tagLength;
+        int total = pendingLength + len;
+        byte[] ret = new byte[total];
+        int l = update(src, offset, len, ret, 0, false);
+        byte[] tag = finish(ret, l, false);
+        int d = 0;
+        for (int i = 0; i < tagLength; i++) {
+            d |= tag[i] ^ src[offset + len + i];
+        }
+        if (d != 0) {
+            Arrays.fill(ret, (byte) 0);
+            throw new IllegalStateException();
+        }
+        return ret;
+    }
+}
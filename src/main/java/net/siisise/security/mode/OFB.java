@@ -17,7 +17,6 @@ package net.siisise.security.mode;
 
 import net.siisise.io.Packet;
 import net.siisise.io.PacketA;
-import net.siisise.lang.Bin;
 import net.siisise.security.block.Block;
 
 /**
@@ -77,53 +76,39 @@ public final class OFB extends StreamMode {
 
     @Override
     public byte[] encrypt(byte[] src, int offset) {
-        byte[] nv = block.encrypt(vector, 0);
-        byte[] ret = vector; // 配列の使い回し
-
-        for (int i = 0; i < ret.length; i++) {
-            ret[i] ^= src[offset++];
-        }
-
-        vector = nv;
+        byte[] ret = new byte[vector.length];
+        encrypt(src, offset, ret, 0);
         return ret;
     }
 
+    /**
+     * ブロック単位.
+     * ストリームの途中でなければ鍵ストリームを作って直接XORする.
+     * @param src 平文
+     * @param offset 位置
+     * @param dst 出力先
+     * @param doffset 出力位置
+     */
     @Override
-    public byte[] decrypt(byte[] src, int offset) {
-        return encrypt(src, offset);
-    }
-
-    @Override
-    public int[] encrypt(int[] src, int offset) {
-        int[] ret = Bin.btoi(vector);
-
-        for (int i = 0; i < ret.length; i++) {
-            ret[i] ^= src[offset + i];
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        int vl = vector.length;
+        if (xp.size() > 0) {
+            System.arraycopy(encrypt(src, offset, vl), 0, dst, doffset, vl);
+            return;
+        }
+        block.encrypt(vector, 0, vector, 0);
+        for (int i = 0; i < vl; i++) {
+            dst[doffset + i] = (byte)(src[offset + i] ^ vector[i]);
         }
-
-        vector = block.encrypt(vector, 0);
-        return ret;
-    }
-
-    @Override
-    public int[] decrypt(int[] src, int offset) {
-        return encrypt(src,offset);
     }
 
     @Override
-    public long[] encrypt(long[] src, int offset) {
-        long[] ret = Bin.btol(vector);
-
-        for (int i = 0; i < ret.length; i++) {
-            ret[i] ^= src[offset + i];
-        }
-
-        vector = block.encrypt(vector, 0);
-        return ret;
+    public byte[] decrypt(byte[] src, int offset) {
+        return encrypt(src, offset);
     }
 
     @Override
-    public long[] decrypt(long[] src, int offset) {
-        return encrypt(src,offset);
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        encrypt(src, offset, dst, doffset);
     }
 }
@@ -26,6 +26,10 @@ import net.siisise.security.block.Block;
 public class PCBC extends BlockMode {
 
     byte[] vector;
+    /**
+     * 復号用 暗号ブロックの控え.
+     */
+    private byte[] back;
 
     public PCBC(Block b) {
         super(b);
@@ -39,30 +43,45 @@ public class PCBC extends BlockMode {
         byte[] iv = key[key.length - 1];
         vector = new byte[block.getBlockLength() / 8];
         System.arraycopy(iv, 0, vector, 0, vector.length > iv.length ? iv.length : vector.length);
+        back = new byte[vector.length];
     }
 
     @Override
     public byte[] encrypt(byte[] src, int offset) {
+        byte[] ret = new byte[vector.length];
+        encrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset) {
         for (int i = 0; i < vector.length; i++) {
             vector[i] ^= src[offset + i];
         }
-        byte[] ret = block.encrypt(vector, 0);
+        block.encrypt(vector, 0, vector, 0);
         for (int i = 0; i < vector.length; i++) {
-            vector[i] = (byte) (src[offset + i] ^ ret[i]);
+            byte c = vector[i];
+            vector[i] ^= src[offset + i];
+            dst[doffset + i] = c;
         }
-        return ret;
     }
 
     @Override
     public byte[] decrypt(byte[] src, int offset) {
-        byte[] ret = block.decrypt(src, offset);
-        for (int i = 0; i < vector.length; i++) {
-            ret[i] ^= vector[i];
-        }
+        byte[] ret = new byte[vector.length];
+        decrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        System.arraycopy(src, offset, back, 0, back.length);
+        block.decrypt(back, 0, dst, doffset);
         for (int i = 0; i < vector.length; i++) {
-            vector[i] = (byte) (ret[i] ^ src[offset + i]);
+            byte p = (byte)(dst[doffset + i] ^ vector[i]);
+            dst[doffset + i] = p;
+            vector[i] = (byte)(p ^ back[i]);
         }
-        return ret;
     }
 
     @Override
@@ -171,6 +171,36 @@ public class PKCS7Padding extends BlockMode {
         return block.decrypt(src, offset);
     }
 
+    @Override
+    public void encrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        block.encrypt(src, offset, dst, doffset);
+    }
+
+    @Override
+    public void encrypt(int[] src, int offset, int[] dst, int doffset) {
+        block.encrypt(src, offset, dst, doffset);
+    }
+
+    @Override
+    public void encrypt(long[] src, int offset, long[] dst, int doffset) {
+        block.encrypt(src, offset, dst, doffset);
+    }
+
+    @Override
+    public void decrypt(byte[] src, int offset, byte[] dst, int doffset) {
+        block.decrypt(src, offset, dst, doffset);
+    }
+
+    @Override
+    public void decrypt(int[] src, int offset, int[] dst, int doffset) {
+        block.decrypt(src, offset, dst, doffset);
+    }
+
+    @Override
+    public void decrypt(long[] src, int offset, long[] dst, int doffset) {
+        block.decrypt(src, offset, dst, doffset);
+    }
+
     @Override
     public byte[] doFinalEncrypt(byte[] src, int offset, int length) {
         Packet enc = new PacketA();
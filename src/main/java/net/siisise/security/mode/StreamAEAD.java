@@ -15,6 +15,8 @@
  */
 package net.siisise.security.mode;
 
+import java.nio.ByteBuffer;
+import java.util.List;
 import net.siisise.security.stream.Stream;
 
 /**
@@ -59,4 +61,167 @@ public interface StreamAEAD extends Stream {
     byte[] doFinalDecrypt();
     byte[] doFinalDecrypt(byte[] src);
     byte[] doFinalDecrypt(byte[] src, int offset, int length);
+
+    /**
+     * ByteBuffer 版.
+     * 暗号文とタグを dst に書く.
+     * @param src 平文
+     * @param dst 暗号文 + タグ 出力先
+     */
+    default void doFinalEncrypt(ByteBuffer src, ByteBuffer dst) {
+        byte[] s = new byte[src.remaining()];
+        src.get(s);
+        dst.put(doFinalEncrypt(s, 0, s.length));
+    }
+
+    /**
+     * ByteBuffer 版.
+     * @param src 暗号文 + タグ
+     * @param dst 平文出力先
+     */
+    default void doFinalDecrypt(ByteBuffer src, ByteBuffer dst) {
+        byte[] s = new byte[src.remaining()];
+        src.get(s);
+        dst.put(doFinalDecrypt(s, 0, s.length));
+    }
+
+    /**
+     * 一括処理の1件.
+     */
+    final class Record {
+
+        public final byte[] iv;
+        public final byte[] aad;
+        public final byte[] src;
+        public final int offset;
+        public final int length;
+
+        /**
+         * @param iv IV, nonce 使い捨て
+         * @param aad AAD
+         * @param src 平文 または 暗号文 + タグ
+         */
+        public Record(byte[] iv, byte[] aad, byte[] src) {
+            this(iv, aad, src, 0, src.length);
+        }
+
+        /**
+         * @param iv IV, nonce 使い捨て
+         * @param aad AAD
+         * @param src 平文 または 暗号文 + タグ
+         * @param offset 位置
+         * @param length 長さ
+         */
+        public Record(byte[] iv, byte[] aad, byte[] src, int offset, int length) {
+            this.iv = iv;
+            this.aad = aad == null ? new byte[0] : aad;
+            this.src = src;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * 一括処理の結果.
+     * 出力は1つの配列に続けて置く.
+     * 検証に失敗したものは長さ0.
+     */
+    final class Batch {
+
+        /**
+         * 出力
+         */
+        public final byte[] data;
+        /**
+         * 各出力の位置
+         */
+        public final int[] offsets;
+        /**
+         * 各出力の長さ
+         */
+        public final int[] lengths;
+        /**
+         * タグの検証結果 暗号化では常に true
+         */
+        public final boolean[] valid;
+
+        public Batch(byte[] data, int[] offsets, int[] lengths, boolean[] valid) {
+            this.data = data;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.valid = valid;
+        }
+
+        /**
+         * @param i 番号
+         * @return i番目の出力の複製
+         */
+        public byte[] get(int i) {
+            byte[] r = new byte[lengths[i]];
+            System.arraycopy(data, offsets[i], r, 0, r.length);
+            return r;
+        }
+    }
+
+    /**
+     * 鍵はそのままで IV と AAD を差し替える.
+     * @param iv IV, nonce 使い捨て
+     * @param aad AAD
+     */
+    void reset(byte[] iv, byte[] aad);
+
+    /**
+     * 同じ鍵でまとめて暗号化する.
+     * init で鍵を設定しておき, 1件ずつ reset して処理する.
+     * @param records IV, AAD, 平文
+     * @return 暗号文 + タグ を続けたもの
+     */
+    default Batch sealAll(List<Record> records) {
+        byte[][] outs = new byte[records.size()][];
+        boolean[] valid = new boolean[outs.length];
+        for (int i = 0; i < outs.length; i++) {
+            Record r = records.get(i);
+            reset(r.iv, r.aad);
+            outs[i] = doFinalEncrypt(r.src, r.offset, r.length);
+            valid[i] = true;
+        }
+        return batch(outs, valid);
+    }
+
+    /**
+     * 同じ鍵でまとめて復号, 検証する.
+     * @param records IV, AAD, 暗号文 + タグ
+     * @return 平文を続けたもの
+     */
+    default Batch openAll(List<Record> records) {
+        byte[][] outs = new byte[records.size()][];
+        boolean[] valid = new boolean[outs.length];
+        for (int i = 0; i < outs.length; i++) {
+            Record r = records.get(i);
+            reset(r.iv, r.aad);
+            try {
+                outs[i] = doFinalDecrypt(r.src, r.offset, r.length);
+                valid[i] = true;
+            } catch (IllegalStateException e) {
+                outs[i] = new byte[0];
+            }
+        }
+        return batch(outs, valid);
+    }
+
+    private static Batch batch(byte[][] outs, boolean[] valid) {
+        int[] offsets = new int[outs.length];
+        int[] lengths = new int[outs.length];
+        int total = 0;
+        for (int i = 0; i < outs.length; i++) {
+            offsets[i] = total;
+            lengths[i] = outs[i].length;
+            total += lengths[i];
+        }
+        byte[] data = new byte[total];
+        for (int i = 0; i < outs.length; i++) {
+            System.arraycopy(outs[i], 0, data, offsets[i], lengths[i]);
+        }
+        return new Batch(data, offsets, lengths, valid);
+    }
 }
@@ -15,69 +15,363 @@
  */
 package net.siisise.security.mode;
 
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 import net.siisise.lang.Bin;
-import net.siisise.math.GF;
+import net.siisise.security.block.AES;
 import net.siisise.security.block.Block;
+import net.siisise.security.block.CipherWrap;
 
 /**
- * NIST SP 800-38E ?
+ * NIST SP 800-38E
  * IEEE 1619-2018
  * ディスク等暗号化限定、2^20 ブロックまで
  * https://www.cryptrec.go.jp/exreport/cryptrec-ex-2902-2019.pdf
- * @deprecated まだ
+ *
+ * 鍵は Key1 (データ用) と Key2 (tweak用) を続けたもの.
+ * tweak はデータ単位 (セクタ) 番号を little endian 128bit にして Key2 で暗号化し,
+ * ブロックごとに α (x) を掛けて進める.
+ * ブロック長の倍数でないセクタは ciphertext stealing で処理する.
+ *
+ * encryptSector, decryptSector はセクタ単位で状態を持たないので複数スレッドから使える.
+ * encryptSectors, decryptSectors は連続するセクタを ForkJoinPool で並列に処理する.
  */
-@Deprecated
 public class XTS extends LongBlockMode {
-    int i;
-    long[] a;
-    GF gf;
-    long[] te;
 
+    /**
+     * tweak用
+     */
+    private final Block tweakBlock;
+    /**
+     * セクタ先頭の tweak. little endian の下位64bit, 上位64bit
+     */
+    private final long[] t0 = new long[2];
+    /**
+     * 現在の tweak.
+     */
+    private final long[] t = new long[2];
+    private boolean parallel;
+
+    /**
+     * AES 2つ.
+     */
+    public XTS() {
+        this(AES.newInstance(0), AES.newInstance(0));
+    }
+
+    /**
+     * tweak用に同じ暗号をもう1つ作る.
+     * @param block データ用暗号 引数なしのコンストラクタがあるもの
+     */
     public XTS(Block block) {
+        this(block, newBlock(block));
+    }
+
+    /**
+     * @param block データ用暗号
+     * @param tweakBlock tweak用暗号
+     */
+    public XTS(Block block, Block tweakBlock) {
         super(block);
+        this.tweakBlock = tweakBlock;
+        parallel = !(block instanceof CipherWrap);
     }
-    
+
+    private static Block newBlock(Block block) {
+        try {
+            return block.getClass().getConstructor().newInstance();
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException ex) {
+            throw new SecurityException(ex);
+        }
+    }
+
     /**
-     * K は 標準鍵2つぶん
-     * T は 128bitくらいのなにか
-     * @param params K, T
+     * K は 標準鍵2つぶん Key1, Key2
+     * T は データ単位番号 little endian 128bit. 省略すると 0
+     * @param params K, [T]
      */
     @Override
-    public void init(byte[][] params) {
+    public void init(byte[]... params) {
         byte[] k1 = new byte[params[0].length / 2];
         byte[] k2 = new byte[k1.length];
-        long[] t = Bin.btol(params[1]);
         System.arraycopy(params[0], 0, k1, 0, k1.length);
         System.arraycopy(params[0], k1.length, k2, 0, k2.length);
-        block.init(k2);
-        te = block.encrypt(t);
-        gf = new GF(128,GF.FF128);
-        a = new long[k1.length / 8];
-        a[a.length - 1] = 3;
         block.init(k1);
-        i = 0;
+        tweakBlock.init(k2);
+        byte[] tweak = new byte[16];
+        if (params.length > 1) {
+            System.arraycopy(params[1], 0, tweak, 0, Math.min(params[1].length, tweak.length));
+        }
+        tweak(tweak, t0);
+        setCount(0);
+    }
+
+    /**
+     * 並列処理の有無.
+     * 内側の暗号がスレッドセーフでない場合は false にする.
+     * @param parallel 複数セクタを並列で処理する
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
     }
-    
+
     /**
-     * 何ブロック目か指定する
-     * @param i 
+     * ブロック単位で使うときのセクタ番号を指定する.
+     * @param sectorNumber データ単位番号
+     */
+    public void setSector(long sectorNumber) {
+        tweak(sectorNumber, t0);
+        setCount(0);
+    }
+
+    /**
+     * 現在のセクタで何ブロック目か指定する
+     * @param i ブロック位置
      */
     public void setCount(int i) {
-        this.i = i;
+        t[0] = t0[0];
+        t[1] = t0[1];
+        for (int j = 0; j < i; j++) {
+            mulAlpha(t);
+        }
+    }
+
+    /**
+     * tweak の初期値 E(Key2, i).
+     * @param sectorNumber データ単位番号
+     * @param tw 出力 little endian 下位, 上位
+     */
+    private void tweak(long sectorNumber, long[] tw) {
+        long[] v = {Long.reverseBytes(sectorNumber), 0};
+        tweakBlock.encrypt(v, 0, v, 0);
+        tw[0] = Long.reverseBytes(v[0]);
+        tw[1] = Long.reverseBytes(v[1]);
+    }
+
+    /**
+     * tweak の初期値.
+     * @param i little endian 128bit
+     * @param tw 出力
+     */
+    private void tweak(byte[] i, long[] tw) {
+        long[] v = Bin.btol(i);
+        tweakBlock.encrypt(v, 0, v, 0);
+        tw[0] = Long.reverseBytes(v[0]);
+        tw[1] = Long.reverseBytes(v[1]);
+    }
+
+    /**
+     * tweak に α を掛ける.
+     * @param tw little endian 下位, 上位
+     */
+    private static void mulAlpha(long[] tw) {
+        long c = tw[1] >> 63;
+        tw[1] = (tw[1] << 1) | (tw[0] >>> 63);
+        tw[0] = (tw[0] << 1) ^ (c & 0x87);
     }
 
     @Override
     public long[] encrypt(long[] src, int offset) {
-        long[] tmp1 = gf.mul(te, gf.pow(a, i++));
-        long[] tmp2 = new long[tmp1.length];
-        Bin.xor(tmp1, 0, src, offset, tmp2);
-        tmp2 = block.encrypt(tmp2);
-        return Bin.xorl(tmp2, tmp1);
+        long[] ret = new long[2];
+        encrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    @Override
+    public void encrypt(long[] src, int offset, long[] dst, int doffset) {
+        long m0 = Long.reverseBytes(t[0]);
+        long m1 = Long.reverseBytes(t[1]);
+        dst[doffset] = src[offset] ^ m0;
+        dst[doffset + 1] = src[offset + 1] ^ m1;
+        block.encrypt(dst, doffset, dst, doffset);
+        dst[doffset] ^= m0;
+        dst[doffset + 1] ^= m1;
+        mulAlpha(t);
     }
 
     @Override
     public long[] decrypt(long[] src, int offset) {
-        return encrypt(src, offset);
+        long[] ret = new long[2];
+        decrypt(src, offset, ret, 0);
+        return ret;
+    }
+
+    @Override
+    public void decrypt(long[] src, int offset, long[] dst, int doffset) {
+        long m0 = Long.reverseBytes(t[0]);
+        long m1 = Long.reverseBytes(t[1]);
+        dst[doffset] = src[offset] ^ m0;
+        dst[doffset + 1] = src[offset + 1] ^ m1;
+        block.decrypt(dst, doffset, dst, doffset);
+        dst[doffset] ^= m0;
+        dst[doffset + 1] ^= m1;
+        mulAlpha(t);
+    }
+
+    /**
+     * 1セクタ暗号化.
+     * 同じ位置に書き戻す.
+     *
+     * @param sectorNumber データ単位番号
+     * @param buf 平文 / 暗号文
+     * @param off 位置
+     * @param len 長さ 16バイト以上
+     */
+    public void encryptSector(long sectorNumber, byte[] buf, int off, int len) {
+        sector(sectorNumber, buf, off, len, true);
+    }
+
+    /**
+     * 1セクタ復号.
+     * 同じ位置に書き戻す.
+     *
+     * @param sectorNumber データ単位番号
+     * @param buf 暗号文 / 平文
+     * @param off 位置
+     * @param len 長さ 16バイト以上
+     */
+    public void decryptSector(long sectorNumber, byte[] buf, int off, int len) {
+        sector(sectorNumber, buf, off, len, false);
+    }
+
+    /**
+     * 連続するセクタの暗号化.
+     * セクタごとに並列で処理する.
+     *
+     * @param sectorNumber 先頭のデータ単位番号
+     * @param sectorSize セクタ長
+     * @param buf 平文 / 暗号文
+     * @param off 位置
+     * @param len 長さ 最後のセクタは短くてもよい
+     */
+    public void encryptSectors(long sectorNumber, int sectorSize, byte[] buf, int off, int len) {
+        sectors(sectorNumber, sectorSize, buf, off, len, true);
+    }
+
+    /**
+     * 連続するセクタの復号.
+     * セクタごとに並列で処理する.
+     *
+     * @param sectorNumber 先頭のデータ単位番号
+     * @param sectorSize セクタ長
+     * @param buf 暗号文 / 平文
+     * @param off 位置
+     * @param len 長さ 最後のセクタは短くてもよい
+     */
+    public void decryptSectors(long sectorNumber, int sectorSize, byte[] buf, int off, int len) {
+        sectors(sectorNumber, sectorSize, buf, off, len, false);
+    }
+
+    private void sectors(long sectorNumber, int sectorSize, byte[] buf, int off, int len, boolean enc) {
+        if (sectorSize < 16) {
+            throw new IllegalArgumentException();
+        }
+        int count = (len + sectorSize - 1) / sectorSize;
+        if (!parallel || count < 2) {
+            for (int i = 0; i < count; i++) {
+                int o = i * sectorSize;
+                sector(sectorNumber + i, buf, off + o, Math.min(sectorSize, len - o), enc);
+            }
+            return;
+        }
+        // 1タスクあたり64KB程度にまとめる
+        int per = Math.max(1, 65536 / sectorSize);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i += per) {
+            int first = i;
+            int last = Math.min(count, i + per);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                for (int j = first; j < last; j++) {
+                    int o = j * sectorSize;
+                    sector(sectorNumber + j, buf, off + o, Math.min(sectorSize, len - o), enc);
+                }
+            }));
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    /**
+     * 1セクタ.
+     * tweak を並べてからまとめて内側の暗号に渡す.
+     * 端数は ciphertext stealing.
+     */
+    private void sector(long sectorNumber, byte[] buf, int off, int len, boolean enc) {
+        if (len < 16) {
+            throw new IllegalArgumentException();
+        }
+        int blocks = len / 16;
+        int r = len % 16;
+        // 端数があるときは最後の完全ブロックを別に処理する
+        int n = r > 0 ? blocks - 1 : blocks;
+        long[] tw = new long[2];
+        tweak(sectorNumber, tw);
+        long[] x = new long[n * 2];
+        long[] ts = new long[n * 2];
+        Bin.btol(buf, off, x, n * 2);
+        for (int i = 0; i < n * 2; i += 2) {
+            ts[i] = Long.reverseBytes(tw[0]);
+            ts[i + 1] = Long.reverseBytes(tw[1]);
+            x[i] ^= ts[i];
+            x[i + 1] ^= ts[i + 1];
+            mulAlpha(tw);
+        }
+        if (n > 0) {
+            if (enc) {
+                block.encrypt(x, 0, x, 0, n * 2);
+            } else {
+                block.decrypt(x, 0, x, 0, n * 2);
+            }
+            for (int i = 0; i < n * 2; i++) {
+                x[i] ^= ts[i];
+            }
+            Bin.ltob(x, buf, off);
+        }
+        if (r == 0) {
+            return;
+        }
+        // ciphertext stealing
+        int lo = off + n * 16; // 最後の完全ブロック
+        long[] tm1 = tw.clone();
+        mulAlpha(tw);
+        long[] tm = tw;
+        byte[] cc = new byte[16];
+        System.arraycopy(buf, lo, cc, 0, 16);
+        // 暗号化は m-1 番目を T(m-1), 復号は T(m) で先に処理する
+        one(cc, enc ? tm1 : tm, enc);
+        byte[] pp = cc.clone();
+        System.arraycopy(buf, lo + 16, pp, 0, r);
+        System.arraycopy(cc, 0, buf, lo + 16, r);
+        one(pp, enc ? tm : tm1, enc);
+        System.arraycopy(pp, 0, buf, lo, 16);
+    }
+
+    /**
+     * 1ブロック.
+     * @param b ブロック 上書きする
+     * @param tw tweak
+     * @param enc 暗号化
+     */
+    private void one(byte[] b, long[] tw, boolean enc) {
+        long[] v = Bin.btol(b);
+        long m0 = Long.reverseBytes(tw[0]);
+        long m1 = Long.reverseBytes(tw[1]);
+        v[0] ^= m0;
+        v[1] ^= m1;
+        if (enc) {
+            block.encrypt(v, 0, v, 0);
+        } else {
+            block.decrypt(v, 0, v, 0);
+        }
+        v[0] ^= m0;
+        v[1] ^= m1;
+        Bin.ltob(v, b, 0);
+    }
+
+    @Override
+    public int[] getParamLength() {
+        int[] pl = block.getParamLength();
+        return new int[] {pl[0] * 2, 128};
     }
-    
 }
@@ -38,18 +38,37 @@ public class MGFXOF implements MGF {
 
     /**
      * XOFの出力.
-     * 併用している場合もあるので元の設定を維持する.
+     * 出力長は変更しない.
      * @param seed
      * @param maskLen octet
      * @return 
      */
     @Override
     public byte[] generate(byte[] seed, long maskLen) {
-        long org = xof.getBitDigestLength();
-        xof.setDigestLength((int)maskLen);
-        byte[] digest = xof.digest(seed);
-        xof.setBitDigestLength(org);
-        return digest;
+        byte[] mask = new byte[(int)maskLen];
+        xof.update(seed);
+        xof.squeeze(mask, 0, mask.length);
+        xof.reset();
+        return mask;
+    }
+
+    /**
+     * マスクを作らずに少しずつ取り出して XOR する.
+     * @param src 対象
+     * @param seed 種
+     */
+    @Override
+    public void xorl(byte[] src, byte[] seed) {
+        byte[] m = new byte[Math.min(src.length, xof.getBitBlockLength() / 8)];
+        xof.update(seed);
+        for (int i = 0; i < src.length; i += m.length) {
+            int len = Math.min(m.length, src.length - i);
+            xof.squeeze(m, 0, len);
+            for (int j = 0; j < len; j++) {
+                src[i + j] ^= m[j];
+            }
+        }
+        xof.reset();
     }
     
 }
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2023 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.stream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import net.siisise.security.mode.GCM;
+
+/**
+ * 分割して GCM で暗号化する形式.
+ * STREAM (Online Authenticated-Encryption) 風.
+ *
+ * 平文を segmentSize ごとに区切り, それぞれ GCM で暗号化してタグを付ける.
+ * nonce は prefix 7バイト || セグメント番号 32bit || 最後のセグメントなら 1 の 12バイト.
+ * 切り詰め, 入れ替えは最後のセグメントの検証で失敗する.
+ * 平文が segmentSize の倍数のときも最後のセグメントは空にならない. 空の平文は空のセグメント1つ.
+ *
+ * セグメントは互いに独立しているので並列で処理でき, FileChannel では任意の位置から読める.
+ * 同時に処理するセグメント数は window まで.
+ */
+public class SegmentedGCM {
+
+    /**
+     * nonce prefix の長さ
+     */
+    public static final int PREFIX_LENGTH = 7;
+    /**
+     * タグの長さ
+     */
+    public static final int TAG_LENGTH = 16;
+
+    private final GCM.Key key;
+    private final byte[] prefix;
+    private final int segmentSize;
+    private final byte[] aad;
+    private final Executor executor;
+    private int window;
+
+    /**
+     * 64KB ごと, ForkJoinPool.commonPool で処理する.
+     * @param key AES の鍵 ファイルごとに使い捨てるか prefix を変える
+     * @param prefix nonce prefix 7バイト
+     */
+    public SegmentedGCM(byte[] key, byte[] prefix) {
+        this(new GCM.Key(key), prefix, 65536, new byte[0], ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param key GCM の鍵
+     * @param prefix nonce prefix 7バイト
+     * @param segmentSize 平文のセグメント長
+     * @param aad すべてのセグメントに付ける AAD
+     * @param executor 並列処理に使う
+     */
+    public SegmentedGCM(GCM.Key key, byte[] prefix, int segmentSize, byte[] aad, Executor executor) {
+        if (prefix.length != PREFIX_LENGTH) {
+            throw new IllegalStateException("prefix length");
+        }
+        if (segmentSize < 1) {
+            throw new IllegalStateException("segment size");
+        }
+        this.key = key;
+        this.prefix = prefix.clone();
+        this.segmentSize = segmentSize;
+        this.aad = aad.clone();
+        this.executor = executor;
+        window = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * 同時に処理するセグメント数.
+     * メモリはおよそ window * segmentSize 使う.
+     * @param window 1以上
+     */
+    public void setWindow(int window) {
+        this.window = Math.max(1, window);
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * @param index セグメント番号
+     * @param last 最後のセグメント
+     * @return nonce
+     */
+    private byte[] nonce(long index, boolean last) {
+        if (index < 0 || index > 0xffffffffl) {
+            throw new IllegalStateException("segment index");
+        }
+        byte[] nonce = new byte[12];
+        System.arraycopy(prefix, 0, nonce, 0, PREFIX_LENGTH);
+        nonce[7] = (byte) (index >>> 24);
+        nonce[8] = (byte) (index >>> 16);
+        nonce[9] = (byte) (index >>> 8);
+        nonce[10] = (byte) index;
+        nonce[11] = (byte) (last ? 1 : 0);
+        return nonce;
+    }
+
+    /**
+     * 1セグメント暗号化.
+     * 複数スレッドから呼べる.
+     * @param index セグメント番号
+     * @param last 最後のセグメント
+     * @param src 平文
+     * @param offset 位置
+     * @param length 長さ segmentSize 以下
+     * @return 暗号文 + タグ
+     */
+    public byte[] seal(long index, boolean last, byte[] src, int offset, int length) {
+        return key.newMessage(nonce(index, last), aad).doFinalEncrypt(src, offset, length);
+    }
+
+    /**
+     * 1セグメント復号.
+     * 複数スレッドから呼べる.
+     * @param index セグメント番号
+     * @param last 最後のセグメント
+     * @param src 暗号文 + タグ
+     * @param offset 位置
+     * @param length 長さ
+     * @return 平文
+     * @throws IllegalStateException 検証に失敗
+     */
+    public byte[] open(long index, boolean last, byte[] src, int offset, int length) {
+        if (length < TAG_LENGTH) {
+            throw new IllegalStateException("segment length");
+        }
+        return key.newMessage(nonce(index, last), aad).doFinalDecrypt(src, offset, length);
+    }
+
+    /**
+     * 暗号文の長さ.
+     * @param length 平文の長さ
+     * @return 暗号文の長さ
+     */
+    public long ciphertextSize(long length) {
+        return length + segments(length) * TAG_LENGTH;
+    }
+
+    /**
+     * 平文の長さ.
+     * @param length 暗号文の長さ
+     * @return 平文の長さ
+     * @throws IllegalStateException 長さが合わない
+     */
+    public long plaintextSize(long length) {
+        long seg = segmentSize + TAG_LENGTH;
+        long count = (length + seg - 1) / seg;
+        long size = length - count * TAG_LENGTH;
+        if (count == 0 || size < 0 || (size == 0 && count > 1) || length - (count - 1) * seg < TAG_LENGTH) {
+            throw new IllegalStateException("ciphertext length");
+        }
+        return size;
+    }
+
+    /**
+     * @param length 平文の長さ
+     * @return セグメント数
+     */
+    private long segments(long length) {
+        return Math.max(1, (length + segmentSize - 1) / segmentSize);
+    }
+
+    /**
+     * 暗号化しながら書き出す.
+     * close で最後のセグメントを書く.
+     * @param out 出力先
+     * @return 平文を書く OutputStream
+     */
+    public OutputStream newOutputStream(OutputStream out) {
+        return new SegmentedOutputStream(this, out);
+    }
+
+    /**
+     * 復号しながら読む.
+     * @param in 暗号文
+     * @return 平文を読む InputStream
+     */
+    public InputStream newInputStream(InputStream in) {
+        return new SegmentedInputStream(this, in);
+    }
+
+    /**
+     * executor で暗号化する.
+     */
+    CompletableFuture<byte[]> sealAsync(long index, boolean last, byte[] src, int length) {
+        return CompletableFuture.supplyAsync(() -> seal(index, last, src, 0, length), executor);
+    }
+
+    /**
+     * executor で復号する.
+     */
+    CompletableFuture<byte[]> openAsync(long index, boolean last, byte[] src, int length) {
+        return CompletableFuture.supplyAsync(() -> open(index, last, src, 0, length), executor);
+    }
+
+    /**
+     * 完了を待つ.
+     * @param f 処理中
+     * @return 結果
+     * @throws IOException 検証に失敗 など
+     */
+    static <T> T join(CompletableFuture<T> f) throws IOException {
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            Throwable c = e.getCause();
+            if (c instanceof IOException) {
+                throw (IOException) c;
+            }
+            throw new IOException(c);
+        }
+    }
+
+    /**
+     * ファイル全体の暗号化.
+     * セグメントごとに位置を指定して読み書きするので並列に処理する.
+     * out が長いときは切り詰める.
+     * @param in 平文 先頭から
+     * @param out 暗号文 先頭から
+     * @throws IOException 入出力
+     */
+    public void encrypt(FileChannel in, FileChannel out) throws IOException {
+        long size = in.size();
+        long count = segments(size);
+        long cseg = segmentSize + TAG_LENGTH;
+        each(count, i -> {
+            long pos = i * segmentSize;
+            byte[] p = new byte[(int) Math.min(segmentSize, size - pos)];
+            readFully(in, pos, p, p.length);
+            writeFully(out, i * cseg, seal(i, i == count - 1, p, 0, p.length));
+        });
+        out.truncate(ciphertextSize(size));
+    }
+
+    /**
+     * ファイル全体の復号.
+     * out が長いときは切り詰める.
+     * @param in 暗号文 先頭から
+     * @param out 平文 先頭から
+     * @throws IOException 入出力, 検証に失敗
+     */
+    public void decrypt(FileChannel in, FileChannel out) throws IOException {
+        long size = in.size();
+        long plain = plaintextSize(size);
+        long count = segments(plain);
+        long cseg = segmentSize + TAG_LENGTH;
+        each(count, i -> {
+            long pos = i * cseg;
+            byte[] c = new byte[(int) Math.min(cseg, size - pos)];
+            readFully(in, pos, c, c.length);
+            writeFully(out, i * segmentSize, open(i, i == count - 1, c, 0, c.length));
+        });
+        out.truncate(plain);
+    }
+
+    /**
+     * 平文の位置を指定して読む.
+     * 必要なセグメントのみ復号する.
+     * @param in 暗号文
+     * @param position 平文の位置
+     * @param dst 出力先
+     * @param offset 出力位置
+     * @param length 長さ
+     * @return 読めた長さ 終端は -1
+     * @throws IOException 入出力, 検証に失敗
+     */
+    public int read(FileChannel in, long position, byte[] dst, int offset, int length) throws IOException {
+        long size = in.size();
+        long plain = plaintextSize(size);
+        if (position >= plain) {
+            return length == 0 ? 0 : -1;
+        }
+        int len = (int) Math.min(length, plain - position);
+        long first = position / segmentSize;
+        long last = (position + len - 1) / segmentSize;
+        long count = segments(plain);
+        long cseg = segmentSize + TAG_LENGTH;
+        each(last - first + 1, j -> {
+            long i = first + j;
+            long pos = i * cseg;
+            byte[] c = new byte[(int) Math.min(cseg, size - pos)];
+            readFully(in, pos, c, c.length);
+            byte[] d = open(i, i == count - 1, c, 0, c.length);
+            long from = Math.max(position, i * segmentSize);
+            long to = Math.min(position + len, i * segmentSize + d.length);
+            System.arraycopy(d, (int) (from - i * segmentSize), dst, offset + (int) (from - position), (int) (to - from));
+        });
+        return len;
+    }
+
+    @FunctionalInterface
+    private interface Segment {
+        void run(long index) throws IOException;
+    }
+
+    /**
+     * window ずつ並列に処理する.
+     * @param count セグメント数
+     * @param seg 処理
+     * @throws IOException
+     */
+    private void each(long count, Segment seg) throws IOException {
+        for (long i = 0; i < count; i += window) {
+            List<CompletableFuture<Void>> fs = new ArrayList<>();
+            long end = Math.min(count, i + window);
+            for (long j = i; j < end; j++) {
+                long n = j;
+                fs.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        seg.run(n);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+            for (CompletableFuture<Void> f : fs) {
+                join(f);
+            }
+        }
+    }
+
+    private static void readFully(FileChannel ch, long pos, byte[] b, int length) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(b, 0, length);
+        while (bb.hasRemaining()) {
+            if (ch.read(bb, pos + bb.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel ch, long pos, byte[] b) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(b);
+        while (bb.hasRemaining()) {
+            ch.write(bb, pos + bb.position());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2023 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.stream;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * SegmentedGCM で復号しながら入力担当.
+ * 最後のセグメントを判定するため1セグメント先読みする.
+ * 切り詰められたものは読み終わりで IOException になる.
+ */
+public class SegmentedInputStream extends FilterInputStream {
+
+    private final SegmentedGCM gcm;
+    private final Deque<CompletableFuture<byte[]>> queue = new ArrayDeque<>();
+    /**
+     * 先読み中の暗号文
+     */
+    private byte[] next;
+    private long index;
+    private boolean eof;
+    private byte[] plain = new byte[0];
+    private int offset;
+
+    SegmentedInputStream(SegmentedGCM gcm, InputStream in) {
+        super(in);
+        this.gcm = gcm;
+    }
+
+    /**
+     * window まで暗号文を読んで復号に回す.
+     */
+    private void fill() throws IOException {
+        int seg = gcm.getSegmentSize() + SegmentedGCM.TAG_LENGTH;
+        if (next == null && !eof) {
+            next = in.readNBytes(seg);
+            if (next.length == 0) {
+                throw new IOException("empty");
+            }
+        }
+        while (!eof && queue.size() < gcm.getWindow()) {
+            byte[] c = next;
+            next = c.length < seg ? new byte[0] : in.readNBytes(seg);
+            boolean last = next.length == 0;
+            queue.add(gcm.openAsync(index++, last, c, c.length));
+            if (last) {
+                eof = true;
+                next = null;
+            }
+        }
+    }
+
+    /**
+     * 次の平文セグメントを用意する.
+     * @return 終端 false
+     */
+    private boolean segment() throws IOException {
+        while (offset >= plain.length) {
+            fill();
+            if (queue.isEmpty()) {
+                return false;
+            }
+            plain = SegmentedGCM.join(queue.poll());
+            offset = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!segment()) {
+            return -1;
+        }
+        return plain[offset++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] dst, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!segment()) {
+            return -1;
+        }
+        int l = Math.min(len, plain.length - offset);
+        System.arraycopy(plain, offset, dst, off, l);
+        offset += l;
+        return l;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long s = 0;
+        while (s < n && segment()) {
+            int l = (int) Math.min(n - s, plain.length - offset);
+            offset += l;
+            s += l;
+        }
+        return s;
+    }
+
+    @Override
+    public int available() {
+        return plain.length - offset;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.stream;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * SegmentedGCM で暗号化しながら出力担当.
+ * 最後のセグメントは close で書く.
+ */
+public class SegmentedOutputStream extends FilterOutputStream {
+
+    private final SegmentedGCM gcm;
+    private final Deque<CompletableFuture<byte[]>> queue = new ArrayDeque<>();
+    private byte[] buf;
+    private int length;
+    private long index;
+    private boolean closed;
+
+    SegmentedOutputStream(SegmentedGCM gcm, OutputStream out) {
+        super(out);
+        this.gcm = gcm;
+        buf = new byte[gcm.getSegmentSize()];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] src, int offset, int len) throws IOException {
+        if (closed) {
+            throw new IOException("closed");
+        }
+        while (len > 0) {
+            if (length == buf.length) { // 続きがあるので最後ではない
+                push(false);
+            }
+            int l = Math.min(len, buf.length - length);
+            System.arraycopy(src, offset, buf, length, l);
+            length += l;
+            offset += l;
+            len -= l;
+        }
+    }
+
+    /**
+     * バッファを暗号化に回す.
+     * window を超えたら古いものから書き出す.
+     */
+    private void push(boolean last) throws IOException {
+        queue.add(gcm.sealAsync(index++, last, buf, length));
+        buf = new byte[buf.length];
+        length = 0;
+        while (queue.size() >= gcm.getWindow()) {
+            out.write(SegmentedGCM.join(queue.poll()));
+        }
+    }
+
+    /**
+     * 暗号化の済んだセグメントを書き出す.
+     * 最後のセグメントは close まで保持する.
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!queue.isEmpty()) {
+            out.write(SegmentedGCM.join(queue.poll()));
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            push(true);
+            flush();
+        } finally {
+            buf = null;
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2023 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.block;
+
+import java.security.SecureRandom;
+import net.siisise.lang.Bin;
+import net.siisise.security.mode.CTR;
+import net.siisise.security.mode.GCM;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ビットスライスAES.
+ */
+public class AESBitsliceTest {
+
+    /**
+     * FIPS 197 Appendix C.
+     */
+    @Test
+    public void testFIPS197() {
+        System.out.println("FIPS 197 C");
+        byte[] plain = Bin.toByteArray("00112233445566778899aabbccddeeff");
+        String[] keys = {
+            "000102030405060708090a0b0c0d0e0f",
+            "000102030405060708090a0b0c0d0e0f1011121314151617",
+            "000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f"};
+        String[] ciphers = {
+            "69c4e0d86a7b0430d8cdb78070b4c55a",
+            "dda97ca4864cdfe06eaf70a0ec0d7191",
+            "8ea2b7ca516745bfeafc49904b496089"};
+        for (int i = 0; i < keys.length; i++) {
+            AESBitslice aes = new AESBitslice();
+            aes.init(Bin.toByteArray(keys[i]));
+            byte[] cipher = Bin.toByteArray(ciphers[i]);
+            assertArrayEquals(cipher, aes.encrypt(plain, 0));
+            assertArrayEquals(plain, aes.decrypt(cipher, 0));
+        }
+    }
+
+    /**
+     * テーブル版と同じ結果になること.
+     * 4ブロック単位の端数も含める.
+     */
+    @Test
+    public void testCompare() {
+        System.out.println("compare AES");
+        SecureRandom rnd = new SecureRandom();
+        for (int klen = 16; klen <= 32; klen += 8) {
+            byte[] key = new byte[klen];
+            rnd.nextBytes(key);
+            AES aes = new AES();
+            aes.init(key);
+            AESBitslice bs = new AESBitslice();
+            bs.init(key);
+            for (int blocks = 1; blocks <= 9; blocks++) {
+                byte[] src = new byte[blocks * 16];
+                rnd.nextBytes(src);
+                byte[] enc = aes.encrypt(src, 0, src.length);
+                assertArrayEquals(enc, bs.encrypt(src, 0, src.length));
+                assertArrayEquals(src, bs.decrypt(enc, 0, enc.length));
+                long[] lsrc = Bin.btol(src);
+                assertArrayEquals(enc, Bin.ltob(bs.encrypt(lsrc, 0, lsrc.length)));
+                assertArrayEquals(src, Bin.ltob(bs.decrypt(Bin.btol(enc), 0, lsrc.length)));
+            }
+        }
+    }
+
+    /**
+     * CTR, GCM で使う.
+     */
+    @Test
+    public void testMode() {
+        System.out.println("CTR GCM");
+        SecureRandom rnd = new SecureRandom();
+        byte[] key = new byte[16];
+        byte[] iv = new byte[16];
+        byte[] src = new byte[1000];
+        rnd.nextBytes(key);
+        rnd.nextBytes(iv);
+        rnd.nextBytes(src);
+
+        Block ctr = new CTR(new AES());
+        ctr.init(key, iv);
+        Block bctr = new CTR(new AESBitslice());
+        bctr.init(key, iv);
+        assertArrayEquals(ctr.encrypt(src, 0, src.length), bctr.encrypt(src, 0, src.length));
+
+        byte[] nonce = new byte[12];
+        rnd.nextBytes(nonce);
+        GCM gcm = new GCM(new AES());
+        gcm.init(key, nonce);
+        byte[] enc = gcm.encrypt(src, 0, src.length);
+        byte[] tag = gcm.tag();
+        GCM bgcm = new GCM(new AESBitslice());
+        bgcm.init(key, nonce);
+        assertArrayEquals(enc, bgcm.encrypt(src, 0, src.length));
+        assertArrayEquals(tag, bgcm.tag());
+    }
+
+    /**
+     * OID, システムプロパティでの選択.
+     */
+    @Test
+    public void testSelect() {
+        System.out.println("select");
+        String old = System.getProperty(AES.IMPL_PROPERTY);
+        try {
+            System.setProperty(AES.IMPL_PROPERTY, "bitslice");
+            assertTrue(AES.newInstance(128) instanceof AESBitslice);
+            System.clearProperty(AES.IMPL_PROPERTY);
+            assertTrue(AES.newInstance(128) instanceof AES);
+        } finally {
+            if (old != null) {
+                System.setProperty(AES.IMPL_PROPERTY, old);
+            }
+        }
+        byte[] key = new byte[16];
+        byte[] iv = new byte[16];
+        Block b = AESBitslice.toBlockPad(AES.AES128_CBC_PAD);
+        b.init(key, iv);
+        Block a = AES.toBlockPad(AES.AES128_CBC_PAD);
+        a.init(key, iv);
+        byte[] src = new byte[40];
+        assertArrayEquals(a.encrypt(src, 0, src.length), b.encrypt(src, 0, src.length));
+    }
+
+    /**
+     * CTR の速度比較.
+     */
+    @Test
+    public void testCTRSpeed() {
+        System.out.println("CTR speed");
+        int size = 16;
+        byte[] key = new byte[16];
+        byte[] iv = new byte[16];
+        byte[] src = new byte[size * 1024 * 1024];
+        Block[] blocks = {new AES(), new AESBitslice()};
+        byte[][] results = new byte[blocks.length][];
+        for (int loop = 0; loop < 3; loop++) {
+            for (int i = 0; i < blocks.length; i++) {
+                Block ctr = new CTR(blocks[i]);
+                long d = System.nanoTime();
+                ctr.init(key, iv);
+                results[i] = ctr.encrypt(src, 0, src.length);
+                long t = System.nanoTime() - d;
+                System.out.println(blocks[i].getClass().getSimpleName() + " CTR time : " + t);
+                System.out.println(" speed : " + (size * 8 * 1024 / (t / 1000 / 1000 + 1)) + "Mbps");
+            }
+            assertArrayEquals(results[0], results[1]);
+        }
+    }
+}
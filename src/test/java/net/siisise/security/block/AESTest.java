@@ -15,10 +15,12 @@
  */
 package net.siisise.security.block;
 
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.crypto.BadPaddingException;
@@ -29,8 +31,11 @@ import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import net.siisise.lang.Bin;
 import net.siisise.security.mode.CBC;
+import net.siisise.security.mode.CFB;
+import net.siisise.security.mode.CTR;
 import net.siisise.security.mode.ECB;
 import net.siisise.security.mode.GCM;
+import net.siisise.security.mode.OFB;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import org.junit.jupiter.api.Test;
@@ -432,4 +437,231 @@ public class AESTest {
         result = aes.encrypt(plain);
         assertArrayEquals(cipher, result);
     }
+
+    /**
+     * 出力先指定、同一配列上での暗号化.
+     * NIST SP 800-38A F.2.1 CBC, F.3.13 CFB128, F.4.1 OFB
+     */
+    @Test
+    public void testEncryptDst() {
+        System.out.println("encrypt dst");
+        byte[] key = Bin.toByteArray("2b7e151628aed2a6abf7158809cf4f3c");
+        byte[] iv = Bin.toByteArray("000102030405060708090a0b0c0d0e0f");
+        byte[] plain = Bin.toByteArray("6bc1bee22e409f96e93d7e117393172a"
+                + "ae2d8a571e03ac9c9eb76fac45af8e51"
+                + "30c81c46a35ce411e5fbc1191a0a52ef"
+                + "f69f2445df4f9b17ad2b417be66c3710");
+        byte[] cbc = Bin.toByteArray("7649abac8119b246cee98e9b12e9197d"
+                + "5086cb9b507219ee95db113a917678b2"
+                + "73bed6b8e3c1743b7116e69e22229516"
+                + "3ff1caa1681fac09120eca307586e1a7");
+        byte[] cfb = Bin.toByteArray("3b3fd92eb72dad20333449f8e83cfb4a"
+                + "c8a64537a0b3a93fcde3cdad9f1ce58b"
+                + "26751f67a3cbb140b1808cf187a4f4df"
+                + "c04b05357c5d1c0eeac4c66f9ff7f2e6");
+        byte[] ofb = Bin.toByteArray("3b3fd92eb72dad20333449f8e83cfb4a"
+                + "7789508d16918f03f53c52dac54ed825"
+                + "9740051e9c5fecf64344f7a82260edcc"
+                + "304c6528f659c77866a510d9c1d6ae5e");
+
+        Block[] modes = { new CBC(new AES()), new CFB(new AES()), new OFB(new AES()) };
+        byte[][] expResults = { cbc, cfb, ofb };
+        for (int m = 0; m < modes.length; m++) {
+            Block mode = modes[m];
+            mode.init(key, iv);
+            byte[] buf = plain.clone();
+            for (int i = 0; i < buf.length; i += 16) {
+                mode.encrypt(buf, i, buf, i);
+            }
+            assertArrayEquals(expResults[m], buf);
+
+            mode.init(key, iv);
+            long[] lbuf = Bin.btol(buf);
+            for (int i = 0; i < lbuf.length; i += 2) {
+                mode.decrypt(lbuf, i, lbuf, i);
+            }
+            assertArrayEquals(plain, Bin.ltob(lbuf));
+        }
+
+        // CFB ストリーム 端数あり
+        CFB stream = new CFB(new AES());
+        stream.init(key, iv);
+        byte[] enc = new byte[plain.length];
+        stream.encrypt(plain, 0, enc, 0, 5);
+        stream.encrypt(plain, 5, enc, 5, 27);
+        stream.encrypt(plain, 32, enc, 32, 32);
+        assertArrayEquals(cfb, enc);
+        stream.init(key, iv);
+        stream.decrypt(enc, 0, enc, 0, 21);
+        stream.decrypt(enc, 21, enc, 21, 43);
+        assertArrayEquals(plain, enc);
+
+        AES aes = new AES();
+        aes.init(key);
+        int[] ibuf = Bin.btoi(plain);
+        int[] iret = new int[ibuf.length];
+        for (int i = 0; i < ibuf.length; i += 4) {
+            aes.encrypt(ibuf, i, iret, i);
+            aes.decrypt(iret, i, ibuf, i);
+        }
+        assertArrayEquals(plain, Bin.itob(ibuf));
+        assertArrayEquals(aes.encrypt(plain), Bin.itob(iret));
+    }
+
+    /**
+     * 複数ブロックまとめた処理と1ブロックずつの処理の比較.
+     */
+    @Test
+    public void testBulk() {
+        System.out.println("bulk");
+        SecureRandom rnd = new SecureRandom();
+        for (int klen = 16; klen <= 32; klen += 8) {
+            byte[] key = new byte[klen];
+            rnd.nextBytes(key);
+            AES aes = new AES();
+            aes.init(key);
+            byte[] src = new byte[16 * 11];
+            rnd.nextBytes(src);
+            byte[] exp = new byte[src.length];
+            for (int i = 0; i < src.length; i += 16) {
+                aes.encrypt(src, i, exp, i);
+            }
+            assertArrayEquals(exp, aes.encrypt(src, 0, src.length));
+            assertArrayEquals(exp, Bin.ltob(aes.encrypt(Bin.btol(src), 0, src.length / 8)));
+            assertArrayEquals(src, aes.decrypt(exp, 0, exp.length));
+            long[] lbuf = Bin.btol(exp);
+            aes.decrypt(lbuf, 0, lbuf, 0, lbuf.length);
+            assertArrayEquals(src, Bin.ltob(lbuf));
+
+            byte[] iv = new byte[16];
+            rnd.nextBytes(iv);
+            CBC cbc = new CBC(new AES());
+            cbc.init(key, iv);
+            byte[] enc = cbc.encrypt(src, 0, src.length);
+            cbc.init(key, iv);
+            byte[] dec = new byte[enc.length];
+            for (int i = 0; i < enc.length; i += 16) {
+                cbc.decrypt(enc, i, dec, i);
+            }
+            assertArrayEquals(src, dec);
+            cbc.init(key, iv);
+            assertArrayEquals(src, cbc.decrypt(enc, 0, enc.length));
+        }
+    }
+
+    /**
+     * NIST SP 800-38A F.5.1 CTR-AES128.
+     * 途中から復号する.
+     */
+    @Test
+    public void testCTRSeek() {
+        System.out.println("CTR seek");
+        byte[] key = Bin.toByteArray("2b7e151628aed2a6abf7158809cf4f3c");
+        byte[] counter = Bin.toByteArray("f0f1f2f3f4f5f6f7f8f9fafbfcfdfeff");
+        byte[] plain = Bin.toByteArray("6bc1bee22e409f96e93d7e117393172a"
+                + "ae2d8a571e03ac9c9eb76fac45af8e51"
+                + "30c81c46a35ce411e5fbc1191a0a52ef"
+                + "f69f2445df4f9b17ad2b417be66c3710");
+        byte[] cipher = Bin.toByteArray("874d6191b620e3261bef6864990db6ce"
+                + "9806f66b7970fdff8617187bb9fffdff"
+                + "5ae4df3edbd5d35e5b4f09020db03eab"
+                + "1e031dda2fbe03d1792170a0f3009cee");
+        CTR ctr = new CTR(new AES());
+        ctr.init(key, counter);
+        assertArrayEquals(cipher, ctr.encrypt(plain, 0, plain.length));
+
+        ctr.setCounter(counter);
+        ctr.skip(2);
+        assertArrayEquals(Arrays.copyOfRange(plain, 32, 64), ctr.decrypt(cipher, 32, 32));
+
+        // ブロックの途中から
+        ctr.setCounter(counter);
+        ctr.decrypt(cipher, 0, 5);
+        ctr.skip(1);
+        assertArrayEquals(Arrays.copyOfRange(plain, 21, 64), ctr.decrypt(cipher, 21, 43));
+
+        // 並列処理と同じ結果
+        byte[] src = new byte[16 * 20000 + 7];
+        new SecureRandom().nextBytes(src);
+        ctr.init(key, counter);
+        byte[] enc = ctr.encrypt(src, 0, src.length);
+        ctr.init(key, counter);
+        ctr.setParallel(false);
+        assertArrayEquals(enc, ctr.encrypt(src, 0, src.length));
+    }
+
+    /**
+     * CBC, CFB の並列復号.
+     * 1ブロックずつの復号, 同じ配列での復号と同じ結果になること.
+     */
+    @Test
+    public void testParallelDecrypt() {
+        System.out.println("parallel decrypt");
+        SecureRandom rnd = new SecureRandom();
+        byte[] key = new byte[16];
+        byte[] iv = new byte[16];
+        byte[] src = new byte[16 * 20000];
+        rnd.nextBytes(key);
+        rnd.nextBytes(iv);
+        rnd.nextBytes(src);
+        Block[] modes = {new CBC(new AES()), new CFB(new AES())};
+        for (Block mode : modes) {
+            mode.init(key, iv);
+            byte[] enc = mode.encrypt(src, 0, src.length);
+            mode.init(key, iv);
+            assertArrayEquals(src, mode.decrypt(enc, 0, enc.length));
+            byte[] buf = enc.clone();
+            mode.init(key, iv);
+            mode.decrypt(buf, 0, buf, 0, buf.length);
+            assertArrayEquals(src, buf);
+            mode.init(key, iv);
+            byte[] dec = new byte[src.length];
+            for (int i = 0; i < enc.length; i += 16) {
+                mode.decrypt(enc, i, dec, i);
+            }
+            assertArrayEquals(src, dec);
+        }
+    }
+
+    /**
+     * ByteBuffer 版.
+     * NIST SP 800-38A F.2.1 CBC, F.5.1 CTR を direct buffer で同じ領域に処理する.
+     */
+    @Test
+    public void testByteBuffer() {
+        System.out.println("ByteBuffer");
+        byte[] key = Bin.toByteArray("2b7e151628aed2a6abf7158809cf4f3c");
+        byte[] plain = Bin.toByteArray("6bc1bee22e409f96e93d7e117393172a"
+                + "ae2d8a571e03ac9c9eb76fac45af8e51"
+                + "30c81c46a35ce411e5fbc1191a0a52ef"
+                + "f69f2445df4f9b17ad2b417be66c3710");
+        byte[][] ivs = {Bin.toByteArray("000102030405060708090a0b0c0d0e0f"),
+            Bin.toByteArray("f0f1f2f3f4f5f6f7f8f9fafbfcfdfeff")};
+        byte[][] exps = {Bin.toByteArray("7649abac8119b246cee98e9b12e9197d"
+                + "5086cb9b507219ee95db113a917678b2"
+                + "73bed6b8e3c1743b7116e69e22229516"
+                + "3ff1caa1681fac09120eca307586e1a7"),
+            Bin.toByteArray("874d6191b620e3261bef6864990db6ce"
+                + "9806f66b7970fdff8617187bb9fffdff"
+                + "5ae4df3edbd5d35e5b4f09020db03eab"
+                + "1e031dda2fbe03d1792170a0f3009cee")};
+        Block[] modes = {new CBC(new AES()), new CTR(new AES())};
+        for (int m = 0; m < modes.length; m++) {
+            Block mode = modes[m];
+            mode.init(key, ivs[m]);
+            ByteBuffer buf = ByteBuffer.allocateDirect(plain.length);
+            buf.put(plain).flip();
+            mode.encrypt(buf, buf);
+            assertEquals(plain.length, buf.position());
+            byte[] enc = new byte[plain.length];
+            buf.flip();
+            buf.get(enc);
+            assertArrayEquals(exps[m], enc);
+
+            mode.init(key, ivs[m]);
+            ByteBuffer dst = ByteBuffer.allocate(plain.length);
+            mode.decrypt(ByteBuffer.wrap(enc), dst);
+            assertArrayEquals(plain, dst.array());
+        }
+    }
 }
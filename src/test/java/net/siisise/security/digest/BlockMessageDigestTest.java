@@ -0,0 +1,136 @@
+/*
+ * Copyright 2023 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.digest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * BlockMessageDigest 共通機能
+ */
+public class BlockMessageDigestTest {
+
+    /**
+     * 共通の前置きを snapshot から再利用する.
+     */
+    @Test
+    public void testSnapshot() throws CloneNotSupportedException {
+        System.out.println("snapshot");
+        Random rnd = new Random(20);
+        byte[] prefix = new byte[300];
+        rnd.nextBytes(prefix);
+        List<Supplier<BlockMessageDigest>> list = Arrays.asList(SHA1::new, SHA224::new, SHA256::new, SHA384::new, SHA512::new,
+                MD5::new, () -> new SHA3(256), () -> new SHAKE(128), () -> new ParallelHash128(16, 256, "S"));
+        for (Supplier<BlockMessageDigest> s : list) {
+            BlockMessageDigest md = s.get();
+            md.update(prefix, 0, 100);
+            md.update(prefix, 100, 101);
+            BlockMessageDigest snap = md.snapshot();
+            for (int len = 0; len < 200; len += 37) {
+                byte[] suffix = new byte[len];
+                rnd.nextBytes(suffix);
+                md.restore(snap);
+                md.update(suffix);
+                BlockMessageDigest f = s.get();
+                f.update(prefix, 0, 201);
+                f.update(suffix);
+                assertArrayEquals(f.digest(), md.digest(), md.getAlgorithm());
+            }
+            BlockMessageDigest c = snap.clone();
+            snap.update(prefix);
+            c.update(prefix);
+            assertArrayEquals(snap.digest(), c.digest(), md.getAlgorithm());
+        }
+    }
+
+    /**
+     * direct buffer からの入力が配列と同じになること.
+     */
+    @Test
+    public void testByteBuffer() {
+        System.out.println("ByteBuffer");
+        List<Supplier<BlockMessageDigest>> mds = List.of(SHA256::new, SHA224::new, SHA512::new, SHA384::new,
+                SHA1::new, MD5::new, MD4::new, MD2::new, SHA3256::new, SHAKE128::new, () -> new TupleHash128(256, ""));
+        Random rnd = new Random(22);
+        byte[] src = new byte[5000];
+        rnd.nextBytes(src);
+        ByteBuffer direct = ByteBuffer.allocateDirect(src.length + 3).order(ByteOrder.LITTLE_ENDIAN);
+        direct.position(3);
+        direct.put(src);
+        for (Supplier<BlockMessageDigest> s : mds) {
+            for (int n = 0; n < 20; n++) {
+                int a = rnd.nextInt(300);
+                int b = a + rnd.nextInt(src.length - a);
+                BlockMessageDigest md = s.get();
+                md.update(src, 0, a);
+                md.update(src, a, b - a);
+                md.update(src, b, src.length - b);
+                byte[] expected = md.digest();
+
+                md = s.get(); // cSHAKE 系は使い捨て
+                direct.limit(3 + a).position(3);
+                md.update(direct);
+                assertEquals(3 + a, direct.position());
+                direct.limit(3 + b).position(3 + a);
+                md.update(direct);
+                direct.limit(3 + src.length).position(3 + b);
+                md.update(direct);
+                assertArrayEquals(expected, md.digest(), md.getAlgorithm());
+            }
+        }
+    }
+
+    /**
+     * 窓をまたいで map したファイルが配列と同じになること.
+     */
+    @Test
+    public void testFile() throws IOException {
+        System.out.println("digest file");
+        Path path = Files.createTempFile("digest", ".bin");
+        try {
+            byte[] src = new byte[300000];
+            new Random(23).nextBytes(src);
+            Files.write(path, src);
+            BlockMessageDigest[] mds = {new SHA256(), new SHA512(), new SHA3512(), new MD5()};
+            for (BlockMessageDigest md : mds) {
+                byte[] expected = md.digest(src);
+                assertArrayEquals(expected, md.digest(path), md.getAlgorithm());
+                try (FileChannel ch = FileChannel.open(path)) {
+                    md.update(ch, 70001);
+                    assertEquals(src.length, ch.position());
+                }
+                assertArrayEquals(expected, md.digest(), md.getAlgorithm());
+                try (FileChannel ch = FileChannel.open(path)) {
+                    md.update(src, 0, src.length - 1000);
+                    ch.position(src.length - 1000);
+                    assertArrayEquals(expected, md.digest(ch), md.getAlgorithm());
+                }
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.digest;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import net.siisise.lang.Bin;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * CRC-32, CRC-32C
+ */
+public class CRCTest {
+
+    @Test
+    public void testCheck() {
+        System.out.println("CRC check");
+        byte[] src = "123456789".getBytes();
+        assertArrayEquals(Bin.toByteArray("cbf43926"), new CRC().digest(src));
+        assertArrayEquals(Bin.toByteArray("e3069283"), new CRC32C().digest(src));
+    }
+
+    /**
+     * java.util.zip と同じになること.
+     */
+    @Test
+    public void testJDK() {
+        System.out.println("CRC JDK");
+        Random rnd = new Random(25);
+        CRC[] crcs = {new CRC(), new CRC32C()};
+        Checksum[] jdks = {new CRC32(), new java.util.zip.CRC32C()};
+        for (int k = 0; k < crcs.length; k++) {
+            for (int n = 0; n < 50; n++) {
+                byte[] src = new byte[rnd.nextInt(2000)];
+                rnd.nextBytes(src);
+                jdks[k].reset();
+                jdks[k].update(src, 0, src.length);
+                byte[] expected = Bin.toByteArray(String.format("%08x", jdks[k].getValue()));
+                int a = rnd.nextInt(src.length + 1);
+                crcs[k].update(src, 0, a);
+                crcs[k].update(src, a, src.length - a);
+                assertArrayEquals(expected, crcs[k].digest());
+                for (byte b : src) {
+                    crcs[k].update(b);
+                }
+                assertArrayEquals(expected, crcs[k].digest());
+                ByteBuffer direct = ByteBuffer.allocateDirect(src.length);
+                direct.put(src).flip();
+                crcs[k].update(direct);
+                assertArrayEquals(expected, crcs[k].digest());
+            }
+        }
+    }
+
+    /**
+     * 分けて計算したものをつなげる.
+     */
+    @Test
+    public void testCombine() {
+        System.out.println("CRC combine");
+        Random rnd = new Random(26);
+        for (CRC crc : new CRC[] {new CRC(), new CRC32C()}) {
+            for (int n = 0; n < 30; n++) {
+                byte[] src = new byte[rnd.nextInt(5000)];
+                rnd.nextBytes(src);
+                byte[] expected = crc.digest(src);
+                int a = rnd.nextInt(src.length + 1);
+                crc.update(src, 0, a);
+                byte[] ca = crc.digest();
+                crc.update(src, a, src.length - a);
+                byte[] cb = crc.digest();
+                assertArrayEquals(expected, crc.combine(ca, cb, src.length - a));
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2023 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.digest;
+
+import net.siisise.iso.asn1.tag.OBJECTIDENTIFIER;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 名前, OID の対応
+ */
+public class DigestAlgorithmTest {
+
+    /**
+     * 名前, 別名, OID から同じものが引けること.
+     */
+    @Test
+    public void testGetInstance() {
+        System.out.println("getInstance");
+        String[][] names = {
+            {"SHA-256", "SHA256", "sha-256", "2.16.840.1.101.3.4.2.1"},
+            {"SHA-1", "SHA1", "1.3.14.3.2.26"},
+            {"SHA-512/256", "SHA512/256", "SHA512256", "2.16.840.1.101.3.4.2.6"},
+            {"SHA3-256", "SHA3256", "2.16.840.1.101.3.4.2.8"},
+            {"MD5", "md5", "1.2.840.113549.2.5"}
+        };
+        byte[] src = "abc".getBytes();
+        for (String[] alias : names) {
+            byte[] expected = BlockMessageDigest.getInstance(alias[0]).digest(src);
+            for (String name : alias) {
+                BlockMessageDigest md = BlockMessageDigest.getInstance(name);
+                assertArrayEquals(expected, md.digest(src), name);
+                assertNotSame(md, BlockMessageDigest.getInstance(name));
+                assertNotNull(DigestAlgorithm.toOID(md), name);
+            }
+        }
+        assertEquals(DigestAlgorithm.id_sha1, DigestAlgorithm.toOID(new SHA1()));
+        assertEquals("SHA-256", DigestAlgorithm.getAlgorithm(new OBJECTIDENTIFIER("2.16.840.1.101.3.4.2.1")).getAlgorithm());
+        assertThrows(UnsupportedOperationException.class, () -> BlockMessageDigest.getInstance("SHA-999"));
+        assertThrows(UnsupportedOperationException.class, () -> BlockMessageDigest.getInstance("SHA3-x"));
+    }
+}
@@ -16,6 +16,9 @@
 package net.siisise.security.digest;
 
 import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
 import net.siisise.lang.Bin;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import org.junit.jupiter.api.Test;
@@ -51,4 +54,28 @@ public class MD5Test {
         assertArrayEquals(Bin.toByteArray("57edf4a22be3c955ac49da2e2107b67a"), d);
     }
 
+    /**
+     * 分けて入力しても JDK と同じになること.
+     * パディングが2ブロックにまたがる長さを含む.
+     */
+    @Test
+    public void testSplit() throws NoSuchAlgorithmException {
+        System.out.println("MD5 split:");
+        Random rnd = new Random(5);
+        String[] names = {"MD5", "SHA-1", "SHA-256", "SHA-512"};
+        MessageDigest[] mds = {new MD5(), new SHA1(), new SHA256(), new SHA512()};
+        for (int n = 0; n < names.length; n++) {
+            MessageDigest jdk = MessageDigest.getInstance(names[n]);
+            for (int len = 0; len < 300; len++) {
+                byte[] m = new byte[len];
+                rnd.nextBytes(m);
+                int cut = rnd.nextInt(len + 1);
+                for (int i = 0; i < cut; i++) {
+                    mds[n].update(m[i]);
+                }
+                mds[n].update(m, cut, len - cut);
+                assertArrayEquals(jdk.digest(m), mds[n].digest(), names[n] + " " + len);
+            }
+        }
+    }
 }
@@ -151,4 +151,51 @@ public class ParallelHashTest {
         byte[] result = instance.digest();
         assertArrayEquals(expResult, result);
     }
+    /**
+     * 並列に計算しても Sample と同じになること.
+     */
+    @Test
+    public void testParallelSample() {
+        System.out.println("testParallelHash parallel Sample");
+        String S = "Parallel Data";
+        byte[] src = Bin.toByteArray("000102030405060708090A0B10111213"
+                + "1415161718191A1B2021222324252627"
+                + "28292A2B303132333435363738393A3B"
+                + "404142434445464748494A4B50515253"
+                + "5455565758595A5B");
+        ParallelHash instance = new ParallelHash128(12, 256, S);
+        instance.setParallelThreshold(2);
+        instance.update(src, 0, 5);
+        instance.update(src, 5, src.length - 5);
+        assertArrayEquals(Bin.toByteArray("f7fd5312896c6685c828af7e2adb97e393e7f8d54e3c2ea4b95e5aca3796e8fc"), instance.digest());
+        instance = new ParallelHashXOF256(12, 512, S);
+        instance.setParallelThreshold(2);
+        instance.update(src);
+        byte[] seq = new ParallelHashXOF256(12, 512, S).digest(src);
+        assertArrayEquals(seq, instance.digest());
+    }
+
+    /**
+     * 長いデータで逐次と同じになること.
+     */
+    @Test
+    public void testParallel() {
+        System.out.println("testParallelHash parallel");
+        byte[] src = new byte[1024 * 1024 + 100];
+        new java.util.Random(1).nextBytes(src);
+        ParallelHash seq = new ParallelHash256(1000, 512, "S");
+        seq.setParallelThreshold(Integer.MAX_VALUE);
+        long d = System.nanoTime();
+        byte[] expResult = seq.digest(src);
+        long t1 = System.nanoTime() - d;
+        ParallelHash par = new ParallelHash256(1000, 512, "S");
+        par.setParallelThreshold(4);
+        d = System.nanoTime();
+        par.update(src, 0, 1500);
+        par.update(src, 1500, src.length - 1500);
+        byte[] result = par.digest();
+        long t2 = System.nanoTime() - d;
+        System.out.println("sequential : " + t1 / 1000 + "us parallel : " + t2 / 1000 + "us");
+        assertArrayEquals(expResult, result);
+    }
 }
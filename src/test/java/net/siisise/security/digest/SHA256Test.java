@@ -19,6 +19,7 @@ import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Security;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.siisise.lang.Bin;
@@ -115,4 +116,86 @@ public class SHA256Test {
         
     }
     
+    /**
+     * JDK と同じ結果になること.
+     */
+    @Test
+    public void testJDK() throws NoSuchAlgorithmException {
+        Random rnd = new Random(256);
+        MessageDigest jdk256 = MessageDigest.getInstance("SHA-256");
+        MessageDigest jdk224 = MessageDigest.getInstance("SHA-224");
+        MessageDigest sha256 = new SHA256();
+        MessageDigest sha224 = new SHA224();
+        for (int len = 0; len < 300; len += 7) {
+            byte[] src = new byte[len];
+            rnd.nextBytes(src);
+            assertArrayEquals(jdk256.digest(src), sha256.digest(src));
+            assertArrayEquals(jdk224.digest(src), sha224.digest(src));
+        }
+    }
+
+    /**
+     * 展開前のループ版.
+     */
+    static class SHA256Loop extends SHA256 {
+
+        private final int[] w = new int[64];
+
+        private static int rotr(int x, int n) {
+            return Integer.rotateRight(x, n);
+        }
+
+        @Override
+        public void blockWrite(byte[] in, int offset, int length) {
+            int a = H[0], b = H[1], c = H[2], d = H[3], e = H[4], f = H[5], g = H[6], h = H[7];
+            Bin.btoi(in, offset, w, 16);
+            for (int t = 16; t < 64; t++) {
+                int s0 = rotr(w[t - 15], 7) ^ rotr(w[t - 15], 18) ^ (w[t - 15] >>> 3);
+                int s1 = rotr(w[t - 2], 17) ^ rotr(w[t - 2], 19) ^ (w[t - 2] >>> 10);
+                w[t] = s1 + w[t - 7] + s0 + w[t - 16];
+            }
+            for (int t = 0; t < 64; t++) {
+                int temp1 = h + (rotr(e, 6) ^ rotr(e, 11) ^ rotr(e, 25)) + ((e & f) ^ (~e & g)) + K[t] + w[t];
+                int temp2 = (rotr(a, 2) ^ rotr(a, 13) ^ rotr(a, 22)) + ((a & b) ^ (a & c) ^ (b & c));
+                h = g;
+                g = f;
+                f = e;
+                e = d + temp1;
+                d = c;
+                c = b;
+                b = a;
+                a = temp1 + temp2;
+            }
+            H[0] += a;
+            H[1] += b;
+            H[2] += c;
+            H[3] += d;
+            H[4] += e;
+            H[5] += f;
+            H[6] += g;
+            H[7] += h;
+        }
+    }
+
+    /**
+     * ループ版, JDK との速度比較.
+     */
+    @Test
+    public void testSpeed() throws NoSuchAlgorithmException {
+        System.out.println("SHA-256 speed");
+        int size = 32;
+        byte[] src = new byte[size * 1024 * 1024];
+        MessageDigest[] mds = {new SHA256(), new SHA256Loop(), MessageDigest.getInstance("SHA-256")};
+        String[] names = {"SHA256", "SHA256 loop", "JDK"};
+        byte[] r = mds[2].digest(src);
+        for (int loop = 0; loop < 3; loop++) {
+            for (int i = 0; i < mds.length; i++) {
+                long d = System.nanoTime();
+                byte[] h = mds[i].digest(src);
+                long t = System.nanoTime() - d;
+                System.out.println(names[i] + " time : " + t + " speed : " + (size * 8 * 1024 / (t / 1000 / 1000 + 1)) + "Mbps");
+                assertArrayEquals(r, h);
+            }
+        }
+    }
 }
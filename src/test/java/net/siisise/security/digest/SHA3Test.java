@@ -18,12 +18,14 @@ package net.siisise.security.digest;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Provider;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import net.siisise.lang.Bin;
 import net.siisise.security.SiisiseJCA;
 import static org.junit.jupiter.api.Assertions.*;
@@ -402,4 +404,46 @@ public class SHA3Test {
             in.close();
         }
     }
+    /**
+     * 分けて入力しても JDK と同じになること. ビット入力を挟む.
+     */
+    @Test
+    public void testSplit() throws NoSuchAlgorithmException {
+        System.out.println("SHA3 split");
+        Random rnd = new Random(3);
+        MessageDigest jdk = MessageDigest.getInstance("SHA3-256");
+        SHA3 sha = new SHA3(256);
+        for (int n = 0; n < 300; n++) {
+            byte[] m = new byte[rnd.nextInt(700)];
+            rnd.nextBytes(m);
+            int cut = rnd.nextInt(m.length + 1);
+            sha.update(m, 0, cut);
+            if (n % 2 == 0 && cut < m.length) {
+                sha.writeBit(m, cut * 8l, 3); // バイト単位でなくなる
+                sha.writeBit(m, cut * 8l + 3, 5);
+                cut++;
+            }
+            sha.update(m, cut, m.length - cut);
+            assertArrayEquals(jdk.digest(m), sha.digest());
+        }
+    }
+
+    /**
+     * JDK との速度比較.
+     */
+    @Test
+    public void testSpeed() throws NoSuchAlgorithmException {
+        System.out.println("SHA3 speed");
+        int size = 16;
+        byte[] src = new byte[size * 1024 * 1024];
+        MessageDigest[] mds = {new SHA3(256), MessageDigest.getInstance("SHA3-256")};
+        for (int loop = 0; loop < 3; loop++) {
+            for (MessageDigest md : mds) {
+                long d = System.nanoTime();
+                md.digest(src);
+                long t = System.nanoTime() - d;
+                System.out.println(md.getClass().getSimpleName() + " speed : " + (size * 8 * 1024 / (t / 1000 / 1000 + 1)) + "Mbps");
+            }
+        }
+    }
 }
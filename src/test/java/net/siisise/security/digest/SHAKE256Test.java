@@ -3,9 +3,12 @@ package net.siisise.security.digest;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
 import net.siisise.io.BigBitPacket;
 import net.siisise.lang.Bin;
 import org.junit.jupiter.api.Test;
@@ -144,4 +147,72 @@ public class SHAKE256Test {
             in.close();
         }
     }
+
+    /**
+     * 分けて取り出しても続けて取り出したものと同じになること.
+     */
+    @Test
+    public void testSqueeze() {
+        System.out.println("squeeze");
+        Random rnd = new Random(24);
+        byte[] msg = new byte[300];
+        rnd.nextBytes(msg);
+        int total = 136 * 5 + 13;
+        List<Supplier<XOF>> xofs = List.of(() -> new SHAKE256(total * 8l), () -> new SHAKE128(total * 8l),
+                () -> new ParallelHashXOF256(64, total * 8, "S"), () -> new TupleHashXOF256(total * 8, "S"),
+                () -> new cSHAKE256(total * 8, "N", "S"));
+        for (Supplier<XOF> s : xofs) {
+            XOF xof = s.get();
+            xof.setDigestLength(total);
+            byte[] expected = xof.digest(msg);
+            for (int n = 0; n < 10; n++) {
+                xof = s.get();
+                xof.setDigestLength(total);
+                xof.update(msg);
+                byte[] out = new byte[total];
+                int split = total - 40;
+                int offset = 0;
+                while (offset < split) {
+                    int len = rnd.nextInt(Math.min(200, split - offset) + 1);
+                    xof.squeeze(out, offset, len);
+                    offset += len;
+                }
+                byte[] rest = xof.digest(); // 続きを出力長分
+                System.arraycopy(rest, 0, out, split, total - split);
+                assertArrayEquals(expected, out);
+            }
+        }
+        SHAKE256 shake = new SHAKE256(256);
+        shake.squeeze(new byte[1], 0, 1);
+        assertThrows(IllegalStateException.class, () -> shake.update(msg));
+        shake.reset();
+        shake.update(msg);
+    }
+
+    /**
+     * read が続けて出力したものと同じで, 出力済みの残りが複製, restore と共有されないこと.
+     */
+    @Test
+    public void testCloneRead() throws CloneNotSupportedException {
+        System.out.println("clone read");
+        byte[] msg = new byte[100];
+        new Random(20).nextBytes(msg);
+        SHAKE256 shake = new SHAKE256(8000);
+        shake.update(msg);
+        byte[] head = new byte[10];
+        shake.read(head, 0, head.length);
+        SHAKE256 copy = (SHAKE256) shake.clone();
+        BlockMessageDigest snap = shake.snapshot();
+        byte[] a = new byte[300];
+        byte[] b = new byte[300];
+        shake.read(a, 0, a.length);
+        byte[] expected = new SHAKE256(310 * 8).digest(msg);
+        assertArrayEquals(Arrays.copyOfRange(expected, 0, 10), head);
+        assertArrayEquals(Arrays.copyOfRange(expected, 10, 310), a);
+        copy.read(b, 0, b.length);
+        assertArrayEquals(a, b);
+        shake.restore(snap);
+        shake.read(b, 0, b.length);
+        assertArrayEquals(a, b);
+    }
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2023 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.digest;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import net.siisise.lang.Bin;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * RFC 6962 Merkle Tree Hash
+ */
+public class TreeHashTest {
+
+    /**
+     * RFC 6962 の定義どおり JDK の SHA-256 で組んだものと比べる.
+     */
+    @Test
+    public void testMTH() throws NoSuchAlgorithmException {
+        System.out.println("TreeHash MTH");
+        assertArrayEquals(Bin.toByteArray("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855"),
+                new TreeHash().digest());
+        Random rnd = new Random(23);
+        int B = 100;
+        for (int len : new int[] {1, 99, 100, 101, 200, 250, 700, 1234}) {
+            byte[] src = new byte[len];
+            rnd.nextBytes(src);
+            TreeHash th = new TreeHash("SHA-256", B);
+            assertArrayEquals(mth(src, 0, len, B), th.digest(src), "length " + len);
+            assertEquals((len + B - 1) / B, th.getLeafHashes().length);
+        }
+    }
+
+    private static byte[] mth(byte[] src, int from, int to, int B) throws NoSuchAlgorithmException {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        if (to - from <= B) {
+            md.update((byte) 0);
+            md.update(src, from, to - from);
+            return md.digest();
+        }
+        int k = B;
+        while (from + k * 2 < to) {
+            k *= 2;
+        }
+        md.update((byte) 1);
+        md.update(mth(src, from, from + k, B));
+        md.update(mth(src, from + k, to, B));
+        return md.digest();
+    }
+
+    /**
+     * 分け方, 並列, ByteBuffer で同じになること.
+     */
+    @Test
+    public void testParallel() {
+        System.out.println("TreeHash parallel");
+        byte[] src = new byte[64 * 37 + 5];
+        new Random(24).nextBytes(src);
+        TreeHash th = new TreeHash("SHA3-256", 64);
+        th.setParallelThreshold(Integer.MAX_VALUE);
+        byte[] expected = th.digest(src);
+        th.setParallelThreshold(2);
+        assertArrayEquals(expected, th.digest(src));
+        th.update(src, 0, 30);
+        th.update(src, 30, 64 * 20);
+        th.update(src, 30 + 64 * 20, src.length - 30 - 64 * 20);
+        assertArrayEquals(expected, th.digest());
+        ByteBuffer direct = ByteBuffer.allocateDirect(src.length);
+        direct.put(src).flip();
+        th.update(direct);
+        assertArrayEquals(expected, th.digest());
+    }
+
+    /**
+     * 葉1枚の変更と包含の確認.
+     */
+    @Test
+    public void testPath() {
+        System.out.println("TreeHash path");
+        int B = 16;
+        TreeHash th = new TreeHash(SHA256::new, B);
+        for (int count = 1; count <= 17; count++) {
+            byte[] src = new byte[count * B];
+            new Random(count).nextBytes(src);
+            byte[] root = th.digest(src);
+            byte[][] leaves = th.getLeafHashes();
+            assertArrayEquals(root, th.root(leaves));
+            for (int i = 0; i < count; i++) {
+                byte[][] path = th.path(leaves, i);
+                assertTrue(th.verify(root, i, count, leaves[i], path), count + " " + i);
+                assertFalse(th.verify(root, i, count, leaves[(i + 1) % count], path) && count > 1);
+            }
+            int i = count / 2;
+            src[i * B] ^= 1;
+            leaves[i] = th.leafHash(src, i * B, B);
+            assertArrayEquals(th.digest(src), th.root(leaves));
+            assertFalse(Arrays.equals(root, th.root(leaves)));
+        }
+    }
+}
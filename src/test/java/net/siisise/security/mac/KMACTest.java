@@ -142,4 +142,25 @@ public class KMACTest {
         byte[] result = instance.doFinal(data);
         assertArrayEquals(exResult,result);
     }
+
+    /**
+     * squeeze のあとの sign は続きを出すこと.
+     */
+    @Test
+    public void testSqueezeSign() {
+        System.out.println("KMACXOF squeeze sign");
+        byte[] key = Bin.toByteArray("404142434445464748494a4b4c4d4e4f505152535455565758595a5b5c5d5e5f");
+        byte[] data = Bin.toByteArray("00010203");
+        String S = "My Tagged Application";
+        KMAC instance = new KMACXOF256();
+        instance.init(key, 20 * 8 + 512, S);
+        byte[] exResult = instance.doFinal(data);
+        instance = new KMACXOF256();
+        instance.init(key, 512, S);
+        instance.update(data);
+        byte[] result = new byte[exResult.length];
+        instance.squeeze(result, 0, 20);
+        System.arraycopy(instance.sign(), 0, result, 20, 64);
+        assertArrayEquals(exResult, result);
+    }
 }
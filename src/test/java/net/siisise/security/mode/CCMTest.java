@@ -85,4 +85,39 @@ public class CCMTest {
         assertArrayEquals(m, result);
     }
 
+    /**
+     * 長さを先に指定して分割して処理する.
+     * RFC 3610 Packet Vector #1
+     */
+    @Test
+    public void testStream() {
+        System.out.println("stream");
+        byte[] src = Bin.toByteArray("000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e");
+        byte[] a = Arrays.copyOf(src, 8);
+        byte[] m = Arrays.copyOfRange(src, 8, src.length);
+        byte[] expResult = Bin.toByteArray("588c979a61c663d2f066d0c2c0f989806d5f6b61dac38417e8d12cfdf926e0");
+        byte[] key =   Bin.toByteArray("c0c1c2c3c4c5c6c7c8c9cacbcccdcecf");
+        byte[] nonce = Bin.toByteArray("00000003020100a0a1a2a3a4a5");
+        CCM ccm = new CCM(new AES(),8);
+        ccm.init(key, nonce, a);
+        ccm.setLength(m.length);
+        byte[] result = new byte[m.length + 8];
+        ccm.encrypt(m, 0, result, 0, 5);
+        ccm.encrypt(m, 5, result, 5, m.length - 5);
+        System.arraycopy(ccm.tag(), 0, result, m.length, 8);
+        assertArrayEquals(expResult, result);
+
+        ccm.init(key, nonce, a);
+        ccm.setLength(m.length);
+        byte[] dec = ccm.decrypt(expResult, 0, 17);
+        assertThrows(IllegalStateException.class, () -> ccm.decrypt(expResult, 17, m.length));
+
+        byte[] bad = expResult.clone();
+        bad[bad.length - 1] ^= 1;
+        ccm.init(key, nonce, a);
+        assertThrows(IllegalStateException.class, () -> ccm.doFinalDecrypt(bad));
+        ccm.init(key, nonce, a);
+        assertArrayEquals(m, ccm.doFinalDecrypt(expResult));
+        assertArrayEquals(Arrays.copyOf(m, 17), dec);
+    }
 }
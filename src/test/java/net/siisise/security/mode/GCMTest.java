@@ -1,7 +1,16 @@
 package net.siisise.security.mode;
 
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 import net.siisise.lang.Bin;
 import net.siisise.security.block.AES;
+import net.siisise.security.block.CipherWrap;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -209,6 +218,229 @@ public class GCMTest {
         assertArrayEquals(exTag, t);
     }
 
+    /**
+     * Example #5 を半端な長さに分けて処理する.
+     */
+    @Test
+    public void testAES_GCM_ex5Split() {
+        System.out.println("GCM-AES128 Example #5 split");
+        byte[] K = Bin.toByteArray("FEFFE9928665731C6D6A8F9467308308");
+        byte[] IV = Bin.toByteArray("CAFEBABEFACEDBADDECAF888");
+        byte[] A = Bin.toByteArray("3AD77BB40D7A3660A89ECAF32466EF97"
+                                 + "F5D3D585");
+        byte[] P = Bin.toByteArray("D9313225F88406E5A55909C5AFF5269A"
+                                 + "86A7A9531534F7DA2E4C303D8A318A72"
+                                 + "1C3C0C95956809532FCF0E2449A6B525"
+                                 + "B16AEDF5AA0DE657BA637B39");
+        byte[] exC = Bin.toByteArray("42831EC2217774244B7221B784D0D49C"
+                                   + "E3AA212F2C02A4E035C17E2329ACA12E"
+                                   + "21D514B25466931C7D8F6A5AAC84AA05"
+                                   + "1BA30B396A0AAC973D58E091");
+        byte[] exTag = Bin.toByteArray("F07C2528EEA2FCA1211F905E1B6A881B");
+        GCM gcm = new GCM();
+        gcm.init(K, IV, A);
+        byte[] C = new byte[P.length];
+        int[] lens = {5, 17, 1, 37};
+        int offset = 0;
+        for (int len : lens) {
+            System.arraycopy(gcm.encrypt(P, offset, len), 0, C, offset, len);
+            offset += len;
+        }
+        assertArrayEquals(exC, C);
+        assertArrayEquals(exTag, gcm.tag());
+    }
+
+    /**
+     * LARGE_LENGTH を超える doFinal.
+     * 並列版と逐次版, JDK の結果を比べる.
+     */
+    @Test
+    public void testLarge() throws Exception {
+        System.out.println("GCM large");
+        byte[] K = Bin.toByteArray("FEFFE9928665731C6D6A8F9467308308");
+        byte[] IV = Bin.toByteArray("CAFEBABEFACEDBADDECAF888");
+        byte[] A = Bin.toByteArray("3AD77BB40D7A3660A89ECAF32466EF97"
+                                 + "F5D3D585");
+        byte[] P = new byte[GCM.LARGE_LENGTH * 3 + 21];
+        for (int i = 0; i < P.length; i++) {
+            P[i] = (byte) (i * 7 + (i >>> 9));
+        }
+        GCM gcm = new GCM();
+        gcm.init(K, IV, A);
+        byte[] C = gcm.doFinalEncrypt(P, 0, P.length);
+
+        gcm.init(K, IV, A);
+        byte[] seq = new byte[P.length];
+        for (int offset = 0; offset < P.length; offset += 4096) {
+            int len = Math.min(4096, P.length - offset);
+            System.arraycopy(gcm.encrypt(P, offset, len), 0, seq, offset, len);
+        }
+        assertArrayEquals(seq, Arrays.copyOf(C, P.length));
+        assertArrayEquals(gcm.tag(), Arrays.copyOfRange(C, P.length, C.length));
+
+        Cipher jdk = Cipher.getInstance("AES/GCM/NoPadding");
+        jdk.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(K, "AES"), new GCMParameterSpec(128, IV));
+        jdk.updateAAD(A);
+        assertArrayEquals(jdk.doFinal(P), C);
+
+        gcm.init(K, IV, A);
+        assertArrayEquals(P, gcm.doFinalDecrypt(C, 0, C.length));
+        C[C.length / 2] ^= 1;
+        gcm.init(K, IV, A);
+        assertThrows(IllegalStateException.class, () -> gcm.doFinalDecrypt(C, 0, C.length));
+    }
+
+    /**
+     * 鍵を共有してメッセージごとに IV, AAD を変える.
+     */
+    @Test
+    public void testKey() throws Exception {
+        System.out.println("GCM Key");
+        byte[] K = Bin.toByteArray("FEFFE9928665731C6D6A8F9467308308");
+        byte[] IV = Bin.toByteArray("CAFEBABEFACEDBADDECAF888");
+        byte[] A = Bin.toByteArray("3AD77BB40D7A3660A89ECAF32466EF97"
+                                 + "F5D3D585");
+        byte[] P = Bin.toByteArray("D9313225F88406E5A55909C5AFF5269A"
+                                 + "86A7A9531534F7DA2E4C303D8A318A72"
+                                 + "1C3C0C95956809532FCF0E2449A6B525"
+                                 + "B16AEDF5AA0DE657BA637B39");
+        byte[] exC = Bin.toByteArray("42831EC2217774244B7221B784D0D49C"
+                                   + "E3AA212F2C02A4E035C17E2329ACA12E"
+                                   + "21D514B25466931C7D8F6A5AAC84AA05"
+                                   + "1BA30B396A0AAC973D58E091");
+        byte[] exTag = Bin.toByteArray("F07C2528EEA2FCA1211F905E1B6A881B");
+        GCM.Key key = new GCM.Key(new AES(), K);
+        GCM gcm = key.newMessage(IV, A);
+        assertArrayEquals(exC, gcm.encrypt(P));
+        assertArrayEquals(exTag, gcm.tag());
+        assertThrows(IllegalStateException.class, () -> gcm.init(K, IV, A));
+
+        // 複数スレッドで同じ鍵を使う
+        Thread[] ths = new Thread[4];
+        boolean[] oks = new boolean[ths.length];
+        for (int t = 0; t < ths.length; t++) {
+            int n = t;
+            ths[t] = new Thread(() -> {
+                boolean ok = true;
+                byte[] iv = IV.clone();
+                for (int i = 0; i < 200; i++) {
+                    iv[0] = (byte) i;
+                    iv[1] = (byte) n;
+                    GCM m = key.newMessage(iv, A);
+                    byte[] c = m.doFinalEncrypt(P, 0, P.length);
+                    GCM e = new GCM(new AES());
+                    e.init(K, iv, A);
+                    ok &= Arrays.equals(e.doFinalEncrypt(P, 0, P.length), c);
+                    m.reset(iv, A);
+                    ok &= Arrays.equals(P, m.doFinalDecrypt(c, 0, c.length));
+                }
+                oks[n] = ok;
+            });
+            ths[t].start();
+        }
+        for (int t = 0; t < ths.length; t++) {
+            ths[t].join();
+            assertTrue(oks[t]);
+        }
+    }
+
+    /**
+     * sealAll, openAll が1件ずつの処理と同じになること.
+     * 改変したものだけ検証に失敗すること.
+     */
+    @Test
+    public void testBatch() {
+        System.out.println("GCM CCM CipherWrap batch");
+        SecureRandom rnd = new SecureRandom();
+        byte[] key = new byte[16];
+        rnd.nextBytes(key);
+        int[] lens = {0, 1, 16, 100, 333, 500, 4000, 17};
+        List<StreamAEAD.Record> records = new ArrayList<>();
+        for (int i = 0; i < lens.length; i++) {
+            byte[] iv = new byte[i == 3 ? 8 : 12];
+            byte[] aad = new byte[i];
+            byte[] src = new byte[lens[i]];
+            rnd.nextBytes(iv);
+            rnd.nextBytes(aad);
+            rnd.nextBytes(src);
+            records.add(new StreamAEAD.Record(iv, aad, src));
+        }
+        GCM.Key gkey = new GCM.Key(key);
+        StreamAEAD[] aeads = {new GCM(gkey), new CCM(new AES(), 16), new CipherWrap("AES/GCM/NoPadding")};
+        aeads[1].init(key, new byte[12]);
+        aeads[2].init(key);
+        for (StreamAEAD aead : aeads) {
+            StreamAEAD.Batch sealed = aead.sealAll(records);
+            List<StreamAEAD.Record> opens = new ArrayList<>();
+            for (int i = 0; i < lens.length; i++) {
+                StreamAEAD.Record r = records.get(i);
+                aead.reset(r.iv, r.aad);
+                byte[] c = sealed.get(i);
+                assertArrayEquals(aead.doFinalEncrypt(r.src), c);
+                if (i == 5) {
+                    c[7] ^= 1;
+                }
+                opens.add(new StreamAEAD.Record(r.iv, r.aad, c));
+            }
+            StreamAEAD.Batch opened = aead.openAll(opens);
+            for (int i = 0; i < lens.length; i++) {
+                assertEquals(i != 5, opened.valid[i]);
+                if (i != 5) {
+                    assertArrayEquals(records.get(i).src, opened.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * ByteBuffer 版.
+     * direct buffer で同じ領域に暗号化, 復号する.
+     */
+    @Test
+    public void testByteBuffer() {
+        System.out.println("GCM ByteBuffer");
+        byte[] K = Bin.toByteArray("FEFFE9928665731C6D6A8F9467308308");
+        byte[] IV = Bin.toByteArray("CAFEBABEFACEDBADDECAF888");
+        byte[] A = Bin.toByteArray("3AD77BB40D7A3660A89ECAF32466EF97"
+                                 + "F5D3D585");
+        byte[] P = Bin.toByteArray("D9313225F88406E5A55909C5AFF5269A"
+                                 + "86A7A9531534F7DA2E4C303D8A318A72"
+                                 + "1C3C0C95956809532FCF0E2449A6B525"
+                                 + "B16AEDF5AA0DE657BA637B39");
+        byte[] exC = Bin.toByteArray("42831EC2217774244B7221B784D0D49C"
+                                   + "E3AA212F2C02A4E035C17E2329ACA12E"
+                                   + "21D514B25466931C7D8F6A5AAC84AA05"
+                                   + "1BA30B396A0AAC973D58E091"
+                                   + "F07C2528EEA2FCA1211F905E1B6A881B");
+        GCM gcm = new GCM();
+        gcm.init(K, IV, A);
+        ByteBuffer buf = ByteBuffer.allocateDirect(exC.length);
+        buf.put(P).flip();
+        ByteBuffer out = buf.duplicate();
+        out.clear();
+        gcm.doFinalEncrypt(buf, out);
+        assertEquals(exC.length, out.position());
+        byte[] C = new byte[exC.length];
+        out.flip();
+        out.get(C);
+        assertArrayEquals(exC, C);
+
+        gcm.init(K, IV, A);
+        out.rewind();
+        gcm.doFinalDecrypt(out, out);
+        assertEquals(P.length, out.position());
+        byte[] deP = new byte[P.length];
+        out.flip();
+        out.get(deP);
+        assertArrayEquals(P, deP);
+
+        C[3] ^= 1;
+        gcm.init(K, IV, A);
+        ByteBuffer dst = ByteBuffer.allocate(P.length);
+        assertThrows(IllegalStateException.class, () -> gcm.doFinalDecrypt(ByteBuffer.wrap(C), dst));
+        assertArrayEquals(new byte[P.length], dst.array());
+    }
+
     /*
     @Test
     public void testNIST() throws IOException {
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2023 okome.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.mode;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import net.siisise.lang.Bin;
+import net.siisise.security.block.AES;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RFC 7253 Appendix A. Sample Results
+ */
+public class OCBTest {
+
+    /**
+     * AES-128 TAGLEN 128.
+     */
+    @Test
+    public void testSample() {
+        System.out.println("OCB sample");
+        byte[] key = Bin.toByteArray("000102030405060708090A0B0C0D0E0F");
+        String[][] vectors = {
+            {"BBAA99887766554433221100", "", "", "785407BFFFC8AD9EDCC5520AC9111EE6"},
+            {"BBAA99887766554433221101", "0001020304050607", "0001020304050607",
+                "6820B3657B6F615A5725BDA0D3B4EB3A257C9AF1F8F03009"},
+            {"BBAA99887766554433221102", "0001020304050607", "", "81017F8203F081277152FADE694A0A00"},
+            {"BBAA99887766554433221103", "", "0001020304050607", "45DD69F8F5AAE72414054CD1F35D82760B2CD00D2F99BFA9"},
+            {"BBAA99887766554433221104", "000102030405060708090A0B0C0D0E0F", "000102030405060708090A0B0C0D0E0F",
+                "571D535B60B277188BE5147170A9A22C3AD7A4FF3835B8C5701C1CCEC8FC3358"}
+        };
+        OCB ocb = new OCB(new AES());
+        for (String[] v : vectors) {
+            byte[] nonce = Bin.toByteArray(v[0]);
+            byte[] a = Bin.toByteArray(v[1]);
+            byte[] p = Bin.toByteArray(v[2]);
+            byte[] c = Bin.toByteArray(v[3]);
+            ocb.init(key, nonce, a);
+            assertArrayEquals(c, ocb.doFinalEncrypt(p));
+            ocb.reset(nonce, a);
+            assertArrayEquals(p, ocb.doFinalDecrypt(c));
+            c[0] ^= 1;
+            ocb.reset(nonce, a);
+            byte[] bad = c;
+            assertThrows(IllegalStateException.class, () -> ocb.doFinalDecrypt(bad));
+        }
+    }
+
+    /**
+     * AES-128 TAGLEN 96. 分割して処理する.
+     */
+    @Test
+    public void testTag96() {
+        System.out.println("OCB TAGLEN 96");
+        byte[] key = Bin.toByteArray("0F0E0D0C0B0A09080706050403020100");
+        byte[] nonce = Bin.toByteArray("BBAA9988776655443322110D");
+        byte[] a = new byte[40];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = (byte) i;
+        }
+        byte[] c = Bin.toByteArray("1792A4E31E0755FB03E31B22116E6C2DDF9EFD6E33D536F1A0124B0A55BAE884"
+                + "ED93481529C76B6AD0C515F4D1CDD4FDAC4F02AA");
+        OCB ocb = new OCB(new AES(), 12);
+        ocb.init(key, nonce, a);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(ocb.encrypt(a, 0, 7));
+        out.writeBytes(ocb.encrypt(a, 7, 20));
+        out.writeBytes(ocb.doFinalEncrypt(a, 27, 13));
+        assertArrayEquals(c, out.toByteArray());
+
+        ocb.reset(nonce, a);
+        out.reset();
+        out.writeBytes(ocb.decrypt(c, 0, 33));
+        out.writeBytes(ocb.doFinalDecrypt(c, 33, c.length - 33));
+        assertArrayEquals(a, out.toByteArray());
+    }
+
+    /**
+     * RFC 7253 Appendix A の繰り返し.
+     */
+    @Test
+    public void testIterate() {
+        System.out.println("OCB iterate");
+        int[] tagLengths = {16, 12, 8};
+        String[] results = {"67E944D23256C5E0B6C61FA22FDF1EA2", "77A3D8E73589158D25D01209", "192C9B7BD90BA06A"};
+        for (int t = 0; t < tagLengths.length; t++) {
+            int tagLength = tagLengths[t];
+            byte[] key = new byte[16];
+            key[15] = (byte) (tagLength * 8);
+            OCB ocb = new OCB(new AES(), tagLength);
+            ocb.init(key, new byte[12]);
+            ByteArrayOutputStream c = new ByteArrayOutputStream();
+            for (int i = 0; i < 128; i++) {
+                byte[] s = new byte[i];
+                ocb.reset(nonce(3 * i + 1), s);
+                c.writeBytes(ocb.doFinalEncrypt(s));
+                ocb.reset(nonce(3 * i + 2), new byte[0]);
+                c.writeBytes(ocb.doFinalEncrypt(s));
+                ocb.reset(nonce(3 * i + 3), s);
+                c.writeBytes(ocb.doFinalEncrypt(new byte[0]));
+            }
+            ocb.reset(nonce(385), c.toByteArray());
+            assertArrayEquals(Bin.toByteArray(results[t]), ocb.doFinalEncrypt(new byte[0]));
+        }
+    }
+
+    private static byte[] nonce(int n) {
+        byte[] nonce = new byte[12];
+        nonce[10] = (byte) (n >>> 8);
+        nonce[11] = (byte) n;
+        return nonce;
+    }
+
+    /**
+     * GCM との速度比較.
+     */
+    @Test
+    public void testSpeed() {
+        System.out.println("OCB speed");
+        int size = 16;
+        byte[] key = new byte[16];
+        byte[] nonce = new byte[12];
+        byte[] src = new byte[size * 1024 * 1024];
+        StreamAEAD[] aeads = {new OCB(new AES()), new GCM(new AES())};
+        for (int loop = 0; loop < 3; loop++) {
+            for (StreamAEAD aead : aeads) {
+                long d = System.nanoTime();
+                aead.init(key, nonce);
+                byte[] enc = aead.doFinalEncrypt(src);
+                long t = System.nanoTime() - d;
+                System.out.println(aead.getClass().getSimpleName() + " time : " + t);
+                System.out.println(" speed : " + (size * 8 * 1024 / (t / 1000 / 1000 + 1)) + "Mbps");
+                aead.init(key, nonce);
+                assertArrayEquals(src, Arrays.copyOf(aead.doFinalDecrypt(enc), src.length));
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 okome.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.mode;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import net.siisise.lang.Bin;
+import net.siisise.security.block.AES;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * IEEE 1619 Annex B Test Vectors
+ */
+public class XTSTest {
+
+    /**
+     * Vector 1, 2.
+     */
+    @Test
+    public void testSector() {
+        System.out.println("XTS sector");
+        String[][] vectors = {
+            {"00000000000000000000000000000000" + "00000000000000000000000000000000", "0",
+                "0000000000000000000000000000000000000000000000000000000000000000",
+                "917cf69ebd68b2ec9b9fe9a3eadda692cd43d2f59598ed858c02c2652fbf922e"},
+            {"11111111111111111111111111111111" + "22222222222222222222222222222222", "3333333333",
+                "4444444444444444444444444444444444444444444444444444444444444444",
+                "c454185e6a16936e39334038acef838bfb186fff7480adc4289382ecd6d394f0"},
+            // Vector 15 ciphertext stealing
+            {"fffefdfcfbfaf9f8f7f6f5f4f3f2f1f0" + "bfbebdbcbbbab9b8b7b6b5b4b3b2b1b0", "123456789a",
+                "000102030405060708090a0b0c0d0e0f10",
+                "6c1625db4671522d3d7599601de7ca09ed"}
+        };
+        for (String[] v : vectors) {
+            XTS xts = new XTS(new AES());
+            xts.init(Bin.toByteArray(v[0]));
+            byte[] plain = Bin.toByteArray(v[2]);
+            byte[] buf = plain.clone();
+            long sector = Long.parseLong(v[1], 16);
+            xts.encryptSector(sector, buf, 0, buf.length);
+            assertArrayEquals(Bin.toByteArray(v[3]), buf);
+            xts.decryptSector(sector, buf, 0, buf.length);
+            assertArrayEquals(plain, buf);
+        }
+    }
+
+    /**
+     * ブロック単位と同じ結果になること.
+     */
+    @Test
+    public void testBlock() {
+        System.out.println("XTS block");
+        byte[] key = Bin.toByteArray("11111111111111111111111111111111" + "22222222222222222222222222222222");
+        byte[] tweak = Bin.toByteArray("33333333330000000000000000000000");
+        byte[] plain = Bin.toByteArray("4444444444444444444444444444444444444444444444444444444444444444");
+        XTS xts = new XTS();
+        xts.init(key, tweak);
+        byte[] enc = xts.encrypt(plain, 0, plain.length);
+        assertArrayEquals(Bin.toByteArray("c454185e6a16936e39334038acef838bfb186fff7480adc4289382ecd6d394f0"), enc);
+        xts.setCount(1);
+        assertArrayEquals(Arrays.copyOfRange(plain, 16, 32), xts.decrypt(enc, 16, 16));
+    }
+
+    /**
+     * 複数セクタの並列処理が1セクタずつと同じになること.
+     */
+    @Test
+    public void testSectors() {
+        System.out.println("XTS sectors");
+        SecureRandom rnd = new SecureRandom();
+        byte[] key = new byte[64];
+        rnd.nextBytes(key);
+        int sectorSize = 4096;
+        byte[] plain = new byte[sectorSize * 100 + 600];
+        rnd.nextBytes(plain);
+        XTS xts = new XTS(new AES());
+        xts.init(key);
+        byte[] buf = plain.clone();
+        xts.encryptSectors(7, sectorSize, buf, 0, buf.length);
+        byte[] one = plain.clone();
+        for (int o = 0; o < one.length; o += sectorSize) {
+            xts.encryptSector(7 + o / sectorSize, one, o, Math.min(sectorSize, one.length - o));
+        }
+        assertArrayEquals(one, buf);
+        xts.decryptSectors(7, sectorSize, buf, 0, buf.length);
+        assertArrayEquals(plain, buf);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2023 okome.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.security.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import net.siisise.security.mode.GCM;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分割 GCM.
+ */
+public class SegmentedGCMTest {
+
+    private static final int SEG = 100;
+
+    private static SegmentedGCM gcm(byte[] key, byte[] prefix) {
+        SegmentedGCM gcm = new SegmentedGCM(new GCM.Key(key), prefix, SEG, new byte[0], ForkJoinPool.commonPool());
+        gcm.setWindow(3);
+        return gcm;
+    }
+
+    private static byte[] encrypt(SegmentedGCM gcm, byte[] src) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (OutputStream out = gcm.newOutputStream(bout)) {
+            out.write(src, 0, 7 % (src.length + 1));
+            out.write(src, 7 % (src.length + 1), src.length - 7 % (src.length + 1));
+        }
+        return bout.toByteArray();
+    }
+
+    private static byte[] decrypt(SegmentedGCM gcm, byte[] src) throws IOException {
+        try (InputStream in = gcm.newInputStream(new ByteArrayInputStream(src))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Stream で暗号化, 復号.
+     */
+    @Test
+    public void testStream() throws IOException {
+        System.out.println("SegmentedGCM stream");
+        SecureRandom rnd = new SecureRandom();
+        byte[] key = new byte[16];
+        byte[] prefix = new byte[7];
+        rnd.nextBytes(key);
+        rnd.nextBytes(prefix);
+        SegmentedGCM gcm = gcm(key, prefix);
+        int[] lengths = {0, 1, SEG - 1, SEG, SEG + 1, SEG * 5 + 7, SEG * 8};
+        for (int len : lengths) {
+            byte[] src = new byte[len];
+            rnd.nextBytes(src);
+            byte[] enc = encrypt(gcm, src);
+            assertEquals(gcm.ciphertextSize(len), enc.length);
+            assertEquals(len, gcm.plaintextSize(enc.length));
+            assertArrayEquals(src, decrypt(gcm, enc));
+        }
+
+        // 先頭セグメントは GCM と同じ
+        byte[] src = new byte[SEG * 2];
+        byte[] enc = encrypt(gcm, src);
+        byte[] nonce = Arrays.copyOf(prefix, 12);
+        byte[] seg0 = new GCM.Key(key).newMessage(nonce, new byte[0]).doFinalEncrypt(src, 0, SEG);
+        assertArrayEquals(seg0, Arrays.copyOf(enc, SEG + 16));
+    }
+
+    /**
+     * 改変, 切り詰め, 入れ替えの検出.
+     */
+    @Test
+    public void testTamper() throws IOException {
+        System.out.println("SegmentedGCM tamper");
+        SegmentedGCM gcm = gcm(new byte[16], new byte[7]);
+        byte[] src = new byte[SEG * 3 + 5];
+        byte[] enc = encrypt(gcm, src);
+        int cseg = SEG + 16;
+
+        byte[] bad = enc.clone();
+        bad[cseg + 3] ^= 1;
+        assertThrows(IOException.class, () -> decrypt(gcm, bad));
+        // セグメント境界で切り詰め
+        assertThrows(IOException.class, () -> decrypt(gcm, Arrays.copyOf(enc, cseg * 2)));
+        // 入れ替え
+        byte[] swap = enc.clone();
+        System.arraycopy(enc, 0, swap, cseg, cseg);
+        System.arraycopy(enc, cseg, swap, 0, cseg);
+        assertThrows(IOException.class, () -> decrypt(gcm, swap));
+        assertThrows(IOException.class, () -> decrypt(gcm, new byte[0]));
+    }
+
+    /**
+     * FileChannel で暗号化, 復号, 任意位置の読み込み.
+     */
+    @Test
+    public void testFileChannel() throws IOException {
+        System.out.println("SegmentedGCM FileChannel");
+        SecureRandom rnd = new SecureRandom();
+        byte[] key = new byte[32];
+        rnd.nextBytes(key);
+        SegmentedGCM gcm = gcm(key, new byte[7]);
+        byte[] src = new byte[SEG * 20 + 33];
+        rnd.nextBytes(src);
+        Path p = Files.createTempFile("seg", ".txt");
+        Path c = Files.createTempFile("seg", ".enc");
+        Path d = Files.createTempFile("seg", ".dec");
+        try {
+            Files.write(p, src);
+            try (FileChannel in = FileChannel.open(p); FileChannel out = FileChannel.open(c, StandardOpenOption.WRITE)) {
+                gcm.encrypt(in, out);
+            }
+            byte[] enc = Files.readAllBytes(c);
+            assertArrayEquals(encrypt(gcm, src), enc);
+            try (FileChannel in = FileChannel.open(c); FileChannel out = FileChannel.open(d, StandardOpenOption.WRITE)) {
+                gcm.decrypt(in, out);
+                byte[] dst = new byte[SEG * 3];
+                assertEquals(dst.length - 2, gcm.read(in, SEG / 2, dst, 2, dst.length - 2));
+                assertArrayEquals(Arrays.copyOfRange(src, SEG / 2, SEG / 2 + dst.length - 2), Arrays.copyOfRange(dst, 2, dst.length));
+                assertEquals(33, gcm.read(in, SEG * 20, dst, 0, dst.length));
+                assertEquals(-1, gcm.read(in, src.length, dst, 0, dst.length));
+            }
+            assertArrayEquals(src, Files.readAllBytes(d));
+        } finally {
+            Files.delete(p);
+            Files.delete(c);
+            Files.delete(d);
+        }
+    }
+
+    /**
+     * 長い既存ファイルに上書きしたとき切り詰めること.
+     */
+    @Test
+    public void testOverwrite() throws IOException {
+        System.out.println("SegmentedGCM overwrite");
+        SecureRandom rnd = new SecureRandom();
+        byte[] key = new byte[32];
+        rnd.nextBytes(key);
+        SegmentedGCM gcm = gcm(key, new byte[7]);
+        byte[] src = new byte[SEG * 3 + 5];
+        rnd.nextBytes(src);
+        byte[] old = new byte[SEG * 10];
+        rnd.nextBytes(old);
+        Path p = Files.createTempFile("seg", ".txt");
+        Path c = Files.createTempFile("seg", ".enc");
+        Path d = Files.createTempFile("seg", ".dec");
+        try {
+            Files.write(p, src);
+            Files.write(c, old);
+            Files.write(d, old);
+            try (FileChannel in = FileChannel.open(p); FileChannel out = FileChannel.open(c, StandardOpenOption.WRITE)) {
+                gcm.encrypt(in, out);
+            }
+            assertArrayEquals(encrypt(gcm, src), Files.readAllBytes(c));
+            try (FileChannel in = FileChannel.open(c); FileChannel out = FileChannel.open(d, StandardOpenOption.WRITE)) {
+                gcm.decrypt(in, out);
+            }
+            assertArrayEquals(src, Files.readAllBytes(d));
+        } finally {
+            Files.delete(p);
+            Files.delete(c);
+            Files.delete(d);
+        }
+    }
+}